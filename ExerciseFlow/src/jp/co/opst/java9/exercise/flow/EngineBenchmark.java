@@ -0,0 +1,131 @@
+package jp.co.opst.java9.exercise.flow;
+
+import java.util.function.UnaryOperator;
+import java.util.stream.IntStream;
+
+import jp.co.opst.java9.exercise.lib.flow.SimplePublisher;
+import jp.co.opst.java9.exercise.lib.flow.SubscriberModel;
+import jp.co.opst.java9.exercise.lib.flow.WaitStrategy;
+
+/**
+ * シンプルパブリッシャーのエンジンごとのスループットを比較する演習です。
+ */
+public class EngineBenchmark {
+
+	/**
+	 * 購読した値の数を数えるだけのモデルです。
+	 */
+	private static class CountModel implements SubscriberModel<Integer> {
+
+		/** 購読した値の数。 */
+		private long count;
+
+		/**
+		 * 開始時の処理を行います。
+		 * 
+		 * <p>
+		 * 実際には何も行いません。
+		 * </p>
+		 */
+		@Override
+		public void begin() {
+		}
+
+		/**
+		 * 購読時の処理を行います。
+		 * 
+		 * <p>
+		 * 購読した値の数を数えます。
+		 * </p>
+		 * 
+		 * @param item 購読した値
+		 */
+		@Override
+		public void accept(Integer item) {
+			count++;
+		}
+
+		/**
+		 * 終了時の処理を行います。
+		 * 
+		 * <p>
+		 * 実際には何も行いません。
+		 * </p>
+		 */
+		@Override
+		public void end() {
+		}
+	}
+
+	/** 発行する値の数。 */
+	private static final int ITEMS = 1_000_000;
+
+	/** モデルの数。 */
+	private static final int MODELS = 3;
+
+	/** 計測の繰り返し回数。最初の1回はウォームアップとして扱います。 */
+	private static final int ROUNDS = 3;
+
+	/**
+	 * メイン。
+	 * 
+	 * @param args 使用しません
+	 * @throws InterruptedException サブスクライバーの終了待機中に、割り込みが発生した場合
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		EngineBenchmark me = new EngineBenchmark();
+
+		for (int round = 0; round < ROUNDS; round++) {
+			me.measure("SubmissionPublisher", UnaryOperator.identity());
+
+			for (WaitStrategy waitStrategy : WaitStrategy.values()) {
+				if (waitStrategy == WaitStrategy.BUSY_SPIN && Runtime.getRuntime().availableProcessors() <= MODELS) {
+					// 発行元とサブスクライバーがコアを奪い合い、計測にならないため
+					continue;
+				}
+
+				me.measure("RingBuffer/" + waitStrategy, builder -> builder.setRingBufferEngine(waitStrategy));
+			}
+		}
+	}
+
+	/**
+	 * 1つのエンジンのスループットを計測して、標準出力に出力します。
+	 * 
+	 * @param name エンジンの名前
+	 * @param configurator ビルダーにエンジンを設定する関数
+	 * @throws InterruptedException サブスクライバーの終了待機中に、割り込みが発生した場合
+	 */
+	public void measure(String name, UnaryOperator<SimplePublisher.Builder<Integer>> configurator)
+			throws InterruptedException {
+		CountModel[] models = IntStream.range(0, MODELS).mapToObj(i -> new CountModel()).toArray(CountModel[]::new);
+		SimplePublisher.Builder<Integer> builder = SimplePublisher.<Integer>buider()
+			.setThreadPerSubscriber(true)
+			.setWatermark(256, 64);
+
+		for (CountModel model : models) {
+			builder.add(model);
+		}
+
+		SimplePublisher<Integer> publisher = configurator.apply(builder).build();
+		Integer item = 1;
+		long start = System.nanoTime();
+
+		try (publisher) {
+			for (int i = 0; i < ITEMS; i++) {
+				publisher.publish(item);
+			}
+		}
+
+		publisher.await();
+		long elapsed = System.nanoTime() - start;
+
+		for (CountModel model : models) {
+			if (model.count != ITEMS) {
+				throw new IllegalStateException(name + ": " + model.count + " items received");
+			}
+		}
+
+		System.out.println(String.format("%-24s %,12d items/s", name, ITEMS * 1_000_000_000L / elapsed));
+	}
+}
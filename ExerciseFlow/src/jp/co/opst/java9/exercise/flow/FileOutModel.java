@@ -6,16 +6,22 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
+import java.util.List;
 
 import jp.co.opst.java9.exercise.lib.exception.Try;
+import jp.co.opst.java9.exercise.lib.flow.BatchSubscriberModel;
 import jp.co.opst.java9.exercise.lib.flow.SubscriberModel;
 
 /**
  * 購読した値をファイルに出力するモデルです。
  * 
+ * <p>
+ * 購読した値をまとめて受け取ることもできます。
+ * </p>
+ * 
  * @param <T> 購読した値
  */
-public class FileOutModel<T> implements SubscriberModel<T> {
+public class FileOutModel<T> implements SubscriberModel<T>, BatchSubscriberModel<T> {
 
 	/** 出力先のファイル。 */
 	private final File file;
@@ -66,6 +72,25 @@ public class FileOutModel<T> implements SubscriberModel<T> {
 		writer.newLine();
 	}
 
+	/**
+	 * 購読した値をまとめて処理します。
+	 * 
+	 * <p>
+	 * 購読した値を全てファイルに書き込んでから、ライターをフラッシュします。
+	 * </p>
+	 * 
+	 * @param items 購読した値のリスト
+	 * @throws IOException 書き込みに失敗した場合
+	 */
+	@Override
+	public void acceptBatch(List<T> items) throws IOException {
+		for (T item : items) {
+			accept(item);
+		}
+
+		writer.flush();
+	}
+
 	/**
 	 * 終了時の処理を行います。
 	 * 
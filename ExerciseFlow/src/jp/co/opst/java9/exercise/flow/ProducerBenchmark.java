@@ -0,0 +1,131 @@
+package jp.co.opst.java9.exercise.flow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+import jp.co.opst.java9.exercise.lib.flow.SimplePublisher;
+import jp.co.opst.java9.exercise.lib.flow.SubscriberModel;
+
+/**
+ * 発行元スレッドの数ごとに、シンプルパブリッシャーのスループットを比較する演習です。
+ */
+public class ProducerBenchmark {
+
+	/**
+	 * 購読した値の数を数えるだけのモデルです。
+	 */
+	private static class CountModel implements SubscriberModel<Integer> {
+
+		/** 購読した値の数。 */
+		private final LongAdder count = new LongAdder();
+
+		/**
+		 * 開始時の処理を行います。
+		 * 
+		 * <p>
+		 * 実際には何も行いません。
+		 * </p>
+		 */
+		@Override
+		public void begin() {
+		}
+
+		/**
+		 * 購読時の処理を行います。
+		 * 
+		 * <p>
+		 * 購読した値の数を数えます。
+		 * </p>
+		 * 
+		 * @param item 購読した値
+		 */
+		@Override
+		public void accept(Integer item) {
+			count.increment();
+		}
+
+		/**
+		 * 終了時の処理を行います。
+		 * 
+		 * <p>
+		 * 実際には何も行いません。
+		 * </p>
+		 */
+		@Override
+		public void end() {
+		}
+	}
+
+	/** 発行する値の数。 */
+	private static final int ITEMS = 1_000_000;
+
+	/** 計測の繰り返し回数。最初の1回はウォームアップとして扱います。 */
+	private static final int ROUNDS = 3;
+
+	/**
+	 * メイン。
+	 * 
+	 * @param args 使用しません
+	 * @throws InterruptedException 発行元スレッドやサブスクライバーの終了待機中に、割り込みが発生した場合
+	 */
+	public static void main(String[] args) throws InterruptedException {
+		ProducerBenchmark me = new ProducerBenchmark();
+		int stripes = Runtime.getRuntime().availableProcessors();
+
+		for (int round = 0; round < ROUNDS; round++) {
+			for (int producers = 1; producers <= stripes * 2; producers *= 2) {
+				me.measure("Shared", producers, UnaryOperator.identity());
+				me.measure("Striped", producers, builder -> builder.setStripedPublishing(stripes, false));
+				me.measure("Striped/ordered", producers, builder -> builder.setStripedPublishing(stripes, true));
+			}
+		}
+	}
+
+	/**
+	 * 1つの設定のスループットを計測して、標準出力に出力します。
+	 * 
+	 * @param name 設定の名前
+	 * @param producers 発行元スレッドの数
+	 * @param configurator ビルダーを設定する関数
+	 * @throws InterruptedException 発行元スレッドやサブスクライバーの終了待機中に、割り込みが発生した場合
+	 */
+	public void measure(String name, int producers, UnaryOperator<SimplePublisher.Builder<Integer>> configurator)
+			throws InterruptedException {
+		CountModel model = new CountModel();
+		SimplePublisher<Integer> publisher = configurator.apply(SimplePublisher.<Integer>buider()
+			.setThreadPerSubscriber(true)
+			.add(model)).build();
+		Integer item = 1;
+		List<Thread> threads = new ArrayList<>();
+
+		for (int i = 0; i < producers; i++) {
+			threads.add(new Thread(() -> {
+				for (int j = 0; j < ITEMS / producers; j++) {
+					publisher.publish(item);
+				}
+			}));
+		}
+
+		long start = System.nanoTime();
+
+		try (publisher) {
+			threads.forEach(Thread::start);
+
+			for (Thread thread : threads) {
+				thread.join();
+			}
+		}
+
+		publisher.await();
+		long elapsed = System.nanoTime() - start;
+		long expected = (long) ITEMS / producers * producers;
+
+		if (model.count.sum() != expected) {
+			throw new IllegalStateException(name + ": " + model.count.sum() + " items received");
+		}
+
+		System.out.println(String.format("%-16s %2d producers %,12d items/s", name, producers, expected * 1_000_000_000L / elapsed));
+	}
+}
@@ -5,8 +5,10 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.URL;
+import java.time.Duration;
 
 import jp.co.opst.java9.exercise.lib.exception.Resource;
+import jp.co.opst.java9.exercise.lib.flow.ResourcePublisher;
 import jp.co.opst.java9.exercise.lib.flow.SimplePublisher;
 
 /**
@@ -14,6 +16,9 @@ import jp.co.opst.java9.exercise.lib.flow.SimplePublisher;
  */
 public class WebReader {
 
+	/** 通信結果を先読みする行数。 */
+	private static final int PREFETCH = 64;
+
 	/**
 	 * メイン。
 	 * 
@@ -39,16 +44,17 @@ public class WebReader {
 	 */
 	public void read(URL url, File file) throws Exception {
 		SimplePublisher<String> publisher = SimplePublisher.<String>buider()
-			.add(new FileOutModel<>(file))
+			.add(new FileOutModel<>(file), 100, Duration.ofSeconds(1))
 			.add(new SystemOutModel<>())
 			.build();
 
+		ResourcePublisher<String> lines = new ResourcePublisher<>(Resource.of(url::openStream)
+			.map(InputStreamReader::new)
+			.map(BufferedReader::new)
+			.whilePresent(BufferedReader::readLine)::open, PREFETCH);
+
 		try (publisher) {
-			Resource.of(url::openStream)
-				.map(InputStreamReader::new)
-				.map(BufferedReader::new)
-				.whilePresent(BufferedReader::readLine)
-				.accept(publisher::publish);
+			publisher.publishFrom(lines).get();
 		}
 
 		publisher.await();
@@ -1,5 +1,7 @@
 package jp.co.opst.java9.exercise.lib.exception;
 
+import java.io.IOException;
+
 /**
  * try-with-resourcesのリソースです。
  * 
@@ -58,6 +60,95 @@ public final class Resource<A extends AutoCloseable, P> {
 		public void cast() throws Exception {
 			accept(Acceptor.nop());
 		}
+
+		/**
+		 * リソースを開き、呼び出し側の都合でアクセスを繰り返すカーソルを取得します。
+		 * 
+		 * <p>
+		 * リソースは開いたままになるため、カーソルを閉じることで、リソースを閉じてください。
+		 * リソースの加工に失敗した場合は、リソースを閉じてから例外を送出します。
+		 * </p>
+		 * 
+		 * @return カーソル
+		 * @throws Exception リソースの取得または加工に失敗した場合
+		 */
+		public Cursor<R> open() throws Exception {
+			A resource = resourceGenerator.generate();
+
+			try {
+				return new Cursor<>(resource, processor.normalize(resourceProcessor.process(resource)));
+			} catch (Exception | Error e) {
+				try {
+					resource.close();
+				} catch (Exception suppressed) {
+					e.addSuppressed(suppressed);
+				}
+
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * 開いたままのリソースに、1回ずつアクセスするカーソルです。
+	 * 
+	 * @param <R> リソースに対して繰り返しアクセスする関数の結果
+	 * @see WhilePresent#open()
+	 */
+	public static final class Cursor<R> implements AutoCloseable {
+
+		/** 開いたままのリソース。 */
+		private final AutoCloseable resource;
+
+		/** リソースにアクセスする関数。 */
+		private final Generator<R, Exception> reader;
+
+		/**
+		 * コンストラクター。
+		 * 
+		 * @param resource 開いたままのリソース
+		 * @param reader リソースにアクセスする関数
+		 */
+		private Cursor(AutoCloseable resource, Generator<R, Exception> reader) {
+			this.resource = resource;
+			this.reader = reader;
+		}
+
+		/**
+		 * リソースに1回アクセスします。
+		 * 
+		 * @return 結果。リソースがもう結果を返さない場合はnull
+		 * @throws Exception リソースへのアクセスに失敗した場合
+		 */
+		public R next() throws Exception {
+			return reader.generate();
+		}
+
+		/**
+		 * リソースを閉じます。
+		 * 
+		 * <p>
+		 * リソースが {@link IOException} および非チェック例外以外の例外を送出した場合は、
+		 * {@link IOException} で包んで送出します。
+		 * 割り込みが発生した場合は、スレッドの割り込み状態を復元します。
+		 * </p>
+		 * 
+		 * @throws IOException リソースを閉じるのに失敗した場合
+		 */
+		@Override
+		public void close() throws IOException {
+			try {
+				resource.close();
+			} catch (IOException | RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				if (e instanceof InterruptedException) {
+					Thread.currentThread().interrupt();
+				}
+
+				throw new IOException(e);
+			}
+		}
 	}
 
 	/**
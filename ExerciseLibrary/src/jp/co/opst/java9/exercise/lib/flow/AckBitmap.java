@@ -0,0 +1,172 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 番号ごとの応答済みかどうかを、ヒープ外のビットマップで管理します。
+ * 
+ * <p>
+ * ビットマップは容量分のビットを持ち、番号を容量で割った余りの位置を使います。
+ * 位置をクリアせずに再利用できるよう、応答済みを表すビットの値を、容量を1周するごとに反転させます。
+ * ある周で未応答を表す値は前の周で応答済みを表す値と同じで、位置を再利用するのは前の周の番号が応答済みになった後だからです。
+ * </p>
+ * 
+ * <p>
+ * 下限（まだ応答していない最小の番号）は、ロックを使わずに進めます。
+ * 番号は、下限から容量未満の範囲でのみ使用してください。
+ * </p>
+ */
+final class AckBitmap {
+
+	/** ビットマップを64ビットずつアトミックにアクセスするVarHandle。 */
+	private static final VarHandle WORDS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+	/** ビットマップ。 */
+	private final ByteBuffer words;
+
+	/** 容量の2を底とする対数。 */
+	private final int shift;
+
+	/** 番号からビットの位置を求めるマスク。 */
+	private final long mask;
+
+	/** 下限。 */
+	private final AtomicLong lowWaterMark = new AtomicLong();
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param capacity 容量。2の累乗に切り上げられます
+	 * @throws IllegalArgumentException 容量が1未満の場合
+	 */
+	AckBitmap(int capacity) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("capacity=" + capacity);
+		}
+
+		int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		int bytes = ((size + Long.SIZE - 1) / Long.SIZE) * Long.BYTES;
+		this.words = ByteBuffer.allocateDirect(bytes + Long.BYTES - 1).alignedSlice(Long.BYTES);
+		this.shift = Integer.numberOfTrailingZeros(size);
+		this.mask = size - 1;
+	}
+
+	/**
+	 * 容量を取得します。
+	 * 
+	 * @return 容量
+	 */
+	int capacity() {
+		return (int) mask + 1;
+	}
+
+	/**
+	 * 応答済みにします。
+	 * 
+	 * @param sequence 番号
+	 * @return 応答済みにした場合はtrue、既に応答済みの場合はfalse
+	 */
+	boolean ack(long sequence) {
+		if (sequence < lowWaterMark.get()) {
+			return false;
+		}
+
+		int offset = offsetOf(sequence);
+		long bit = bitOf(sequence);
+		long acked = ackedBits(sequence) & bit;
+
+		while (true) {
+			long word = (long) WORDS.getVolatile(words, offset);
+
+			if ((word & bit) == acked) {
+				return false;
+			}
+
+			if (WORDS.compareAndSet(words, offset, word, word ^ bit)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 応答済みかどうかを判定します。
+	 * 
+	 * @param sequence 番号
+	 * @return 応答済みの場合はtrue
+	 */
+	boolean isAcked(long sequence) {
+		if (sequence < lowWaterMark.get()) {
+			return true;
+		}
+
+		long bit = bitOf(sequence);
+		long word = (long) WORDS.getVolatile(words, offsetOf(sequence));
+		return (word & bit) == (ackedBits(sequence) & bit);
+	}
+
+	/**
+	 * 応答済みの番号が続く限り、下限を進めます。
+	 * 
+	 * <p>
+	 * 複数のスレッドから同時に呼び出すことができます。
+	 * </p>
+	 * 
+	 * @return 進めた後の下限
+	 */
+	long advance() {
+		while (true) {
+			long low = lowWaterMark.get();
+			long bit = bitOf(low);
+			long word = (long) WORDS.getVolatile(words, offsetOf(low));
+
+			if ((word & bit) != (ackedBits(low) & bit)) {
+				return low;
+			}
+
+			lowWaterMark.compareAndSet(low, low + 1);
+		}
+	}
+
+	/**
+	 * 下限を取得します。
+	 * 
+	 * @return まだ応答していない最小の番号
+	 */
+	long getLowWaterMark() {
+		return lowWaterMark.get();
+	}
+
+	/**
+	 * 番号のビットを含む64ビットの、ビットマップ内の位置を求めます。
+	 * 
+	 * @param sequence 番号
+	 * @return バイト単位の位置
+	 */
+	private int offsetOf(long sequence) {
+		return (int) ((sequence & mask) >>> 6) * Long.BYTES;
+	}
+
+	/**
+	 * 番号のビットを、64ビット内の位置のマスクとして求めます。
+	 * 
+	 * @param sequence 番号
+	 * @return 番号のビットだけが1のマスク
+	 */
+	private long bitOf(long sequence) {
+		return 1L << (sequence & mask & (Long.SIZE - 1));
+	}
+
+	/**
+	 * 番号の周で、応答済みを表すビットの値を、64ビット全てに並べたものを求めます。
+	 * 
+	 * @param sequence 番号
+	 * @return 偶数周は全て1、奇数周は全て0
+	 */
+	private long ackedBits(long sequence) {
+		return ((sequence >>> shift) & 1) == 0 ? -1L : 0L;
+	}
+}
@@ -0,0 +1,47 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+/**
+ * 値ごとに処理結果を応答する処理モデルです。
+ * 
+ * <p>
+ * 応答しなかった値や、失敗を応答した値は、再配信されます。
+ * 同じ値が複数回配信されることがあるため、購読時の処理は冪等にしてください。
+ * </p>
+ * 
+ * @param <T> 購読した値
+ * @see AckingSubscriber
+ */
+public interface AckSubscriberModel<T> {
+
+	/**
+	 * 開始時の処理を行います。
+	 * 
+	 * @throws Exception 処理に失敗した場合
+	 */
+	public void begin() throws Exception;
+
+	/**
+	 * 購読時の処理を行います。
+	 * 
+	 * <p>
+	 * 処理が完了した時に{@link Acknowledgement#ack()}を、失敗した時に{@link Acknowledgement#nack()}を呼び出してください。
+	 * 例外を送出した場合は、失敗を応答したものとして扱い、応答の待機時間の後に再配信します。
+	 * </p>
+	 * 
+	 * @param item 購読した値
+	 * @param acknowledgement この配信に対する応答
+	 * @throws Exception 処理に失敗した場合
+	 */
+	public void accept(T item, Acknowledgement acknowledgement) throws Exception;
+
+	/**
+	 * 終了時の処理を行います。
+	 * 
+	 * <p>
+	 * 全ての値の処理が完了するか、再配信を諦めてから呼び出されます。
+	 * </p>
+	 * 
+	 * @throws Exception 処理に失敗した場合
+	 */
+	public void end() throws Exception;
+}
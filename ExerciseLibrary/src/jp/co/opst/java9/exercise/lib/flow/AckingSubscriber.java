@@ -0,0 +1,653 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jp.co.opst.java9.exercise.lib.exception.Try;
+
+/**
+ * 値ごとの応答を待ち、応答がない値を再配信するサブスクライバーです。
+ * 
+ * <p>
+ * 受け取った値には、受け取った順に0から番号を付けます。
+ * 応答済みかどうかは、番号ごとにヒープ外のビットマップで管理し、
+ * 応答済みの番号が下限から続く分だけ、ロックを使わずに下限を進めて、同じ数をリクエストします。
+ * そのため、未応答の値は、最大で応答待ちの上限までです。
+ * </p>
+ * 
+ * <p>
+ * 応答の待機時間が過ぎても応答がない値や、失敗を応答した値は、再配信します。
+ * 配信回数の上限に達した値は、破棄ハンドラーに渡して、応答済みとして扱います。
+ * 応答済みの値や破棄した値は、保持するのをやめます。
+ * </p>
+ * 
+ * <p>
+ * モデルへの配信は、その時に配信を行っているスレッドが1つずつ順に行い、
+ * モデルの購読時の処理は、同時に複数のスレッドから呼び出されることはありません。
+ * 他のスレッドが配信中の場合、上流からの値は保持するだけで、配信を待たずに戻ります。
+ * このインスタンスのロックは、配信する値を選ぶ間だけ取得し、モデルの購読時の処理の間は取得しません。
+ * 再配信する値を選ぶ時は、ロックを取得したまま、応答待ちの上限の数だけ番号を確認します。
+ * </p>
+ * 
+ * @param <T> 購読する型
+ */
+public class AckingSubscriber<T> implements Flow.Subscriber<T> {
+
+	/**
+	 * 破棄ハンドラーに渡す、応答を返すモデルのアダプターです。
+	 * 
+	 * <p>
+	 * 破棄ハンドラーがどのモデル宛ての値かを識別できるように、元のモデルを保持します。
+	 * 値を処理するためのものではないため、各処理は{@link UnsupportedOperationException}を送出します。
+	 * </p>
+	 * 
+	 * @param <T> 購読する型
+	 */
+	public static final class AckModelAdapter<T> implements SubscriberModel<T> {
+
+		/** 元のモデル。 */
+		private final AckSubscriberModel<? super T> model;
+
+		/**
+		 * コンストラクター。
+		 * 
+		 * @param model 元のモデル
+		 */
+		private AckModelAdapter(AckSubscriberModel<? super T> model) {
+			this.model = model;
+		}
+
+		/**
+		 * 元のモデルを取得します。
+		 * 
+		 * @return 元のモデル
+		 */
+		public AckSubscriberModel<? super T> getModel() {
+			return model;
+		}
+
+		/**
+		 * 購読開始時の処理は行えません。
+		 * 
+		 * @throws UnsupportedOperationException 常に送出します
+		 */
+		@Override
+		public void begin() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * 購読時の処理は行えません。
+		 * 
+		 * @param item 値
+		 * @throws UnsupportedOperationException 常に送出します
+		 */
+		@Override
+		public void accept(T item) {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * 終了時の処理は行えません。
+		 * 
+		 * @throws UnsupportedOperationException 常に送出します
+		 */
+		@Override
+		public void end() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * 元のモデルの文字列表現を返します。
+		 * 
+		 * @return 元のモデルの文字列表現
+		 */
+		@Override
+		public String toString() {
+			return model.toString();
+		}
+	}
+
+	/**
+	 * 配信する値です。
+	 */
+	private static final class Dispatch {
+
+		/** 番号。 */
+		private final long sequence;
+
+		/** 値。 */
+		private final Object item;
+
+		/** 配信回数の上限に達したために、配信せずに破棄するかどうか。 */
+		private final boolean discarded;
+
+		/** 再配信かどうか。 */
+		private final boolean retry;
+
+		/**
+		 * コンストラクター。
+		 * 
+		 * @param sequence 番号
+		 * @param item 値
+		 * @param discarded 配信せずに破棄するかどうか
+		 * @param retry 再配信かどうか
+		 */
+		private Dispatch(long sequence, Object item, boolean discarded, boolean retry) {
+			this.sequence = sequence;
+			this.item = item;
+			this.discarded = discarded;
+			this.retry = retry;
+		}
+	}
+
+	/**
+	 * 1回の配信に対する応答です。
+	 */
+	private final class Delivery implements Acknowledgement {
+
+		/** 番号。 */
+		private final long sequence;
+
+		/** 配信した時刻（ナノ秒）。 */
+		private final long deliveredAt;
+
+		/**
+		 * コンストラクター。
+		 * 
+		 * @param sequence 番号
+		 * @param deliveredAt 配信した時刻（ナノ秒）
+		 */
+		private Delivery(long sequence, long deliveredAt) {
+			this.sequence = sequence;
+			this.deliveredAt = deliveredAt;
+		}
+
+		/**
+		 * 値の処理が完了したことを応答します。
+		 */
+		@Override
+		public void ack() {
+			if (bitmap.ack(sequence)) {
+				metrics.recordAccepted(System.nanoTime() - deliveredAt);
+				forget(sequence);
+				release();
+			}
+		}
+
+		/**
+		 * 値の処理に失敗したことを応答し、すぐに再配信するように要求します。
+		 */
+		@Override
+		public void nack() {
+			if (markDue(sequence)) {
+				metrics.recordError();
+				executor.execute(AckingSubscriber.this::drain);
+			}
+		}
+
+		/**
+		 * 値の番号を取得します。
+		 * 
+		 * @return 番号
+		 */
+		@Override
+		public long getSequence() {
+			return sequence;
+		}
+	}
+
+	/** コンテキスト。 */
+	private final SubscriberContext context;
+
+	/** モデル。 */
+	private final AckSubscriberModel<? super T> model;
+
+	/** 破棄ハンドラーに渡すモデル。 */
+	private final AckModelAdapter<T> dropModel;
+
+	/** 計測値。 */
+	private final SubscriberMetrics metrics;
+
+	/** 再配信を行うエグゼキューター。 */
+	private final Executor executor;
+
+	/** 応答の待機時間（ナノ秒）。 */
+	private final long ackTimeoutNanos;
+
+	/** 配信回数の上限。 */
+	private final int maxDeliveries;
+
+	/** 番号ごとの応答済みかどうか。 */
+	private final AckBitmap bitmap;
+
+	/** 番号ごとの値。ビットマップと同じ位置を使います。 */
+	private final Object[] items;
+
+	/** 番号ごとの再配信する時刻（ナノ秒）。 */
+	private final long[] deadlines;
+
+	/** 番号ごとの配信回数。 */
+	private final int[] deliveries;
+
+	/** 受け取った値の数（次に付ける番号）。値の配列への書き込みは、このインスタンスのロックを取得して行います。 */
+	private volatile long received;
+
+	/** まだ1度も配信していない最初の番号。このインスタンスのロックを取得してアクセスします。 */
+	private long undelivered;
+
+	/** 再配信する値を探すかどうか。このインスタンスのロックを取得してアクセスします。 */
+	private boolean sweepRequested;
+
+	/** 再配信する番号のキュー。このインスタンスのロックを取得してアクセスします。 */
+	private final long[] dueSequences;
+
+	/** 再配信する番号のキューの先頭。 */
+	private int dueHead;
+
+	/** 再配信する番号のキューの件数。 */
+	private int dueCount;
+
+	/** 配信を要求された回数。0から増やしたスレッドが、0に戻るまで配信を行います。 */
+	private final AtomicInteger wip = new AtomicInteger();
+
+	/** これまでにリクエストした数。 */
+	private final AtomicLong requested = new AtomicLong();
+
+	/** 上流が終了したかどうか。 */
+	private final AtomicBoolean upstreamDone = new AtomicBoolean();
+
+	/** 終了時の処理を行ったかどうか。 */
+	private final AtomicBoolean finished = new AtomicBoolean();
+
+	/** 上流から通知された例外。 */
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+	/** サブスクリプション。 */
+	private Flow.Subscription subscription;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param context コンテキスト
+	 * @param model モデル
+	 * @param maxUnacked 応答待ちの上限。2の累乗に切り上げられます
+	 * @param ackTimeout 応答の待機時間
+	 * @param maxDeliveries 配信回数の上限
+	 * @param executor 再配信を行うエグゼキューター
+	 * @param metrics 計測値
+	 * @throws IllegalArgumentException 応答待ちの上限か配信回数の上限が1未満、または待機時間が正でない場合
+	 */
+	public AckingSubscriber(SubscriberContext context, AckSubscriberModel<? super T> model, int maxUnacked,
+			Duration ackTimeout, int maxDeliveries, Executor executor, SubscriberMetrics metrics) {
+		if (maxDeliveries < 1 || ackTimeout.isNegative() || ackTimeout.isZero()) {
+			throw new IllegalArgumentException(
+				String.format("ackTimeout=%s, maxDeliveries=%d", ackTimeout, maxDeliveries));
+		}
+
+		this.context = context;
+		this.model = model;
+		this.dropModel = new AckModelAdapter<>(model);
+		this.metrics = metrics;
+		this.executor = executor;
+		this.ackTimeoutNanos = ackTimeout.toNanos();
+		this.maxDeliveries = maxDeliveries;
+		this.bitmap = new AckBitmap(maxUnacked);
+		this.items = new Object[bitmap.capacity()];
+		this.deadlines = new long[bitmap.capacity()];
+		this.deliveries = new int[bitmap.capacity()];
+		this.dueSequences = new long[bitmap.capacity()];
+	}
+
+	/**
+	 * 購読開始時の処理を行います。
+	 * 
+	 * <p>
+	 * 応答待ちの上限だけリクエストし、再配信の確認を開始します。
+	 * </p>
+	 * 
+	 * @param subscription サブスクリプション
+	 */
+	@Override
+	public final void onSubscribe(Flow.Subscription subscription) {
+		metrics.recordStarted();
+		Try.uncheck(model::begin);
+		this.subscription = subscription;
+		requested.set(bitmap.capacity());
+		subscription.request(bitmap.capacity());
+		scheduleRedelivery();
+	}
+
+	/**
+	 * 購読時の処理を行います。
+	 * 
+	 * <p>
+	 * 値に番号を付けて保持し、モデルに配信します。
+	 * 他のスレッドが配信中の場合は、そのスレッドに配信を任せて、すぐに戻ります。
+	 * </p>
+	 * 
+	 * @param item 購読した値
+	 */
+	@Override
+	public final void onNext(T item) {
+		if (finished.get()) {
+			return;
+		}
+
+		synchronized (this) {
+			long sequence = received;
+			int index = indexOf(sequence);
+			items[index] = item;
+			deliveries[index] = 0;
+			received = sequence + 1;
+		}
+
+		drain();
+	}
+
+	/**
+	 * 例外時の処理を行います。
+	 * 
+	 * <p>
+	 * 応答待ちの値の処理が終わるのを待ってから終了します。
+	 * </p>
+	 * 
+	 * @param error 発生した例外
+	 */
+	@Override
+	public final void onError(Throwable error) {
+		failure.compareAndSet(null, error);
+		upstreamDone.set(true);
+		finishIfIdle();
+	}
+
+	/**
+	 * 購読完了時の処理を行います。
+	 * 
+	 * <p>
+	 * 応答待ちの値の処理が終わるのを待ってから終了します。
+	 * </p>
+	 */
+	@Override
+	public final void onComplete() {
+		upstreamDone.set(true);
+		finishIfIdle();
+	}
+
+	/**
+	 * 計測値を取得します。
+	 * 
+	 * @return 計測値
+	 */
+	public SubscriberMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * 破棄ハンドラーに渡すモデルを取得します。
+	 * 
+	 * @return 破棄ハンドラーに渡すモデル
+	 */
+	AckModelAdapter<T> getDropModel() {
+		return dropModel;
+	}
+
+	/**
+	 * 配信する値がなくなるまで、値をモデルに配信します。
+	 * 
+	 * <p>
+	 * 他のスレッドが配信中の場合は、そのスレッドに配信を任せて、すぐに戻ります。
+	 * モデルが例外を送出した場合は、応答の待機時間の後に再配信します。
+	 * </p>
+	 */
+	private void drain() {
+		if (wip.getAndIncrement() != 0) {
+			return;
+		}
+
+		int missed = 1;
+
+		do {
+			for (Dispatch dispatch = nextDispatch(); dispatch != null && !finished.get(); dispatch = nextDispatch()) {
+				deliver(dispatch);
+			}
+
+			missed = wip.addAndGet(-missed);
+		} while (missed != 0);
+	}
+
+	/**
+	 * 値をモデルに配信するか、配信回数の上限に達した値を破棄します。
+	 * 
+	 * <p>
+	 * このインスタンスのロックを取得せずに呼び出してください。
+	 * </p>
+	 * 
+	 * @param dispatch 配信する値
+	 */
+	private void deliver(Dispatch dispatch) {
+		if (dispatch.discarded) {
+			metrics.recordSkipped();
+			context.getDropHandler().accept(dropModel, dispatch.item);
+			release();
+			return;
+		}
+
+		if (dispatch.retry) {
+			metrics.recordRetried();
+		}
+
+		@SuppressWarnings("unchecked")
+		T item = (T) dispatch.item;
+
+		try {
+			model.accept(item, new Delivery(dispatch.sequence, System.nanoTime()));
+		} catch (Exception e) {
+			metrics.recordError();
+		}
+	}
+
+	/**
+	 * 次に配信する値を選びます。
+	 * 
+	 * <p>
+	 * 再配信する値を優先し、次にまだ配信していない値を選びます。
+	 * 再配信を要求されている場合は、再配信する時刻を過ぎた未応答の値を探して、キューに入れます。
+	 * </p>
+	 * 
+	 * @return 配信する値。配信する値がない場合はnull
+	 */
+	private synchronized Dispatch nextDispatch() {
+		while (true) {
+			while (dueCount > 0) {
+				long sequence = dueSequences[dueHead];
+				dueHead = (dueHead + 1) & (dueSequences.length - 1);
+				dueCount--;
+				Dispatch dispatch = dispatch(sequence);
+
+				if (dispatch != null) {
+					return dispatch;
+				}
+			}
+
+			if (undelivered < received) {
+				return dispatch(undelivered++);
+			}
+
+			if (!sweepRequested) {
+				return null;
+			}
+
+			sweepRequested = false;
+			long now = System.nanoTime();
+
+			for (long sequence = bitmap.getLowWaterMark(); sequence < undelivered; sequence++) {
+				if (!bitmap.isAcked(sequence) && deadlines[indexOf(sequence)] - now <= 0) {
+					dueSequences[(dueHead + dueCount) & (dueSequences.length - 1)] = sequence;
+					dueCount++;
+				}
+			}
+
+			if (dueCount == 0) {
+				return null;
+			}
+		}
+	}
+
+	/**
+	 * 値の配信を記録します。
+	 * 
+	 * <p>
+	 * このインスタンスのロックを取得した状態で呼び出してください。
+	 * 配信回数の上限に達した値は、応答済みにして、保持するのをやめます。
+	 * </p>
+	 * 
+	 * @param sequence 番号
+	 * @return 配信する値。既に応答済みの場合はnull
+	 */
+	private Dispatch dispatch(long sequence) {
+		if (bitmap.isAcked(sequence)) {
+			return null;
+		}
+
+		int index = indexOf(sequence);
+		Object item = items[index];
+
+		if (deliveries[index] >= maxDeliveries) {
+			if (!bitmap.ack(sequence)) {
+				return null;
+			}
+
+			items[index] = null;
+			return new Dispatch(sequence, item, true, false);
+		}
+
+		boolean retry = deliveries[index] > 0;
+		deadlines[index] = System.nanoTime() + ackTimeoutNanos;
+		deliveries[index]++;
+		return new Dispatch(sequence, item, false, retry);
+	}
+
+	/**
+	 * 応答済みの値を保持するのをやめます。
+	 * 
+	 * <p>
+	 * 同じ位置が既に次の値に使われている場合は、何もしません。
+	 * </p>
+	 * 
+	 * @param sequence 番号
+	 */
+	private synchronized void forget(long sequence) {
+		if (sequence + bitmap.capacity() >= received) {
+			items[indexOf(sequence)] = null;
+		}
+	}
+
+	/**
+	 * 未応答の値を、すぐに再配信する対象にします。
+	 * 
+	 * @param sequence 番号
+	 * @return 未応答だった場合はtrue
+	 */
+	private synchronized boolean markDue(long sequence) {
+		if (bitmap.isAcked(sequence)) {
+			return false;
+		}
+
+		deadlines[indexOf(sequence)] = System.nanoTime();
+		sweepRequested = true;
+		return true;
+	}
+
+	/**
+	 * 再配信する時刻を過ぎた未応答の値の再配信を要求し、配信します。
+	 */
+	private void redeliver() {
+		synchronized (this) {
+			sweepRequested = true;
+		}
+
+		drain();
+	}
+
+	/**
+	 * 再配信の確認を、応答の待機時間の後に予約します。
+	 * 
+	 * <p>
+	 * 終了するまで、確認のたびに次の確認を予約します。
+	 * </p>
+	 */
+	private void scheduleRedelivery() {
+		CompletableFuture.delayedExecutor(ackTimeoutNanos, TimeUnit.NANOSECONDS, executor).execute(() -> {
+			if (!finished.get()) {
+				redeliver();
+				scheduleRedelivery();
+			}
+		});
+	}
+
+	/**
+	 * 下限を進めて、応答待ちに空きができた分だけリクエストします。
+	 * 
+	 * <p>
+	 * ロックを使わずに、複数のスレッドから同時に呼び出すことができます。
+	 * </p>
+	 */
+	private void release() {
+		long target = bitmap.advance() + bitmap.capacity();
+
+		while (true) {
+			long current = requested.get();
+
+			if (current >= target) {
+				break;
+			}
+
+			if (requested.compareAndSet(current, target)) {
+				if (!upstreamDone.get()) {
+					subscription.request(target - current);
+				}
+
+				break;
+			}
+		}
+
+		finishIfIdle();
+	}
+
+	/**
+	 * 上流が終了していて全ての値が応答済みの場合に、終了時の処理を1回だけ行います。
+	 */
+	private void finishIfIdle() {
+		if (!upstreamDone.get() || bitmap.advance() < received || !finished.compareAndSet(false, true)) {
+			return;
+		}
+
+		Throwable error = failure.get();
+
+		if (error != null) {
+			Try.of(error).ignore(context.getErrorHandler()::accept);
+		}
+
+		Try.ignore(model::end);
+		metrics.recordFinished();
+		context.getDoneSignal().run();
+	}
+
+	/**
+	 * 番号を、配列の位置に変換します。
+	 * 
+	 * @param sequence 番号
+	 * @return 配列の位置
+	 */
+	private int indexOf(long sequence) {
+		return (int) (sequence & (bitmap.capacity() - 1));
+	}
+}
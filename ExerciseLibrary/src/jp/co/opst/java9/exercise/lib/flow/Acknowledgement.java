@@ -0,0 +1,31 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+/**
+ * 1回の配信に対する、処理結果の応答です。
+ * 
+ * <p>
+ * 応答は、購読時の処理の中でも、処理の後に別のスレッドからでも行うことができます。
+ * 2回目以降の応答は無視されます。
+ * </p>
+ * 
+ * @see AckSubscriberModel
+ */
+public interface Acknowledgement {
+
+	/**
+	 * 値の処理が完了したことを応答します。
+	 */
+	public void ack();
+
+	/**
+	 * 値の処理に失敗したことを応答し、すぐに再配信するように要求します。
+	 */
+	public void nack();
+
+	/**
+	 * 値の番号を取得します。
+	 * 
+	 * @return 購読を開始してから受け取った順に、0から付けた番号
+	 */
+	public long getSequence();
+}
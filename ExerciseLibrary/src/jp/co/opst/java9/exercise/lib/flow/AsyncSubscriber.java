@@ -0,0 +1,189 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import jp.co.opst.java9.exercise.lib.exception.Try;
+
+/**
+ * 非同期の処理モデルを呼び出すサブスクライバーです。
+ * 
+ * <p>
+ * 処理中の値が上限に達するまで、処理の完了を待たずに次の値を購読します。
+ * 処理が1件完了するごとに1件リクエストし、全ての処理が完了してから、モデルの終了時の処理を行います。
+ * 処理が1件でも失敗した場合は、購読を取り消し、処理中の値が完了するのを待ってから終了します。
+ * </p>
+ * 
+ * @param <T> 購読する型
+ */
+public class AsyncSubscriber<T> implements Flow.Subscriber<T> {
+
+	/** コンテキスト。 */
+	private final SubscriberContext context;
+
+	/** モデル。 */
+	private final AsyncSubscriberModel<? super T> model;
+
+	/** 処理中の値の上限。 */
+	private final int maxInFlight;
+
+	/** 計測値。 */
+	private final SubscriberMetrics metrics;
+
+	/** 処理中の値の数。 */
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	/** 上流が終了したかどうか。 */
+	private final AtomicBoolean upstreamDone = new AtomicBoolean();
+
+	/** 終了時の処理を行ったかどうか。 */
+	private final AtomicBoolean finished = new AtomicBoolean();
+
+	/** 最初に発生した例外。 */
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+	/** サブスクリプション。 */
+	private Flow.Subscription subscription;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param context コンテキスト
+	 * @param model モデル
+	 * @param maxInFlight 処理中の値の上限
+	 * @param metrics 計測値
+	 * @throws IllegalArgumentException 処理中の値の上限が1未満の場合
+	 */
+	public AsyncSubscriber(SubscriberContext context, AsyncSubscriberModel<? super T> model, int maxInFlight,
+			SubscriberMetrics metrics) {
+		if (maxInFlight < 1) {
+			throw new IllegalArgumentException("maxInFlight=" + maxInFlight);
+		}
+
+		this.context = context;
+		this.model = model;
+		this.maxInFlight = maxInFlight;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * 購読開始時の処理を行います。
+	 * 
+	 * @param subscription サブスクリプション
+	 */
+	@Override
+	public final void onSubscribe(Flow.Subscription subscription) {
+		metrics.recordStarted();
+		Try.uncheck(model::begin);
+		this.subscription = subscription;
+		subscription.request(maxInFlight);
+	}
+
+	/**
+	 * 購読時の処理を行います。
+	 * 
+	 * <p>
+	 * モデルの処理を開始し、完了を待たずに復帰します。
+	 * </p>
+	 * 
+	 * @param item 購読した値
+	 */
+	@Override
+	public final void onNext(T item) {
+		if (failure.get() != null) {
+			return;
+		}
+
+		inFlight.incrementAndGet();
+		long start = System.nanoTime();
+		CompletionStage<Void> stage;
+
+		try {
+			stage = model.accept(item);
+		} catch (Throwable t) {
+			complete(start, t);
+			return;
+		}
+
+		stage.whenComplete((result, error) -> complete(start, error));
+	}
+
+	/**
+	 * 例外時の処理を行います。
+	 * 
+	 * @param error 発生した例外
+	 */
+	@Override
+	public final void onError(Throwable error) {
+		failure.compareAndSet(null, error);
+		upstreamDone.set(true);
+		finishIfIdle();
+	}
+
+	/**
+	 * 購読完了時の処理を行います。
+	 */
+	@Override
+	public final void onComplete() {
+		upstreamDone.set(true);
+		finishIfIdle();
+	}
+
+	/**
+	 * 計測値を取得します。
+	 * 
+	 * @return 計測値
+	 */
+	public SubscriberMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * 1件の処理が完了した時の処理を行います。
+	 * 
+	 * @param start 処理を開始した時刻（ナノ秒）
+	 * @param error 発生した例外。成功した場合はnull
+	 */
+	private void complete(long start, Throwable error) {
+		if (error == null) {
+			metrics.recordAccepted(System.nanoTime() - start);
+		} else {
+			metrics.recordError();
+
+			if (failure.compareAndSet(null, error)) {
+				subscription.cancel();
+				upstreamDone.set(true);
+			}
+		}
+
+		inFlight.decrementAndGet();
+
+		if (failure.get() == null) {
+			subscription.request(1);
+		}
+
+		finishIfIdle();
+	}
+
+	/**
+	 * 上流が終了していて処理中の値がない場合に、終了時の処理を1回だけ行います。
+	 */
+	private void finishIfIdle() {
+		if (!upstreamDone.get() || inFlight.get() > 0 || !finished.compareAndSet(false, true)) {
+			return;
+		}
+
+		Throwable error = failure.get();
+
+		if (error != null) {
+			Try.of(error).ignore(context.getErrorHandler()::accept);
+		}
+
+		Try.ignore(model::end);
+		metrics.recordFinished();
+		context.getDoneSignal().run();
+	}
+}
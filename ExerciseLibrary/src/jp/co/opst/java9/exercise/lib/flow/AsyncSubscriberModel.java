@@ -0,0 +1,44 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * サブスクライバーから呼び出される、非同期の処理モデルです。
+ * 
+ * @param <T> 購読した値
+ * @see AsyncSubscriber
+ */
+public interface AsyncSubscriberModel<T> {
+
+	/**
+	 * 開始時の処理を行います。
+	 * 
+	 * @throws Exception 処理に失敗した場合
+	 */
+	public void begin() throws Exception;
+
+	/**
+	 * 購読時の処理を開始します。
+	 * 
+	 * <p>
+	 * 処理の完了を待たずに復帰し、処理が完了した時に完了するステージを返してください。
+	 * 処理に失敗した場合は、ステージを例外で完了させてください。
+	 * </p>
+	 * 
+	 * @param item 購読した値
+	 * @return 処理が完了した時に完了するステージ
+	 * @throws Exception 処理の開始に失敗した場合
+	 */
+	public CompletionStage<Void> accept(T item) throws Exception;
+
+	/**
+	 * 終了時の処理を行います。
+	 * 
+	 * <p>
+	 * 全ての処理のステージが完了してから呼び出されます。
+	 * </p>
+	 * 
+	 * @throws Exception 処理に失敗した場合
+	 */
+	public void end() throws Exception;
+}
@@ -0,0 +1,66 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 発行中のシンプルパブリッシャーに追加したモデルの、切り離し用のハンドルです。
+ * 
+ * @see SimplePublisher#attach(SubscriberModel)
+ */
+public final class Attachment {
+
+	/** サブスクライバー。 */
+	private final SubscriberBase<?> subscriber;
+
+	/** 発行した値の数を取得する関数。 */
+	private final LongSupplier position;
+
+	/** 追加した時点で発行済だった値の数。 */
+	private final long start;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param subscriber サブスクライバー
+	 * @param position 発行した値の数を取得する関数
+	 */
+	Attachment(SubscriberBase<?> subscriber, LongSupplier position) {
+		this.subscriber = subscriber;
+		this.position = position;
+		this.start = position.getAsLong();
+	}
+
+	/**
+	 * モデルを切り離します。
+	 * 
+	 * <p>
+	 * 切り離しを要求した時点までに発行された値を、モデルが受け取り終えてから、購読を取り消して終了します。
+	 * 値が破棄された場合は、その分だけ後から発行された値を受け取ってから終了します。
+	 * 遅くとも、パブリッシャーの発行を終了した時点で終了します。
+	 * </p>
+	 */
+	public void detach() {
+		subscriber.drain(position.getAsLong() - start);
+	}
+
+	/**
+	 * モデルを直ちに切り離します。
+	 * 
+	 * <p>
+	 * サブスクライバーのバッファーに残っている値は破棄されます。
+	 * モデルが値を処理中の場合は、その値の処理が終わってから終了します。
+	 * </p>
+	 */
+	public void cancel() {
+		subscriber.cancel();
+	}
+
+	/**
+	 * 計測値を取得します。
+	 * 
+	 * @return 計測値
+	 */
+	public SubscriberMetrics getMetrics() {
+		return subscriber.getMetrics();
+	}
+}
@@ -0,0 +1,37 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.List;
+
+/**
+ * サブスクライバーから、購読した値をまとめて受け取る処理モデルです。
+ * 
+ * @param <T> 購読した値
+ */
+public interface BatchSubscriberModel<T> {
+
+	/**
+	 * 開始時の処理を行います。
+	 * 
+	 * @throws Exception 処理に失敗した場合
+	 */
+	public void begin() throws Exception;
+
+	/**
+	 * 購読した値をまとめて処理します。
+	 * 
+	 * <p>
+	 * 渡されるリストは空ではなく、この呼び出しの間だけ有効です。
+	 * </p>
+	 * 
+	 * @param items 購読した値のリスト
+	 * @throws Exception 処理に失敗した場合
+	 */
+	public void acceptBatch(List<T> items) throws Exception;
+
+	/**
+	 * 終了時の処理を行います。
+	 * 
+	 * @throws Exception 処理に失敗した場合
+	 */
+	public void end() throws Exception;
+}
@@ -0,0 +1,193 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 購読した値を溜め込み、まとめて{@link BatchSubscriberModel}に渡すモデルです。
+ * 
+ * <p>
+ * 溜め込んだ値は、件数が上限に達した時か、最初の値を溜め込んでから待機時間が経過した時の、
+ * いずれか早い方でまとめて渡されます。
+ * 終了時には、溜め込んだ値を必ず渡してから{@link BatchSubscriberModel#end()}を呼び出します。
+ * </p>
+ * 
+ * <p>
+ * 待機時間の経過によってまとめて渡した時に発生した例外は、次回の購読時または終了時に送出されます。
+ * </p>
+ * 
+ * @param <T> 購読した値
+ */
+public class BatchingModel<T> implements SubscriberModel<T> {
+
+	/** まとめて処理するモデル。 */
+	private final BatchSubscriberModel<T> model;
+
+	/** 件数の上限。 */
+	private final int batchSize;
+
+	/** 待機時間。 */
+	private final Duration linger;
+
+	/** 溜め込んだ値。 */
+	private final List<T> buffer;
+
+	/** 待機時間を計るタイマー。待機時間を使用しない場合はnull。 */
+	private ScheduledExecutorService timer;
+
+	/** まとめて渡した回数。タイマーの予約が有効かどうかの判定に使用します。 */
+	private long generation;
+
+	/** タイマーによってまとめて渡した時に発生した例外。 */
+	private Exception failure;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param model まとめて処理するモデル
+	 * @param batchSize 件数の上限
+	 * @param linger 待機時間。ゼロの場合は件数の上限だけでまとめて渡します
+	 * @throws IllegalArgumentException 件数の上限が1未満、または待機時間が負の場合
+	 */
+	public BatchingModel(BatchSubscriberModel<T> model, int batchSize, Duration linger) {
+		if (batchSize < 1 || linger.isNegative()) {
+			throw new IllegalArgumentException(String.format("batchSize=%d, linger=%s", batchSize, linger));
+		}
+
+		this.model = model;
+		this.batchSize = batchSize;
+		this.linger = linger;
+		this.buffer = new ArrayList<>(batchSize);
+	}
+
+	/**
+	 * 開始時の処理を行います。
+	 * 
+	 * <p>
+	 * まとめて処理するモデルの開始時の処理を行い、待機時間を計るタイマーを生成します。
+	 * </p>
+	 * 
+	 * @throws Exception まとめて処理するモデルの開始に失敗した場合
+	 */
+	@Override
+	public void begin() throws Exception {
+		model.begin();
+
+		if (!linger.isZero()) {
+			timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+				Thread thread = new Thread(runnable, "batching-model-timer");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * 購読時の処理を行います。
+	 * 
+	 * <p>
+	 * 購読した値を溜め込み、件数の上限に達した場合はまとめて渡します。
+	 * </p>
+	 * 
+	 * @param item 購読した値
+	 * @throws Exception まとめて処理するモデルが失敗した場合
+	 */
+	@Override
+	public synchronized void accept(T item) throws Exception {
+		rethrow();
+		buffer.add(item);
+
+		if (buffer.size() >= batchSize) {
+			flush();
+		} else if (buffer.size() == 1 && timer != null) {
+			long scheduled = generation;
+			timer.schedule(() -> flushOnTimer(scheduled), linger.toNanos(), TimeUnit.NANOSECONDS);
+		}
+	}
+
+	/**
+	 * 終了時の処理を行います。
+	 * 
+	 * <p>
+	 * 溜め込んだ値をまとめて渡した後、タイマーを停止し、まとめて処理するモデルの終了時の処理を行います。
+	 * タイマーによってまとめて渡した時の例外が残っていても、溜め込んだ値は渡してから、その例外を送出します。
+	 * </p>
+	 * 
+	 * @throws Exception まとめて処理するモデルが失敗した場合
+	 */
+	@Override
+	public synchronized void end() throws Exception {
+		try {
+			try {
+				flush();
+			} catch (Exception e) {
+				if (failure != null) {
+					failure.addSuppressed(e);
+				} else {
+					failure = e;
+				}
+			}
+
+			rethrow();
+		} finally {
+			if (timer != null) {
+				timer.shutdownNow();
+			}
+
+			model.end();
+		}
+	}
+
+	/**
+	 * 溜め込んだ値をまとめて渡します。
+	 * 
+	 * @throws Exception まとめて処理するモデルが失敗した場合
+	 */
+	private void flush() throws Exception {
+		generation++;
+
+		if (buffer.isEmpty()) {
+			return;
+		}
+
+		try {
+			model.acceptBatch(buffer);
+		} finally {
+			buffer.clear();
+		}
+	}
+
+	/**
+	 * 待機時間が経過した時に、溜め込んだ値をまとめて渡します。
+	 * 
+	 * @param scheduled 予約した時点でのまとめて渡した回数
+	 */
+	private synchronized void flushOnTimer(long scheduled) {
+		if (scheduled != generation || failure != null) {
+			return;
+		}
+
+		try {
+			flush();
+		} catch (Exception e) {
+			failure = e;
+		}
+	}
+
+	/**
+	 * タイマーによってまとめて渡した時に発生した例外を送出します。
+	 * 
+	 * @throws Exception タイマーによってまとめて渡した時に例外が発生していた場合
+	 */
+	private void rethrow() throws Exception {
+		if (failure != null) {
+			Exception e = failure;
+			failure = null;
+			throw e;
+		}
+	}
+}
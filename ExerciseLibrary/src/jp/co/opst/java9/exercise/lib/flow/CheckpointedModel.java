@@ -0,0 +1,100 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.nio.MappedByteBuffer;
+
+/**
+ * 処理した値のオフセットを、ジャーナルのチェックポイントに記録するモデルです。
+ * 
+ * <p>
+ * 値の処理を終えたこと（失敗時の方針によって読み捨てた場合を含みます）は、
+ * {@link SubscriberBase}が{@link #advance()}を呼び出して通知します。
+ * </p>
+ * 
+ * @param <T> 購読した値
+ * @see Journal#checkpointed(String, SubscriberModel)
+ */
+class CheckpointedModel<T> implements SubscriberModel<T> {
+
+	/** ジャーナル。 */
+	private final Journal<T> journal;
+
+	/** モデル。 */
+	private final SubscriberModel<? super T> model;
+
+	/** チェックポイント。 */
+	private final MappedByteBuffer checkpoint;
+
+	/** 開始時に読み直す値の、最初のオフセット。 */
+	private final long resume;
+
+	/** 新たに発行された値の、最初のオフセット。 */
+	private final long liveStart;
+
+	/** 次に処理する値のオフセット。 */
+	private long position;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param journal ジャーナル
+	 * @param model モデル
+	 * @param checkpoint チェックポイント
+	 * @param resume 開始時に読み直す値の、最初のオフセット
+	 * @param liveStart 新たに発行された値の、最初のオフセット
+	 */
+	CheckpointedModel(Journal<T> journal, SubscriberModel<? super T> model, MappedByteBuffer checkpoint, long resume,
+			long liveStart) {
+		this.journal = journal;
+		this.model = model;
+		this.checkpoint = checkpoint;
+		this.resume = resume;
+		this.liveStart = liveStart;
+	}
+
+	/**
+	 * 開始時の処理を行います。
+	 * 
+	 * <p>
+	 * モデルの開始時の処理を行った後、チェックポイントから読み直した値を処理します。
+	 * </p>
+	 * 
+	 * @throws Exception 処理に失敗した場合
+	 */
+	@Override
+	public void begin() throws Exception {
+		model.begin();
+		position = resume;
+		journal.replay(resume, liveStart, item -> {
+			model.accept(item);
+			advance();
+		});
+	}
+
+	/**
+	 * 購読時の処理を行います。
+	 * 
+	 * @param item 購読した値
+	 * @throws Exception 処理に失敗した場合
+	 */
+	@Override
+	public void accept(T item) throws Exception {
+		model.accept(item);
+	}
+
+	/**
+	 * 終了時の処理を行います。
+	 * 
+	 * @throws Exception 処理に失敗した場合
+	 */
+	@Override
+	public void end() throws Exception {
+		model.end();
+	}
+
+	/**
+	 * 1件の値の処理を終えたことを、チェックポイントに記録します。
+	 */
+	void advance() {
+		checkpoint.putLong(0, ++position);
+	}
+}
@@ -0,0 +1,230 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import jp.co.opst.java9.exercise.lib.exception.Try;
+
+/**
+ * 最新の値だけをモデルに渡すサブスクライバーです。
+ * 
+ * <p>
+ * 購読した値はキーごとのスロットに上書きして保持し、モデルへの受け渡しは別のスレッドで行います。
+ * モデルの処理が追いつかない間に届いた値は、同じキーの新しい値で上書きされ、モデルには渡されません。
+ * 購読時の処理はスロットへの上書きだけで、上限なしにリクエストするため、
+ * モデルが遅くても、パブリッシャーを待たせることはありません。
+ * </p>
+ * 
+ * <p>
+ * キーごとのスロットは、値が上書きされた順ではなく、最初に値が入った順にモデルに渡されます。
+ * </p>
+ * 
+ * @param <T> 購読する型
+ */
+public class ConflatingSubscriber<T> implements Flow.Subscriber<T> {
+
+	/** キーを指定しない場合の、唯一のスロットのキー。 */
+	private static final Object SINGLE_SLOT = new Object();
+
+	/** コンテキスト。 */
+	private final SubscriberContext context;
+
+	/** モデル。 */
+	private final SubscriberModel<? super T> model;
+
+	/** 値からキーを取り出す関数。 */
+	private final Function<? super T, ?> keyExtractor;
+
+	/** モデルを実行するエグゼキューター。 */
+	private final Executor executor;
+
+	/** 計測値。 */
+	private final SubscriberMetrics metrics;
+
+	/** キーごとの最新の値。 */
+	private final Map<Object, T> latest = new ConcurrentHashMap<>();
+
+	/** 値が入ったキーの、入った順のキュー。 */
+	private final Queue<Object> pending = new ConcurrentLinkedQueue<>();
+
+	/** 受け渡しの要求数。0から増えた時だけ、受け渡しを開始します。終了した後は0に戻さず、以降の受け渡しを止めます。 */
+	private final AtomicInteger wip = new AtomicInteger();
+
+	/** サブスクリプション。 */
+	private Flow.Subscription subscription;
+
+	/** 上流が終了したかどうか。 */
+	private volatile boolean upstreamDone;
+
+	/** 上流で発生した例外。 */
+	private volatile Throwable upstreamError;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param context コンテキスト
+	 * @param model モデル
+	 * @param keyExtractor 値からキーを取り出す関数。nullの場合は、全ての値が1つのスロットを共有します
+	 * @param executor モデルを実行するエグゼキューター
+	 * @param metrics 計測値
+	 */
+	public ConflatingSubscriber(SubscriberContext context, SubscriberModel<? super T> model,
+			Function<? super T, ?> keyExtractor, Executor executor, SubscriberMetrics metrics) {
+		this.context = context;
+		this.model = model;
+		this.keyExtractor = keyExtractor != null ? keyExtractor : item -> SINGLE_SLOT;
+		this.executor = executor;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * 購読開始時の処理を行います。
+	 * 
+	 * @param subscription サブスクリプション
+	 */
+	@Override
+	public final void onSubscribe(Flow.Subscription subscription) {
+		metrics.recordStarted();
+		Try.uncheck(model::begin);
+		this.subscription = subscription;
+		subscription.request(Long.MAX_VALUE);
+	}
+
+	/**
+	 * 購読時の処理を行います。
+	 * 
+	 * <p>
+	 * 値をスロットに上書きし、受け渡しを要求します。
+	 * </p>
+	 * 
+	 * @param item 購読した値
+	 */
+	@Override
+	public final void onNext(T item) {
+		Object key = keyExtractor.apply(item);
+
+		if (latest.put(key, item) == null) {
+			pending.add(key);
+		} else {
+			metrics.recordConflated();
+		}
+
+		schedule();
+	}
+
+	/**
+	 * 例外時の処理を行います。
+	 * 
+	 * @param error 発生した例外
+	 */
+	@Override
+	public final void onError(Throwable error) {
+		upstreamError = error;
+		upstreamDone = true;
+		schedule();
+	}
+
+	/**
+	 * 購読完了時の処理を行います。
+	 * 
+	 * <p>
+	 * スロットに残っている値をモデルに渡してから、終了します。
+	 * </p>
+	 */
+	@Override
+	public final void onComplete() {
+		upstreamDone = true;
+		schedule();
+	}
+
+	/**
+	 * 計測値を取得します。
+	 * 
+	 * @return 計測値
+	 */
+	public SubscriberMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * 受け渡しを要求し、実行中でなければエグゼキューターで開始します。
+	 */
+	private void schedule() {
+		if (wip.getAndIncrement() == 0) {
+			executor.execute(this::drain);
+		}
+	}
+
+	/**
+	 * 要求がなくなるまで、スロットの値をモデルに渡します。
+	 */
+	private void drain() {
+		int missed = 1;
+
+		do {
+			boolean done = upstreamDone;
+
+			for (Object key = pending.poll(); key != null; key = pending.poll()) {
+				T item = latest.remove(key);
+
+				if (item != null && !deliver(item)) {
+					return;
+				}
+			}
+
+			if (done && pending.isEmpty()) {
+				finish(upstreamError);
+				return;
+			}
+
+			missed = wip.addAndGet(-missed);
+		} while (missed != 0);
+	}
+
+	/**
+	 * モデルに値を渡します。
+	 * 
+	 * <p>
+	 * モデルが例外を送出した場合は、購読を取り消して終了します。
+	 * </p>
+	 * 
+	 * @param item 値
+	 * @return モデルが正常に処理した場合はtrue
+	 */
+	private boolean deliver(T item) {
+		long start = System.nanoTime();
+
+		try {
+			Try.of(item).uncheck(model::accept);
+		} catch (RuntimeException e) {
+			metrics.recordError();
+			subscription.cancel();
+			finish(e);
+			return false;
+		}
+
+		metrics.recordAccepted(System.nanoTime() - start);
+		return true;
+	}
+
+	/**
+	 * 終了時の処理を行います。
+	 * 
+	 * @param error 発生した例外。正常に終了した場合はnull
+	 */
+	private void finish(Throwable error) {
+		if (error != null) {
+			Try.of(error).ignore(context.getErrorHandler()::accept);
+		}
+
+		Try.ignore(model::end);
+		metrics.recordFinished();
+		context.getDoneSignal().run();
+	}
+}
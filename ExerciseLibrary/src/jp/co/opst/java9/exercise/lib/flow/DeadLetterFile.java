@@ -0,0 +1,170 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Base64;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import jp.co.opst.java9.exercise.lib.exception.Resource;
+
+/**
+ * 処理に失敗した値を、ローカルファイルに追記するデッドレターです。
+ * 
+ * <p>
+ * 1件を1行として、シリアライズした値をBase64で符号化したものと、例外の内容をタブ区切りで書き出します。
+ * 書き出した値は、{@link #replay(Consumer)}で取り出して、再び発行できます。
+ * </p>
+ * 
+ * @param <T> 書き出す値
+ */
+public class DeadLetterFile<T> implements DeadLetterSink<T> {
+
+	/** 項目の区切り文字。 */
+	private static final char SEPARATOR = '\t';
+
+	/** ファイルのパス。 */
+	private final Path path;
+
+	/** 値を文字列に変換する関数。 */
+	private final Function<? super T, String> serializer;
+
+	/** 文字列を値に変換する関数。 */
+	private final Function<String, ? extends T> deserializer;
+
+	/** 取り出しを1度に1つに限るロック。 */
+	private final Object replayLock = new Object();
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param path ファイルのパス
+	 * @param serializer 値を文字列に変換する関数
+	 * @param deserializer 文字列を値に変換する関数
+	 */
+	public DeadLetterFile(Path path, Function<? super T, String> serializer, Function<String, ? extends T> deserializer) {
+		this.path = path;
+		this.serializer = serializer;
+		this.deserializer = deserializer;
+	}
+
+	/**
+	 * 処理に失敗した値を、ファイルに追記します。
+	 * 
+	 * @param item 処理に失敗した値
+	 * @param error モデルが送出した例外
+	 * @throws Exception 書き出しに失敗した場合
+	 */
+	@Override
+	public synchronized void write(T item, Throwable error) throws Exception {
+		String payload = Base64.getEncoder().encodeToString(serializer.apply(item).getBytes(StandardCharsets.UTF_8));
+		String reason = String.valueOf(error).replaceAll("\\s+", " ");
+
+		Resource.of(() -> Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+			StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.WRITE))
+			.accept(writer -> writeLine(writer, payload + SEPARATOR + reason));
+	}
+
+	/**
+	 * 書き出した値を全て取り出し、ファイルから削除します。
+	 * 
+	 * <p>
+	 * 取り出す前にファイルを退避するため、取り出した値を同じデッドレターを使うパイプラインに再び発行しても、
+	 * 再び失敗した値が、取り出し中の値に混ざることはありません。
+	 * 取り出しが途中で失敗した場合は、退避したファイル（元のファイル名に「.replaying」を付けたもの）が残ります。
+	 * 退避したファイルが残っている場合は、先にそのファイルから全ての値を取り出してから、ファイルを退避します。
+	 * そのため、前回の取り出しで既に受け取った値を、再び受け取ることがあります。
+	 * </p>
+	 * 
+	 * @param consumer 取り出した値を受け取る関数
+	 * @return 取り出した値の数
+	 * @throws Exception ファイルの読み込みに失敗した場合
+	 */
+	public long replay(Consumer<? super T> consumer) throws Exception {
+		Path replaying = path.resolveSibling(path.getFileName() + ".replaying");
+
+		synchronized (replayLock) {
+			long count = 0;
+
+			if (Files.exists(replaying)) {
+				count += replayFile(replaying, consumer);
+			}
+
+			synchronized (this) {
+				if (!Files.exists(path)) {
+					return count;
+				}
+
+				Files.move(path, replaying, StandardCopyOption.ATOMIC_MOVE);
+			}
+
+			return count + replayFile(replaying, consumer);
+		}
+	}
+
+	/**
+	 * ファイルのパスを取得します。
+	 * 
+	 * @return ファイルのパス
+	 */
+	public Path getPath() {
+		return path;
+	}
+
+	/**
+	 * 1行を書き出します。
+	 * 
+	 * @param writer ライター
+	 * @param line 行
+	 * @throws Exception 書き出しに失敗した場合
+	 */
+	private static void writeLine(BufferedWriter writer, String line) throws Exception {
+		writer.write(line);
+		writer.newLine();
+	}
+
+	/**
+	 * 退避したファイルから全ての値を取り出し、ファイルを削除します。
+	 * 
+	 * @param replaying 退避したファイルのパス
+	 * @param consumer 取り出した値を受け取る関数
+	 * @return 取り出した値の数
+	 * @throws Exception ファイルの読み込みに失敗した場合
+	 */
+	private long replayFile(Path replaying, Consumer<? super T> consumer) throws Exception {
+		long count = Resource.of(() -> Files.newBufferedReader(replaying, StandardCharsets.UTF_8))
+			.process(reader -> replay(reader, consumer));
+		Files.delete(replaying);
+		return count;
+	}
+
+	/**
+	 * 全ての行から値を取り出します。
+	 * 
+	 * @param reader リーダー
+	 * @param consumer 取り出した値を受け取る関数
+	 * @return 取り出した値の数
+	 * @throws Exception ファイルの読み込みに失敗した場合
+	 */
+	private long replay(BufferedReader reader, Consumer<? super T> consumer) throws Exception {
+		long count = 0;
+
+		for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+			if (line.isEmpty()) {
+				continue;
+			}
+
+			int end = line.indexOf(SEPARATOR);
+			byte[] payload = Base64.getDecoder().decode(end < 0 ? line : line.substring(0, end));
+			consumer.accept(deserializer.apply(new String(payload, StandardCharsets.UTF_8)));
+			count++;
+		}
+
+		return count;
+	}
+}
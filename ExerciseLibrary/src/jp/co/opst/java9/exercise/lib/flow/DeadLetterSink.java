@@ -0,0 +1,24 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+/**
+ * モデルが処理に失敗した値の書き出し先です。
+ * 
+ * @param <T> 書き出す値
+ * @see FailurePolicy#deadLetter(DeadLetterSink)
+ */
+@FunctionalInterface
+public interface DeadLetterSink<T> {
+
+	/**
+	 * 処理に失敗した値を書き出します。
+	 * 
+	 * <p>
+	 * 複数のサブスクライバーのスレッドから同時に呼び出される場合があります。
+	 * </p>
+	 * 
+	 * @param item 処理に失敗した値
+	 * @param error モデルが送出した例外
+	 * @throws Exception 書き出しに失敗した場合
+	 */
+	public void write(T item, Throwable error) throws Exception;
+}
@@ -0,0 +1,129 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+/**
+ * ウォーターマーク方式でリクエスト要求数を補充するウィンドウです。
+ *
+ * <p>
+ * 購読開始時にウィンドウの大きさだけまとめてリクエストし、
+ * 未消化のリクエスト数が下限ウォーターマークを下回った時だけ、ウィンドウいっぱいまで補充します。
+ * 最大ウィンドウがウィンドウより大きい場合は、観測した消費速度に応じてウィンドウの大きさを自動調整します。
+ * </p>
+ *
+ * <p>
+ * このクラスはスレッドセーフではありません。
+ * 1つのサブスクライバーの中だけで使用してください。
+ * </p>
+ */
+public class DemandWindow {
+
+	/** 自動調整時に、ウィンドウが保持する消費時間の目安（ナノ秒）。 */
+	private static final long TUNING_PERIOD_NANOS = 10_000_000L;
+
+	/** 最小ウィンドウ。 */
+	private final long minWindow;
+
+	/** 最大ウィンドウ。 */
+	private final long maxWindow;
+
+	/** 下限ウォーターマーク。 */
+	private final long lowWatermark;
+
+	/** 現在のウィンドウ。 */
+	private long window;
+
+	/** 未消化のリクエスト数。 */
+	private long outstanding;
+
+	/** 前回補充してから消費した数。 */
+	private long consumed;
+
+	/** 前回補充した時刻（ナノ秒）。 */
+	private long refilledAt;
+
+	/**
+	 * コンストラクター。
+	 *
+	 * @param window ウィンドウ
+	 * @param lowWatermark 下限ウォーターマーク
+	 * @param maxWindow 最大ウィンドウ。ウィンドウより大きい場合は自動調整を行います
+	 * @throws IllegalArgumentException 引数の組み合わせが不正な場合
+	 */
+	public DemandWindow(int window, int lowWatermark, int maxWindow) {
+		validate(window, lowWatermark, maxWindow);
+		this.minWindow = window;
+		this.maxWindow = maxWindow;
+		this.lowWatermark = lowWatermark;
+		this.window = window;
+	}
+
+	/**
+	 * 引数の組み合わせを検証します。
+	 *
+	 * @param window ウィンドウ
+	 * @param lowWatermark 下限ウォーターマーク
+	 * @param maxWindow 最大ウィンドウ
+	 * @throws IllegalArgumentException 引数の組み合わせが不正な場合
+	 */
+	static void validate(int window, int lowWatermark, int maxWindow) {
+		if (window < 1 || lowWatermark < 0 || lowWatermark >= window || maxWindow < window) {
+			throw new IllegalArgumentException(
+				String.format("window=%d, lowWatermark=%d, maxWindow=%d", window, lowWatermark, maxWindow));
+		}
+	}
+
+	/**
+	 * 購読開始時のリクエスト要求数を取得します。
+	 *
+	 * @return リクエスト要求数
+	 */
+	public long open() {
+		outstanding = window;
+		consumed = 0;
+		refilledAt = System.nanoTime();
+		return window;
+	}
+
+	/**
+	 * 1件消費したことを記録し、補充するリクエスト要求数を取得します。
+	 *
+	 * @return 補充するリクエスト要求数。補充が不要な場合は0
+	 */
+	public long consume() {
+		outstanding--;
+		consumed++;
+
+		if (outstanding > lowWatermark) {
+			return 0;
+		}
+
+		tune();
+		long refill = window - outstanding;
+		outstanding = window;
+		return refill;
+	}
+
+	/**
+	 * 現在のウィンドウを取得します。
+	 *
+	 * @return 現在のウィンドウ
+	 */
+	public long getWindow() {
+		return window;
+	}
+
+	/**
+	 * 前回補充してからの消費速度に応じて、ウィンドウを調整します。
+	 */
+	private void tune() {
+		long now = System.nanoTime();
+
+		if (maxWindow > minWindow) {
+			long elapsed = Math.max(1, now - refilledAt);
+			long desired = (long) ((double) consumed * TUNING_PERIOD_NANOS / elapsed);
+			window = Math.max(minWindow, Math.min(maxWindow, desired));
+		}
+
+		consumed = 0;
+		refilledAt = now;
+	}
+}
@@ -0,0 +1,33 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+/**
+ * {@link DoublePublisher}のサブスクライバーから呼び出される処理モデルです。
+ * 
+ * <p>
+ * 購読した値をdoubleのまま受け取ります。
+ * </p>
+ */
+public interface DoubleSubscriberModel {
+
+	/**
+	 * 開始時の処理を行います。
+	 * 
+	 * @throws Exception 処理に失敗した場合
+	 */
+	public void begin() throws Exception;
+
+	/**
+	 * 購読時の処理を行います。
+	 * 
+	 * @param item 購読した値
+	 * @throws Exception 処理に失敗した場合
+	 */
+	public void accept(double item) throws Exception;
+
+	/**
+	 * 終了時の処理を行います。
+	 * 
+	 * @throws Exception 処理に失敗した場合
+	 */
+	public void end() throws Exception;
+}
@@ -0,0 +1,25 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+/**
+ * 再利用するイベントのスロットに、値を書き込む関数です。
+ * 
+ * @param <T> イベント
+ * @param <A> 書き込む値の元になる引数
+ * @see SimplePublisher#publishEvent(EventTranslator, Object)
+ */
+@FunctionalInterface
+public interface EventTranslator<T, A> {
+
+	/**
+	 * イベントのスロットに、値を書き込みます。
+	 * 
+	 * <p>
+	 * スロットには、以前に発行したイベントの値が残っています。
+	 * 全てのフィールドを書き換えてください。
+	 * </p>
+	 * 
+	 * @param event イベントのスロット
+	 * @param argument 書き込む値の元になる引数
+	 */
+	public void translateTo(T event, A argument);
+}
@@ -0,0 +1,154 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * モデルが値の処理に失敗した時に、その値をどう扱うかを表す方針です。
+ * 
+ * <p>
+ * 方針はサブスクライバーのスレッドで実行されます。
+ * 再試行の待機中は、そのサブスクライバーへの配信も止まります。
+ * </p>
+ * 
+ * @param <T> 購読する値
+ */
+public abstract class FailurePolicy<T> {
+
+	/**
+	 * 例外を送出し、購読を終了する方針を取得します。
+	 * 
+	 * <p>
+	 * 方針を設定しない場合の既定の動作です。
+	 * </p>
+	 * 
+	 * @param <T> 購読する値
+	 * @return 方針
+	 */
+	public static <T> FailurePolicy<T> fail() {
+		return new FailurePolicy<T>() {
+			@Override
+			void handle(T item, RuntimeException error, Runnable retry, SubscriberMetrics metrics) {
+				throw error;
+			}
+		};
+	}
+
+	/**
+	 * 失敗した値を読み捨てて数え、購読を続ける方針を取得します。
+	 * 
+	 * @param <T> 購読する値
+	 * @return 方針
+	 * @see SubscriberMetrics#getSkipped()
+	 */
+	public static <T> FailurePolicy<T> skip() {
+		return new FailurePolicy<T>() {
+			@Override
+			void handle(T item, RuntimeException error, Runnable retry, SubscriberMetrics metrics) {
+				metrics.recordSkipped();
+			}
+		};
+	}
+
+	/**
+	 * 失敗した値をデッドレターに書き出し、購読を続ける方針を取得します。
+	 * 
+	 * <p>
+	 * デッドレターへの書き出しに失敗した場合は、モデルの例外に書き出しの例外を抑制済例外として追加して送出します。
+	 * </p>
+	 * 
+	 * @param <T> 購読する値
+	 * @param sink デッドレターの書き出し先
+	 * @return 方針
+	 * @see DeadLetterFile
+	 */
+	public static <T> FailurePolicy<T> deadLetter(DeadLetterSink<? super T> sink) {
+		return new FailurePolicy<T>() {
+			@Override
+			void handle(T item, RuntimeException error, Runnable retry, SubscriberMetrics metrics) {
+				try {
+					sink.write(item, error);
+				} catch (Exception e) {
+					error.addSuppressed(e);
+					throw error;
+				}
+
+				metrics.recordDeadLettered();
+			}
+		};
+	}
+
+	/**
+	 * 待機時間を倍にしながら再試行し、全て失敗した場合は別の方針に従う方針を取得します。
+	 * 
+	 * @param <T> 購読する値
+	 * @param maxRetries 再試行の最大回数
+	 * @param backoff 最初の再試行までの待機時間
+	 * @param maxBackoff 待機時間の上限
+	 * @param fallback 全ての再試行に失敗した場合の方針
+	 * @return 方針
+	 * @throws IllegalArgumentException 再試行の最大回数が負数の場合、または待機時間が負の場合
+	 */
+	public static <T> FailurePolicy<T> retry(int maxRetries, Duration backoff, Duration maxBackoff,
+			FailurePolicy<T> fallback) {
+		if (maxRetries < 0 || backoff.isNegative() || maxBackoff.compareTo(backoff) < 0) {
+			throw new IllegalArgumentException(
+				String.format("maxRetries=%d, backoff=%s, maxBackoff=%s", maxRetries, backoff, maxBackoff));
+		}
+
+		long initialNanos = backoff.toNanos();
+		long maxNanos = maxBackoff.toNanos();
+
+		return new FailurePolicy<T>() {
+			@Override
+			void handle(T item, RuntimeException error, Runnable retry, SubscriberMetrics metrics) {
+				RuntimeException last = error;
+				long delay = initialNanos;
+
+				for (int i = 0; i < maxRetries; i++) {
+					try {
+						TimeUnit.NANOSECONDS.sleep(delay);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw last;
+					}
+
+					metrics.recordRetried();
+
+					try {
+						retry.run();
+						return;
+					} catch (RuntimeException e) {
+						metrics.recordError();
+						last = e;
+					}
+
+					delay = Math.min(maxNanos, delay * 2);
+				}
+
+				fallback.handle(item, last, retry, metrics);
+			}
+		};
+	}
+
+	/**
+	 * コンストラクター。
+	 */
+	FailurePolicy() {
+	}
+
+	/**
+	 * 失敗した値を扱います。
+	 * 
+	 * <p>
+	 * 例外を送出した場合は、購読を終了します。
+	 * 正常に復帰した場合は、購読を続けます。
+	 * </p>
+	 * 
+	 * @param item 失敗した値
+	 * @param error モデルが送出した例外
+	 * @param retry 同じ値でモデルの処理を再試行する関数。成功した場合は計測値に記録されます
+	 * @param metrics 計測値
+	 */
+	abstract void handle(T item, RuntimeException error, Runnable retry, SubscriberMetrics metrics);
+}
@@ -0,0 +1,38 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.lang.System.Logger.Level;
+
+/**
+ * パブリッシャーとサブスクライバーの処理時間を記録するトレーサーです。
+ * 
+ * <p>
+ * トレーサーは処理を行ったスレッドから呼び出されるため、スレッドセーフに実装してください。
+ * また、トレーサーが送出した例外は、処理の呼び出し元に伝わります。
+ * </p>
+ * 
+ * @see SimplePublisher.Builder#setTracer(FlowTracer, java.time.Duration)
+ */
+@FunctionalInterface
+public interface FlowTracer {
+
+	/**
+	 * {@link System.Logger}に、デバッグレベルで出力するトレーサーを作成します。
+	 * 
+	 * @param logger ロガー
+	 * @return トレーサー
+	 */
+	public static FlowTracer logger(System.Logger logger) {
+		return (event, modelName, startNanos, durationNanos) -> logger.log(Level.DEBUG,
+			() -> String.format("%s %s %,d ns [%s]", event, modelName, durationNanos, Thread.currentThread().getName()));
+	}
+
+	/**
+	 * 処理時間を記録します。
+	 * 
+	 * @param event 処理の種類
+	 * @param modelName モデルの名前。{@link TraceEvent#PUBLISH}の場合はnull
+	 * @param startNanos 処理の開始時刻（{@link System#nanoTime()}）
+	 * @param durationNanos 処理時間（ナノ秒）
+	 */
+	public void record(TraceEvent event, String modelName, long startNanos, long durationNanos);
+}
@@ -0,0 +1,115 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * intの値を発行するパブリッシャーです。
+ * 
+ * <p>
+ * 値をintの配列によるリングバッファーに格納し、各モデルには専用のスレッドからintのまま渡します。
+ * 発行から購読までの間に、値ごとのオブジェクトの生成を行いません。
+ * {@link #publish(int)}は1つのスレッドから呼び出す必要があります。
+ * </p>
+ */
+public final class IntPublisher extends PrimitivePublisher {
+
+	/**
+	 * intの値を発行するパブリッシャーのビルダーです。
+	 */
+	public static final class Builder extends PrimitivePublisher.Builder<Builder> {
+
+		/** モデルリスト。 */
+		private final List<IntSubscriberModel> models = new ArrayList<>();
+
+		/**
+		 * コンストラクター。
+		 */
+		private Builder() {
+		}
+
+		/**
+		 * モデルを追加します。
+		 * 
+		 * @param model モデル
+		 * @return このインスタンス自身
+		 */
+		public Builder add(IntSubscriberModel model) {
+			models.add(model);
+			return this;
+		}
+
+		/**
+		 * パブリッシャーを作成し、各モデルのスレッドを開始します。
+		 * 
+		 * @return パブリッシャー
+		 */
+		public IntPublisher build() {
+			IntPublisher publisher = new IntPublisher(capacity, waitStrategy, errorHandler);
+			List<PrimitivePublisher.Lane> lanes = new ArrayList<>();
+
+			for (IntSubscriberModel model : models) {
+				lanes.add(publisher.new Lane() {
+					@Override
+					void begin() throws Exception {
+						model.begin();
+					}
+
+					@Override
+					void deliver(int index) throws Exception {
+						model.accept(publisher.values[index]);
+					}
+
+					@Override
+					void end() throws Exception {
+						model.end();
+					}
+				});
+			}
+
+			publisher.start(lanes);
+			return publisher;
+		}
+	}
+
+	/**
+	 * intの値を発行するパブリッシャーのビルダーを取得します。
+	 * 
+	 * @return intの値を発行するパブリッシャーのビルダー
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/** リングバッファー。 */
+	private final int[] values;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param capacity リングバッファーの容量
+	 * @param waitStrategy 待機方法
+	 * @param errorHandler エラーハンドラー
+	 */
+	private IntPublisher(int capacity, WaitStrategy waitStrategy, Consumer<Throwable> errorHandler) {
+		super(capacity, waitStrategy, errorHandler);
+		this.values = new int[this.capacity];
+	}
+
+	/**
+	 * 発行します。
+	 * 
+	 * <p>
+	 * 最も遅いモデルがリングバッファー1周分遅れている時は、追いつくまで待機します。
+	 * </p>
+	 * 
+	 * @param item 発行する値
+	 * @throws IllegalStateException 発行を終了している場合
+	 */
+	public void publish(int item) {
+		long sequence = claim();
+		values[(int) sequence & mask] = item;
+		commit(sequence);
+	}
+}
@@ -0,0 +1,679 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import jp.co.opst.java9.exercise.lib.exception.Acceptor;
+import jp.co.opst.java9.exercise.lib.exception.Try;
+
+/**
+ * 発行した値を、メモリーマップしたセグメントファイルに追記するジャーナルです。
+ *
+ * <p>
+ * 値は書き込んだ順に0から始まるオフセットで識別され、任意のオフセットから読み直せます。
+ * セグメントファイルは「先頭のオフセット.journal」という名前で、容量に達するごとに新しいファイルに切り替わります。
+ * 各レコードは、ペイロードの長さに1を加えた4バイトのヘッダーと、ペイロードからなります。
+ * ヘッダーはペイロードの後に書き込むため、プロセスが異常終了しても、ヘッダーが書き込まれたレコードは完全です。
+ * </p>
+ *
+ * <p>
+ * 購読者ごとのチェックポイントは「名前.checkpoint」という8バイトのファイルに、次に処理するオフセットとして保存されます。
+ * </p>
+ *
+ * <p>
+ * 書き込みは同時に1つのスレッドから行われる前提で同期化しています。
+ * 読み込みは、書き込みと並行して任意のスレッドから行えます。
+ * </p>
+ *
+ * @param <T> 書き込む値
+ * @see SimplePublisher.Builder#setJournal(Journal)
+ */
+public class Journal<T> implements AutoCloseable {
+
+	/**
+	 * セグメントファイルです。
+	 */
+	private static final class Segment {
+
+		/** 先頭のオフセット。 */
+		private final long baseOffset;
+
+		/** ファイルチャネル。 */
+		private final FileChannel channel;
+
+		/** メモリーマップしたバッファー。 */
+		private final MappedByteBuffer buffer;
+
+		/**
+		 * コンストラクター。
+		 *
+		 * @param path ファイルのパス
+		 * @param baseOffset 先頭のオフセット
+		 * @param size ファイルの大きさ
+		 * @throws IOException ファイルを開けなかった場合
+		 */
+		private Segment(Path path, long baseOffset, int size) throws IOException {
+			this.baseOffset = baseOffset;
+			this.channel = FileChannel.open(
+				path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+
+		/**
+		 * 指定した位置にレコードがあれば、そのヘッダーを取得します。
+		 *
+		 * @param position 位置
+		 * @return ヘッダー。レコードがない場合は0
+		 */
+		private int headerAt(int position) {
+			if (position + HEADER_BYTES > buffer.capacity()) {
+				return 0;
+			}
+
+			int header = buffer.getInt(position);
+			return header > 0 && position + HEADER_BYTES + header - 1 <= buffer.capacity() ? header : 0;
+		}
+
+		/**
+		 * 指定した位置から末尾までを、0で埋めます。
+		 *
+		 * @param position 位置
+		 */
+		private void clear(int position) {
+			ByteBuffer tail = buffer.duplicate();
+			tail.position(position);
+			byte[] zeros = new byte[Math.min(CLEAR_CHUNK_BYTES, tail.remaining())];
+
+			while (tail.hasRemaining()) {
+				tail.put(zeros, 0, Math.min(zeros.length, tail.remaining()));
+			}
+		}
+	}
+
+	/**
+	 * オフセット順にレコードを読み取るカーソルです。
+	 */
+	private final class Cursor {
+
+		/** 現在のセグメント。 */
+		private Segment segment;
+
+		/** 現在のセグメントのバッファー。 */
+		private ByteBuffer view;
+
+		/** 次に読み取るオフセット。 */
+		private long next;
+
+		/**
+		 * コンストラクター。
+		 *
+		 * @param offset 最初に読み取るオフセット
+		 * @throws IllegalArgumentException オフセットが範囲外の場合
+		 */
+		private Cursor(long offset) {
+			Map.Entry<Long, Segment> entry = segments.floorEntry(offset);
+
+			if (entry == null || offset > endOffset) {
+				throw new IllegalArgumentException("offset=" + offset);
+			}
+
+			moveTo(entry.getValue());
+
+			while (next < offset) {
+				skip(header());
+			}
+		}
+
+		/**
+		 * 次のレコードを読み取ります。
+		 *
+		 * <p>
+		 * 次のオフセットが書き込み済であることを、呼び出し元で確認してください。
+		 * </p>
+		 *
+		 * @return 値
+		 */
+		private T read() {
+			int header = header();
+			byte[] payload = new byte[header - 1];
+			view.position(view.position() + HEADER_BYTES);
+			view.get(payload);
+			next++;
+			return serializer.deserialize(payload);
+		}
+
+		/**
+		 * 次のレコードのヘッダーを取得します。
+		 *
+		 * <p>
+		 * 現在のセグメントにレコードが残っていない場合は、次のセグメントに移動します。
+		 * </p>
+		 *
+		 * @return ヘッダー
+		 */
+		private int header() {
+			int header = segment.headerAt(view.position());
+
+			if (header == 0) {
+				moveTo(segments.higherEntry(segment.baseOffset).getValue());
+				header = segment.headerAt(0);
+			}
+
+			return header;
+		}
+
+		/**
+		 * レコードを読み飛ばします。
+		 *
+		 * @param header レコードのヘッダー
+		 */
+		private void skip(int header) {
+			view.position(view.position() + HEADER_BYTES + header - 1);
+			next++;
+		}
+
+		/**
+		 * セグメントの先頭に移動します。
+		 *
+		 * @param target セグメント
+		 */
+		private void moveTo(Segment target) {
+			segment = target;
+			view = target.buffer.duplicate();
+			view.position(0);
+			next = target.baseOffset;
+		}
+	}
+
+	/**
+	 * ジャーナルを末尾まで読み続けるサブスクリプションです。
+	 */
+	private final class TailSubscription implements Flow.Subscription, Runnable {
+
+		/** サブスクライバー。 */
+		private final Flow.Subscriber<? super T> subscriber;
+
+		/** 最初に読み取るオフセット。 */
+		private final long offset;
+
+		/** 未消化のリクエスト要求数。 */
+		private final AtomicLong demand = new AtomicLong();
+
+		/** 取り消されたかどうか。 */
+		private volatile boolean cancelled;
+
+		/**
+		 * コンストラクター。
+		 *
+		 * @param subscriber サブスクライバー
+		 * @param offset 最初に読み取るオフセット
+		 */
+		private TailSubscription(Flow.Subscriber<? super T> subscriber, long offset) {
+			this.subscriber = subscriber;
+			this.offset = offset;
+		}
+
+		/**
+		 * リクエストします。
+		 *
+		 * @param n リクエスト要求数
+		 */
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				cancelled = true;
+				subscriber.onError(new IllegalArgumentException("n=" + n));
+				return;
+			}
+
+			demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+		}
+
+		/**
+		 * 取り消します。
+		 */
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		/**
+		 * 値を読み取り、サブスクライバーに渡し続けます。
+		 *
+		 * <p>
+		 * ジャーナルが閉じられ、末尾まで読み終えた時点で完了します。
+		 * </p>
+		 */
+		@Override
+		public void run() {
+			Cursor cursor;
+
+			try {
+				subscriber.onSubscribe(this);
+				cursor = new Cursor(offset);
+			} catch (Throwable t) {
+				cancelled = true;
+				subscriber.onError(t);
+				return;
+			}
+
+			while (!cancelled) {
+				boolean done = closed;
+
+				if (cursor.next < endOffset && demand.get() > 0) {
+					demand.decrementAndGet();
+
+					try {
+						subscriber.onNext(cursor.read());
+					} catch (Throwable t) {
+						cancelled = true;
+						subscriber.onError(t);
+						return;
+					}
+				} else if (cursor.next >= endOffset && done) {
+					cancelled = true;
+					subscriber.onComplete();
+				} else {
+					WaitStrategy.PARK.idle();
+				}
+			}
+		}
+	}
+
+	/** セグメントファイルの拡張子。 */
+	private static final String SEGMENT_SUFFIX = ".journal";
+
+	/** チェックポイントファイルの拡張子。 */
+	private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+
+	/** レコードのヘッダーの大きさ。 */
+	private static final int HEADER_BYTES = Integer.BYTES;
+
+	/** セグメントの末尾を0で埋める時に、1回に書き込むバイト数。 */
+	private static final int CLEAR_CHUNK_BYTES = 8192;
+
+	/** チェックポイントの名前に使える文字。 */
+	private static final Pattern CHECKPOINT_NAME = Pattern.compile("[A-Za-z0-9_.-]+");
+
+	/**
+	 * ジャーナルを開きます。
+	 *
+	 * <p>
+	 * ディレクトリーにセグメントファイルがあれば、その末尾から追記を続けます。
+	 * </p>
+	 *
+	 * @param <T> 書き込む値
+	 * @param directory ディレクトリー
+	 * @param segmentBytes セグメントファイルの大きさ
+	 * @param serializer シリアライザー
+	 * @return ジャーナル
+	 * @throws IOException ファイルの操作に失敗した場合
+	 * @throws IllegalArgumentException セグメントファイルの大きさが小さすぎる場合
+	 */
+	public static <T> Journal<T> open(Path directory, int segmentBytes, JournalSerializer<T> serializer)
+			throws IOException {
+		if (segmentBytes <= HEADER_BYTES) {
+			throw new IllegalArgumentException("segmentBytes=" + segmentBytes);
+		}
+
+		Files.createDirectories(directory);
+		return new Journal<>(directory, segmentBytes, serializer);
+	}
+
+	/** ディレクトリー。 */
+	private final Path directory;
+
+	/** セグメントファイルの大きさ。 */
+	private final int segmentBytes;
+
+	/** シリアライザー。 */
+	private final JournalSerializer<T> serializer;
+
+	/** 先頭のオフセットごとのセグメント。 */
+	private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+
+	/** 名前ごとのチェックポイント。 */
+	private final Map<String, MappedByteBuffer> checkpoints = new ConcurrentHashMap<>();
+
+	/** チェックポイントのファイルチャネル。 */
+	private final List<FileChannel> checkpointChannels = new ArrayList<>();
+
+	/** 書き込み中のセグメント。 */
+	private Segment active;
+
+	/** 書き込み中のセグメントの、書き込み用のバッファー。 */
+	private ByteBuffer writer;
+
+	/** 次に書き込むオフセット。このオフセットより前のレコードは、全て読み取れます。 */
+	private volatile long endOffset;
+
+	/** 閉じたかどうか。 */
+	private volatile boolean closed;
+
+	/**
+	 * コンストラクター。
+	 *
+	 * @param directory ディレクトリー
+	 * @param segmentBytes セグメントファイルの大きさ
+	 * @param serializer シリアライザー
+	 * @throws IOException ファイルの操作に失敗した場合
+	 */
+	private Journal(Path directory, int segmentBytes, JournalSerializer<T> serializer) throws IOException {
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.serializer = serializer;
+
+		List<Long> baseOffsets;
+
+		try (Stream<Path> files = Files.list(directory)) {
+			baseOffsets = files
+				.map(path -> path.getFileName().toString())
+				.filter(name -> name.endsWith(SEGMENT_SUFFIX))
+				.map(name -> Long.valueOf(name.substring(0, name.length() - SEGMENT_SUFFIX.length())))
+				.sorted()
+				.collect(Collectors.toList());
+		}
+
+		for (long baseOffset : baseOffsets) {
+			segments.put(baseOffset, new Segment(segmentPath(baseOffset), baseOffset, segmentBytes));
+		}
+
+		if (segments.isEmpty()) {
+			segments.put(0L, new Segment(segmentPath(0), 0, segmentBytes));
+		}
+
+		recover(segments.lastEntry().getValue());
+	}
+
+	/**
+	 * 最後のセグメントを走査して、追記を再開する位置を求めます。
+	 *
+	 * <p>
+	 * ヘッダーを書き込む前に異常終了したレコードのペイロードが、後から書き込む短いレコードの後ろに残って、
+	 * 次の復旧時にレコードと誤認されないように、追記を再開する位置から末尾までを0で埋めます。
+	 * </p>
+	 *
+	 * @param last 最後のセグメント
+	 */
+	private void recover(Segment last) {
+		int position = 0;
+		long offset = last.baseOffset;
+
+		for (int header = last.headerAt(position); header > 0; header = last.headerAt(position)) {
+			position += HEADER_BYTES + header - 1;
+			offset++;
+		}
+
+		last.clear(position);
+		active = last;
+		writer = last.buffer.duplicate();
+		writer.position(position);
+		endOffset = offset;
+	}
+
+	/**
+	 * 値を追記します。
+	 *
+	 * @param item 値
+	 * @return 追記した値のオフセット
+	 * @throws IOException 新しいセグメントファイルの作成に失敗した場合
+	 * @throws IllegalArgumentException シリアライズした値がセグメントファイルに収まらない場合
+	 * @throws IllegalStateException ジャーナルを閉じた後の場合
+	 */
+	public synchronized long append(T item) throws IOException {
+		if (closed) {
+			throw new IllegalStateException("journal closed");
+		}
+
+		byte[] payload = serializer.serialize(item);
+		int size = HEADER_BYTES + payload.length;
+
+		if (size > segmentBytes) {
+			throw new IllegalArgumentException("record too large: " + payload.length + " bytes");
+		}
+
+		if (writer.position() + size > segmentBytes) {
+			roll();
+		}
+
+		int position = writer.position();
+		writer.position(position + HEADER_BYTES);
+		writer.put(payload);
+		active.buffer.putInt(position, payload.length + 1);
+
+		long offset = endOffset;
+		endOffset = offset + 1;
+		return offset;
+	}
+
+	/**
+	 * 新しいセグメントファイルに切り替えます。
+	 *
+	 * @throws IOException 新しいセグメントファイルの作成に失敗した場合
+	 */
+	private void roll() throws IOException {
+		active.buffer.force();
+		Segment next = new Segment(segmentPath(endOffset), endOffset, segmentBytes);
+		segments.put(next.baseOffset, next);
+		active = next;
+		writer = next.buffer.duplicate();
+		writer.position(0);
+	}
+
+	/**
+	 * 次に書き込むオフセットを取得します。
+	 *
+	 * @return 次に書き込むオフセット
+	 */
+	public long getEndOffset() {
+		return endOffset;
+	}
+
+	/**
+	 * 指定したオフセットから、現在の末尾までの値を読み直します。
+	 *
+	 * @param <E> 値を受け取る関数が送出しうる例外
+	 * @param offset 最初に読み取るオフセット
+	 * @param acceptor 値を受け取る関数
+	 * @return 読み直した値の数
+	 * @throws E 値を受け取る関数が例外を送出した場合
+	 * @throws IllegalArgumentException オフセットが範囲外の場合
+	 */
+	public <E extends Exception> long replay(long offset, Acceptor<? super T, E> acceptor) throws E {
+		return replay(offset, endOffset, acceptor);
+	}
+
+	/**
+	 * 指定した範囲の値を読み直します。
+	 *
+	 * @param <E> 値を受け取る関数が送出しうる例外
+	 * @param from 最初に読み取るオフセット
+	 * @param to 読み取りを終えるオフセット（このオフセットは含みません）
+	 * @param acceptor 値を受け取る関数
+	 * @return 読み直した値の数
+	 * @throws E 値を受け取る関数が例外を送出した場合
+	 */
+	<E extends Exception> long replay(long from, long to, Acceptor<? super T, E> acceptor) throws E {
+		if (from >= to) {
+			return 0;
+		}
+
+		Cursor cursor = new Cursor(from);
+
+		while (cursor.next < to) {
+			acceptor.accept(cursor.read());
+		}
+
+		return to - from;
+	}
+
+	/**
+	 * 指定したオフセットから読み始め、ジャーナルを閉じるまで末尾を読み続けるパブリッシャーを取得します。
+	 *
+	 * <p>
+	 * 購読するたびに、エグゼキューターのスレッドを1つ、購読の終了まで占有します。
+	 * </p>
+	 *
+	 * @param offset 最初に読み取るオフセット
+	 * @param executor サブスクライバーを実行するエグゼキューター
+	 * @return パブリッシャー
+	 */
+	public Flow.Publisher<T> publisher(long offset, Executor executor) {
+		return subscriber -> executor.execute(new TailSubscription(subscriber, offset));
+	}
+
+	/**
+	 * チェックポイントを取得します。
+	 *
+	 * @param name チェックポイントの名前
+	 * @return 次に処理するオフセット。チェックポイントがない場合は空
+	 * @throws IOException ファイルの操作に失敗した場合
+	 * @throws IllegalArgumentException 名前に使えない文字が含まれている場合
+	 */
+	public OptionalLong getCheckpoint(String name) throws IOException {
+		MappedByteBuffer checkpoint = checkpoints.get(validate(name));
+
+		if (checkpoint != null) {
+			return OptionalLong.of(checkpoint.getLong(0));
+		}
+
+		Path path = checkpointPath(name);
+		return Files.exists(path) ? OptionalLong.of(ByteBuffer.wrap(Files.readAllBytes(path)).getLong()) : OptionalLong.empty();
+	}
+
+	/**
+	 * 処理した値のオフセットを、チェックポイントに記録するモデルを取得します。
+	 *
+	 * <p>
+	 * モデルは、開始時にチェックポイントからこの呼び出し時点の末尾までの値を読み直して処理してから、
+	 * 新たに発行された値の処理を続けます。
+	 * チェックポイントがない場合は、この呼び出し時点の末尾から処理を始めます。
+	 * 値を処理するごとにチェックポイントを進めるため、異常終了した後は、最後に処理した値の次から再開します。
+	 * ただし、処理を終えてからチェックポイントを進めるまでの間に異常終了した場合、その値は再び処理されます。
+	 * </p>
+	 *
+	 * <p>
+	 * オフセットは購読した値の数から求めるため、このジャーナルを設定したビルダーに追加し、
+	 * 値を破棄しない方針（{@link OverflowPolicy#BLOCK}）で使用してください。
+	 * 開始時に読み直す値は、失敗時の方針を適用せずに処理します。
+	 * </p>
+	 *
+	 * @param name チェックポイントの名前
+	 * @param model モデル
+	 * @return チェックポイントに記録するモデル
+	 * @throws IOException ファイルの操作に失敗した場合
+	 * @throws IllegalArgumentException 名前に使えない文字が含まれている場合、または同じ名前のモデルを既に取得している場合
+	 */
+	public SubscriberModel<T> checkpointed(String name, SubscriberModel<? super T> model) throws IOException {
+		long liveStart = endOffset;
+		OptionalLong stored = getCheckpoint(name);
+		Path path = checkpointPath(name);
+		FileChannel channel = FileChannel.open(
+			path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		MappedByteBuffer checkpoint = channel.map(FileChannel.MapMode.READ_WRITE, 0, Long.BYTES);
+
+		if (checkpoints.putIfAbsent(name, checkpoint) != null) {
+			channel.close();
+			throw new IllegalArgumentException("duplicate checkpoint: " + name);
+		}
+
+		synchronized (checkpointChannels) {
+			checkpointChannels.add(channel);
+		}
+
+		long resume = Math.min(stored.orElse(liveStart), liveStart);
+		checkpoint.putLong(0, resume);
+		return new CheckpointedModel<>(this, model, checkpoint, resume, liveStart);
+	}
+
+	/**
+	 * 書き込んだ内容とチェックポイントを、ストレージに書き出します。
+	 *
+	 * <p>
+	 * プロセスの異常終了に備えるだけであれば、呼び出す必要はありません。
+	 * OSの異常終了にも備える場合に呼び出してください。
+	 * </p>
+	 */
+	public void force() {
+		synchronized (this) {
+			active.buffer.force();
+		}
+
+		checkpoints.values().forEach(MappedByteBuffer::force);
+	}
+
+	/**
+	 * ジャーナルを閉じます。
+	 *
+	 * <p>
+	 * 書き込んだ内容を書き出し、ファイルチャネルを閉じます。
+	 * 末尾を読み続けているサブスクライバーは、末尾まで読み終えた時点で完了します。
+	 * </p>
+	 */
+	@Override
+	public void close() {
+		if (closed) {
+			return;
+		}
+
+		force();
+		closed = true;
+		segments.values().forEach(segment -> Try.ignore(segment.channel::close));
+
+		synchronized (checkpointChannels) {
+			checkpointChannels.forEach(channel -> Try.ignore(channel::close));
+		}
+	}
+
+	/**
+	 * セグメントファイルのパスを取得します。
+	 *
+	 * @param baseOffset 先頭のオフセット
+	 * @return セグメントファイルのパス
+	 */
+	private Path segmentPath(long baseOffset) {
+		return directory.resolve(String.format("%020d%s", baseOffset, SEGMENT_SUFFIX));
+	}
+
+	/**
+	 * チェックポイントファイルのパスを取得します。
+	 *
+	 * @param name チェックポイントの名前
+	 * @return チェックポイントファイルのパス
+	 */
+	private Path checkpointPath(String name) {
+		return directory.resolve(name + CHECKPOINT_SUFFIX);
+	}
+
+	/**
+	 * チェックポイントの名前を検証します。
+	 *
+	 * @param name チェックポイントの名前
+	 * @return チェックポイントの名前
+	 * @throws IllegalArgumentException 名前に使えない文字が含まれている場合
+	 */
+	private static String validate(String name) {
+		if (!CHECKPOINT_NAME.matcher(name).matches()) {
+			throw new IllegalArgumentException("name=" + name);
+		}
+
+		return name;
+	}
+}
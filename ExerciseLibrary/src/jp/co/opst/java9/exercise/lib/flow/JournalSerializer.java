@@ -0,0 +1,47 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * ジャーナルに書き込む値と、バイト列を相互に変換する関数です。
+ * 
+ * @param <T> 変換する値
+ * @see Journal
+ */
+public interface JournalSerializer<T> {
+
+	/**
+	 * 文字列をUTF-8で変換するシリアライザーを取得します。
+	 * 
+	 * @return シリアライザー
+	 */
+	public static JournalSerializer<String> utf8() {
+		return new JournalSerializer<String>() {
+			@Override
+			public byte[] serialize(String item) {
+				return item.getBytes(StandardCharsets.UTF_8);
+			}
+
+			@Override
+			public String deserialize(byte[] bytes) {
+				return new String(bytes, StandardCharsets.UTF_8);
+			}
+		};
+	}
+
+	/**
+	 * 値をバイト列に変換します。
+	 * 
+	 * @param item 値
+	 * @return バイト列
+	 */
+	public byte[] serialize(T item);
+
+	/**
+	 * バイト列を値に変換します。
+	 * 
+	 * @param bytes バイト列
+	 * @return 値
+	 */
+	public T deserialize(byte[] bytes);
+}
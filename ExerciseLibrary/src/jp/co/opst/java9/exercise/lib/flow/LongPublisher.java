@@ -0,0 +1,115 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * longの値を発行するパブリッシャーです。
+ * 
+ * <p>
+ * 値をlongの配列によるリングバッファーに格納し、各モデルには専用のスレッドからlongのまま渡します。
+ * 発行から購読までの間に、値ごとのオブジェクトの生成を行いません。
+ * {@link #publish(long)}は1つのスレッドから呼び出す必要があります。
+ * </p>
+ */
+public final class LongPublisher extends PrimitivePublisher {
+
+	/**
+	 * longの値を発行するパブリッシャーのビルダーです。
+	 */
+	public static final class Builder extends PrimitivePublisher.Builder<Builder> {
+
+		/** モデルリスト。 */
+		private final List<LongSubscriberModel> models = new ArrayList<>();
+
+		/**
+		 * コンストラクター。
+		 */
+		private Builder() {
+		}
+
+		/**
+		 * モデルを追加します。
+		 * 
+		 * @param model モデル
+		 * @return このインスタンス自身
+		 */
+		public Builder add(LongSubscriberModel model) {
+			models.add(model);
+			return this;
+		}
+
+		/**
+		 * パブリッシャーを作成し、各モデルのスレッドを開始します。
+		 * 
+		 * @return パブリッシャー
+		 */
+		public LongPublisher build() {
+			LongPublisher publisher = new LongPublisher(capacity, waitStrategy, errorHandler);
+			List<PrimitivePublisher.Lane> lanes = new ArrayList<>();
+
+			for (LongSubscriberModel model : models) {
+				lanes.add(publisher.new Lane() {
+					@Override
+					void begin() throws Exception {
+						model.begin();
+					}
+
+					@Override
+					void deliver(int index) throws Exception {
+						model.accept(publisher.values[index]);
+					}
+
+					@Override
+					void end() throws Exception {
+						model.end();
+					}
+				});
+			}
+
+			publisher.start(lanes);
+			return publisher;
+		}
+	}
+
+	/**
+	 * longの値を発行するパブリッシャーのビルダーを取得します。
+	 * 
+	 * @return longの値を発行するパブリッシャーのビルダー
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/** リングバッファー。 */
+	private final long[] values;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param capacity リングバッファーの容量
+	 * @param waitStrategy 待機方法
+	 * @param errorHandler エラーハンドラー
+	 */
+	private LongPublisher(int capacity, WaitStrategy waitStrategy, Consumer<Throwable> errorHandler) {
+		super(capacity, waitStrategy, errorHandler);
+		this.values = new long[this.capacity];
+	}
+
+	/**
+	 * 発行します。
+	 * 
+	 * <p>
+	 * 最も遅いモデルがリングバッファー1周分遅れている時は、追いつくまで待機します。
+	 * </p>
+	 * 
+	 * @param item 発行する値
+	 * @throws IllegalStateException 発行を終了している場合
+	 */
+	public void publish(long item) {
+		long sequence = claim();
+		values[(int) sequence & mask] = item;
+		commit(sequence);
+	}
+}
@@ -0,0 +1,29 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+/**
+ * サブスクライバーのバッファーが満杯の時に、発行した値をどう扱うかを表す方針です。
+ */
+public enum OverflowPolicy {
+
+	/** バッファーに空きができるまで、発行元を無期限に待機させます。 */
+	BLOCK,
+
+	/** バッファーに空きができるまで、発行元を待機時間だけ待機させます。空きができなかった場合は、発行した値を破棄します。 */
+	BLOCK_WITH_TIMEOUT,
+
+	/** 発行元を待機させずに、発行した値を破棄します。 */
+	DROP_NEWEST,
+
+	/**
+	 * バッファー内の最も古い値を破棄して、発行した値を格納します。
+	 * 
+	 * <p>
+	 * 最も古い値は、サブスクライバーがモデルに渡さずに読み捨てます。
+	 * 読み捨ては、モデルが処理中の値を終えて、サブスクライバーが次の値を取り出す時に行われるため、
+	 * 発行元は、それまで最大で待機時間だけ待機します。
+	 * 空きができなかった場合は、発行した値を破棄します。
+	 * 待機時間が正でない場合は、{@link #DROP_NEWEST} と区別できないため使用できません。
+	 * </p>
+	 */
+	DROP_OLDEST
+}
@@ -0,0 +1,265 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 購読した値をキーごとに振り分けて、複数のレーンで並列に処理するモデルです。
+ * 
+ * <p>
+ * 値はキーのハッシュ値によってレーンに振り分けられます。
+ * 同じキーの値は同じレーンで購読した順序のまま処理され、異なるキーの値は並列に処理されます。
+ * 各レーンは専用のスレッドと、モデルのファクトリーから作成した専用のモデルを持ちます。
+ * 各レーンのモデルの開始時と終了時の処理は、レーンごとに1回ずつ行われます。
+ * </p>
+ * 
+ * <p>
+ * レーンのキューが満杯の時は、空きができるまで購読を待機させます。
+ * レーンで発生した例外は、次回の購読時または終了時に送出されます。
+ * </p>
+ * 
+ * @param <T> 購読した値
+ * @param <K> キー
+ */
+public class PartitionedModel<T, K> implements SubscriberModel<T> {
+
+	/**
+	 * 1つのレーンです。
+	 */
+	private final class Lane implements Runnable {
+
+		/** レーンのモデル。 */
+		private final SubscriberModel<? super T> model;
+
+		/** レーンのキュー。 */
+		private final BlockingQueue<Object> queue = new ArrayBlockingQueue<>(laneCapacity);
+
+		/**
+		 * コンストラクター。
+		 * 
+		 * @param model レーンのモデル
+		 */
+		private Lane(SubscriberModel<? super T> model) {
+			this.model = model;
+		}
+
+		/**
+		 * 終了の印を受け取るまで、キューの値をモデルに渡し続けます。
+		 * 
+		 * <p>
+		 * 例外やエラーが発生した後も、発行元を待機させないように、キューの値を読み捨て続けます。
+		 * </p>
+		 */
+		@Override
+		public void run() {
+			try {
+				for (Object item = queue.take(); item != END; item = queue.take()) {
+					if (failure != null) {
+						continue;
+					}
+
+					try {
+						@SuppressWarnings("unchecked")
+						T value = (T) item;
+						model.accept(value);
+					} catch (Throwable t) {
+						fail(t);
+					}
+				}
+			} catch (InterruptedException e) {
+				fail(e);
+			} finally {
+				try {
+					model.end();
+				} catch (Throwable t) {
+					fail(t);
+				}
+			}
+		}
+	}
+
+	/** 終了の印。 */
+	private static final Object END = new Object();
+
+	/** キーを取り出す関数。 */
+	private final Function<? super T, ? extends K> keyExtractor;
+
+	/** レーンの数。 */
+	private final int laneCount;
+
+	/** レーンごとのキューの容量。 */
+	private final int laneCapacity;
+
+	/** モデルのファクトリー。 */
+	private final Supplier<? extends SubscriberModel<? super T>> modelFactory;
+
+	/** レーンリスト。 */
+	private final List<Lane> lanes = new ArrayList<>();
+
+	/** レーンのスレッドリスト。 */
+	private final List<Thread> threads = new ArrayList<>();
+
+	/** レーンで最初に発生した例外またはエラー。 */
+	private volatile Throwable failure;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * <p>
+	 * レーンごとのキューの容量は {@link Flow#defaultBufferSize()} になります。
+	 * </p>
+	 * 
+	 * @param keyExtractor キーを取り出す関数
+	 * @param laneCount レーンの数
+	 * @param modelFactory モデルのファクトリー。レーンごとに1回ずつ呼び出されます
+	 */
+	public PartitionedModel(Function<? super T, ? extends K> keyExtractor, int laneCount,
+			Supplier<? extends SubscriberModel<? super T>> modelFactory) {
+		this(keyExtractor, laneCount, Flow.defaultBufferSize(), modelFactory);
+	}
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param keyExtractor キーを取り出す関数
+	 * @param laneCount レーンの数
+	 * @param laneCapacity レーンごとのキューの容量
+	 * @param modelFactory モデルのファクトリー。レーンごとに1回ずつ呼び出されます
+	 * @throws IllegalArgumentException レーンの数またはキューの容量が1未満の場合
+	 */
+	public PartitionedModel(Function<? super T, ? extends K> keyExtractor, int laneCount, int laneCapacity,
+			Supplier<? extends SubscriberModel<? super T>> modelFactory) {
+		if (laneCount < 1 || laneCapacity < 1) {
+			throw new IllegalArgumentException(String.format("laneCount=%d, laneCapacity=%d", laneCount, laneCapacity));
+		}
+
+		this.keyExtractor = keyExtractor;
+		this.laneCount = laneCount;
+		this.laneCapacity = laneCapacity;
+		this.modelFactory = modelFactory;
+	}
+
+	/**
+	 * 開始時の処理を行います。
+	 * 
+	 * <p>
+	 * レーンごとにモデルを作成して開始時の処理を行い、レーンのスレッドを開始します。
+	 * 途中のレーンで失敗した場合は、開始済みのレーンのモデルの終了時の処理を行ってから、例外を送出します。
+	 * </p>
+	 * 
+	 * @throws Exception レーンのモデルの作成または開始に失敗した場合
+	 */
+	@Override
+	public void begin() throws Exception {
+		try {
+			for (int i = 0; i < laneCount; i++) {
+				SubscriberModel<? super T> model = modelFactory.get();
+				model.begin();
+				lanes.add(new Lane(model));
+			}
+		} catch (Throwable t) {
+			for (Lane lane : lanes) {
+				try {
+					lane.model.end();
+				} catch (Throwable suppressed) {
+					t.addSuppressed(suppressed);
+				}
+			}
+
+			lanes.clear();
+			throw t;
+		}
+
+		for (int i = 0; i < laneCount; i++) {
+			Thread thread = new Thread(lanes.get(i), "partitioned-model-lane-" + i);
+			thread.setDaemon(true);
+			thread.start();
+			threads.add(thread);
+		}
+	}
+
+	/**
+	 * 購読時の処理を行います。
+	 * 
+	 * <p>
+	 * 購読した値を、キーに対応するレーンのキューに追加します。
+	 * </p>
+	 * 
+	 * @param item 購読した値
+	 * @throws Exception レーンで例外が発生していた場合、またはキューへの追加中に割り込みが発生した場合
+	 * @throws Error レーンでエラーが発生していた場合
+	 */
+	@Override
+	public void accept(T item) throws Exception {
+		rethrow();
+		int hash = Objects.hashCode(keyExtractor.apply(item));
+		lanes.get(Math.floorMod(hash ^ (hash >>> 16), laneCount)).queue.put(item);
+	}
+
+	/**
+	 * 終了時の処理を行います。
+	 * 
+	 * <p>
+	 * 各レーンに終了の印を送り、全てのレーンが終了時の処理を終えるまで待機します。
+	 * </p>
+	 * 
+	 * @throws Exception レーンで例外が発生していた場合、または待機中に割り込みが発生した場合
+	 * @throws Error レーンでエラーが発生していた場合
+	 */
+	@Override
+	public void end() throws Exception {
+		for (Lane lane : lanes) {
+			lane.queue.put(END);
+		}
+
+		for (Thread thread : threads) {
+			thread.join();
+		}
+
+		rethrow();
+	}
+
+	/**
+	 * レーンで発生した例外またはエラーを記録します。
+	 * 
+	 * @param t レーンで発生した例外またはエラー
+	 */
+	private synchronized void fail(Throwable t) {
+		if (failure == null) {
+			failure = t;
+		}
+	}
+
+	/**
+	 * レーンで発生した例外またはエラーを送出します。
+	 * 
+	 * <p>
+	 * 例外でもエラーでもないものは、{@link UndeclaredThrowableException}に包んで送出します。
+	 * </p>
+	 * 
+	 * @throws Exception レーンで例外が発生していた場合
+	 * @throws Error レーンでエラーが発生していた場合
+	 */
+	private void rethrow() throws Exception {
+		Throwable t = failure;
+
+		if (t instanceof Error) {
+			throw (Error) t;
+		}
+
+		if (t instanceof Exception) {
+			throw (Exception) t;
+		}
+
+		if (t != null) {
+			throw new UndeclaredThrowableException(t);
+		}
+	}
+}
@@ -0,0 +1,328 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.function.Consumer;
+
+import jp.co.opst.java9.exercise.lib.exception.Try;
+
+/**
+ * プリミティブ値のリングバッファーを使用するパブリッシャーの基底クラスです。
+ * 
+ * <p>
+ * 値の格納先となるプリミティブ配列はサブクラスが持ち、
+ * このクラスはシーケンスの管理と、サブスクライバーごとのレーンの実行を担当します。
+ * 発行元は1スレッドであることを前提とし、発行から購読までの間に値をボクシングしません。
+ * </p>
+ */
+abstract class PrimitivePublisher implements AutoCloseable {
+
+	/**
+	 * プリミティブ値のパブリッシャーのビルダーの基底クラスです。
+	 * 
+	 * <p>
+	 * 型に依らない設定を持ちます。モデルの追加とパブリッシャーの作成は、型ごとのビルダーが行います。
+	 * </p>
+	 * 
+	 * @param <B> 型ごとのビルダー
+	 */
+	abstract static class Builder<B extends Builder<B>> {
+
+		/** リングバッファーの容量。 */
+		int capacity = Flow.defaultBufferSize();
+
+		/** 待機方法。 */
+		WaitStrategy waitStrategy = WaitStrategy.PARK;
+
+		/** エラーハンドラー。 */
+		Consumer<Throwable> errorHandler = Throwable::printStackTrace;
+
+		/**
+		 * コンストラクター。
+		 */
+		Builder() {
+		}
+
+		/**
+		 * リングバッファーの容量を設定します。
+		 * 
+		 * <p>
+		 * 初期値は {@link Flow#defaultBufferSize()} です。
+		 * 2の累乗に切り上げられます。
+		 * </p>
+		 * 
+		 * @param capacity リングバッファーの容量
+		 * @return このインスタンス自身
+		 */
+		public B setCapacity(int capacity) {
+			this.capacity = capacity;
+			return self();
+		}
+
+		/**
+		 * 発行元やサブスクライバーが待機する時の方法を設定します。
+		 * 
+		 * <p>
+		 * 初期値は {@link WaitStrategy#PARK} です。
+		 * </p>
+		 * 
+		 * @param waitStrategy 待機方法
+		 * @return このインスタンス自身
+		 */
+		public B setWaitStrategy(WaitStrategy waitStrategy) {
+			this.waitStrategy = waitStrategy;
+			return self();
+		}
+
+		/**
+		 * エラーハンドラーを設定します。
+		 * 
+		 * <p>
+		 * 初期値は {@link Throwable#printStackTrace()} です。
+		 * </p>
+		 * 
+		 * @param errorHandler エラーハンドラー
+		 * @return このインスタンス自身
+		 */
+		public B setErrorCatcher(Consumer<Throwable> errorHandler) {
+			this.errorHandler = errorHandler;
+			return self();
+		}
+
+		/**
+		 * 型ごとのビルダーとして、このインスタンス自身を取得します。
+		 * 
+		 * @return このインスタンス自身
+		 */
+		@SuppressWarnings("unchecked")
+		private B self() {
+			return (B) this;
+		}
+	}
+
+	/**
+	 * 1つのモデルに値を渡すレーンです。
+	 * 
+	 * <p>
+	 * 専用のスレッドで、発行の終了まで値を読み取り続けます。
+	 * </p>
+	 */
+	abstract class Lane implements Runnable {
+
+		/**
+		 * 次に読み取るシーケンス。{@link PrimitivePublisher#SEQUENCE} を介してアクセスします。
+		 * 
+		 * <p>
+		 * 外側のクラスからVarHandleを取得するため、privateにしていません。
+		 * </p>
+		 */
+		long sequence;
+
+		/** レーンが終了したかどうか。 */
+		private volatile boolean finished;
+
+		/**
+		 * モデルの開始時の処理を行います。
+		 * 
+		 * @throws Exception 処理に失敗した場合
+		 */
+		abstract void begin() throws Exception;
+
+		/**
+		 * リングバッファーの値をモデルに渡します。
+		 * 
+		 * @param index リングバッファーの添字
+		 * @throws Exception 処理に失敗した場合
+		 */
+		abstract void deliver(int index) throws Exception;
+
+		/**
+		 * モデルの終了時の処理を行います。
+		 * 
+		 * @throws Exception 処理に失敗した場合
+		 */
+		abstract void end() throws Exception;
+
+		/**
+		 * 発行の終了まで、値を読み取ってモデルに渡し続けます。
+		 */
+		@Override
+		public void run() {
+			try {
+				begin();
+				long next = (long) SEQUENCE.getOpaque(this);
+
+				while (true) {
+					boolean done = closed;
+					long available = (long) CURSOR.getAcquire(PrimitivePublisher.this);
+
+					if (next < available) {
+						for (; next < available; next++) {
+							deliver((int) next & mask);
+						}
+
+						SEQUENCE.setRelease(this, next);
+					} else if (done) {
+						break;
+					} else {
+						waitStrategy.idle();
+					}
+				}
+			} catch (Exception e) {
+				Try.of(e).ignore(errorHandler::accept);
+			} finally {
+				finished = true;
+				Try.ignore(this::end);
+				latch.countDown();
+			}
+		}
+	}
+
+	/** {@link #cursor} のVarHandle。 */
+	private static final VarHandle CURSOR;
+
+	/** {@link Lane#sequence} のVarHandle。 */
+	private static final VarHandle SEQUENCE;
+
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			CURSOR = lookup.findVarHandle(PrimitivePublisher.class, "cursor", long.class);
+			SEQUENCE = lookup.findVarHandle(PrimitivePublisher.Lane.class, "sequence", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/** リングバッファーの容量。 */
+	protected final int capacity;
+
+	/** シーケンスからリングバッファーの添字を求めるマスク。 */
+	protected final int mask;
+
+	/** 待機方法。 */
+	private final WaitStrategy waitStrategy;
+
+	/** エラーハンドラー。 */
+	private final Consumer<Throwable> errorHandler;
+
+	/** レーンの配列。 */
+	private Lane[] lanes = new Lane[0];
+
+	/** 終了済レーンのカウントダウンラッチ。 */
+	private CountDownLatch latch = new CountDownLatch(0);
+
+	/** 発行済みの値の数（次に書き込むシーケンス）。{@link #CURSOR} を介してアクセスします。 */
+	@SuppressWarnings("unused")
+	private long cursor;
+
+	/** 発行を終了したかどうか。 */
+	private volatile boolean closed;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param capacity リングバッファーの容量。2の累乗に切り上げられます
+	 * @param waitStrategy 待機方法
+	 * @param errorHandler エラーハンドラー
+	 * @throws IllegalArgumentException 容量が範囲外の場合
+	 */
+	protected PrimitivePublisher(int capacity, WaitStrategy waitStrategy, Consumer<Throwable> errorHandler) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("capacity=" + capacity);
+		}
+
+		this.capacity = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.mask = this.capacity - 1;
+		this.waitStrategy = waitStrategy;
+		this.errorHandler = errorHandler;
+	}
+
+	/**
+	 * レーンのスレッドを開始します。
+	 * 
+	 * @param laneList レーンリスト
+	 */
+	protected void start(List<? extends Lane> laneList) {
+		lanes = laneList.toArray(new Lane[0]);
+		latch = new CountDownLatch(lanes.length);
+
+		for (int i = 0; i < lanes.length; i++) {
+			Thread thread = new Thread(lanes[i], getClass().getSimpleName() + "-lane-" + i);
+			thread.setDaemon(true);
+			thread.start();
+		}
+	}
+
+	/**
+	 * 次に書き込むシーケンスを確保します。
+	 * 
+	 * <p>
+	 * 最も遅いレーンがリングバッファー1周分遅れている時は、追いつくまで待機します。
+	 * </p>
+	 * 
+	 * @return 次に書き込むシーケンス
+	 * @throws IllegalStateException 発行を終了している場合
+	 */
+	protected final long claim() {
+		if (closed) {
+			throw new IllegalStateException("publisher already closed");
+		}
+
+		long next = (long) CURSOR.getOpaque(this);
+		long wrapPoint = next - capacity;
+
+		while (minimumSequence(next) <= wrapPoint) {
+			waitStrategy.idle();
+		}
+
+		return next;
+	}
+
+	/**
+	 * 書き込んだ値を公開します。
+	 * 
+	 * @param sequence 書き込んだシーケンス
+	 */
+	protected final void commit(long sequence) {
+		CURSOR.setRelease(this, sequence + 1);
+	}
+
+	/**
+	 * 発行を終了します。
+	 */
+	@Override
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * 全てのレーンが終了するまで待機します。
+	 * 
+	 * @throws InterruptedException 割り込みが発生した場合
+	 */
+	public void await() throws InterruptedException {
+		latch.await();
+	}
+
+	/**
+	 * 終了していないレーンのうち、最も遅いシーケンスを取得します。
+	 * 
+	 * @param defaultValue 終了していないレーンがない場合の値
+	 * @return 最も遅いシーケンス
+	 */
+	private long minimumSequence(long defaultValue) {
+		long minimum = defaultValue;
+
+		for (Lane lane : lanes) {
+			if (!lane.finished) {
+				minimum = Math.min(minimum, (long) SEQUENCE.getAcquire(lane));
+			}
+		}
+
+		return minimum;
+	}
+}
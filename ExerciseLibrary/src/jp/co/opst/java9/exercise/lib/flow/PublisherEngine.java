@@ -0,0 +1,92 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+
+/**
+ * シンプルパブリッシャーの内部で、値をサブスクライバーに配信するエンジンです。
+ * 
+ * @param <T> 発行する値
+ */
+interface PublisherEngine<T> {
+
+	/**
+	 * サブスクライバーを登録します。
+	 * 
+	 * @param executor サブスクライバーを実行するエグゼキューター
+	 * @param subscriber サブスクライバー
+	 */
+	public void subscribe(Executor executor, Flow.Subscriber<? super T> subscriber);
+
+	/**
+	 * 発行します。
+	 * 
+	 * @param item 発行する値
+	 */
+	public void publish(T item);
+
+	/**
+	 * まとめて発行します。
+	 * 
+	 * <p>
+	 * 既定の実装は、1件ずつ{@link #publish(Object)}を呼び出します。
+	 * </p>
+	 * 
+	 * @param items 発行する値のイテレーター
+	 * @return 発行した値の数
+	 */
+	public default long publishAll(Iterator<? extends T> items) {
+		long count = 0;
+
+		while (items.hasNext()) {
+			publish(items.next());
+			count++;
+		}
+
+		return count;
+	}
+
+	/**
+	 * 再利用するイベントのスロットに値を書き込んで、発行します。
+	 * 
+	 * <p>
+	 * 既定の実装は、{@link UnsupportedOperationException}を送出します。
+	 * </p>
+	 * 
+	 * @param <A> 書き込む値の元になる引数
+	 * @param translator スロットに値を書き込む関数
+	 * @param argument 書き込む値の元になる引数
+	 * @return 発行した場合は{@code true}、スロットに書き込まずに破棄した場合は{@code false}
+	 * @throws UnsupportedOperationException イベントのスロットを使用しない場合
+	 */
+	public default <A> boolean publishEvent(EventTranslator<? super T, ? super A> translator, A argument) {
+		throw new UnsupportedOperationException("event slots are not enabled");
+	}
+
+	/**
+	 * 発行を終了します。
+	 */
+	public void close();
+
+	/**
+	 * 未購読の値の数の、サブスクライバー間での最大の推定値を取得します。
+	 * 
+	 * @return 未購読の値の数の最大の推定値
+	 */
+	public int estimateMaximumLag();
+
+	/**
+	 * 未消化のリクエスト要求数の、サブスクライバー間での最小の推定値を取得します。
+	 * 
+	 * @return 未消化のリクエスト要求数の最小の推定値
+	 */
+	public long estimateMinimumDemand();
+
+	/**
+	 * 購読中のサブスクライバーの数を取得します。
+	 * 
+	 * @return 購読中のサブスクライバーの数
+	 */
+	public int getNumberOfSubscribers();
+}
@@ -0,0 +1,223 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jp.co.opst.java9.exercise.lib.exception.Try;
+
+/**
+ * シンプルパブリッシャーの計測値です。
+ * 
+ * <p>
+ * 名前を付けて{@link #register(String)}すると、
+ * このインスタンスと各サブスクライバーの計測値が、プラットフォームMBeanサーバーに登録されます。
+ * </p>
+ */
+public class PublisherMetrics implements PublisherMetricsMXBean {
+
+	/** JMXのドメイン。 */
+	private static final String DOMAIN = PublisherMetrics.class.getPackageName();
+
+	/** エンジン。 */
+	private final PublisherEngine<?> engine;
+
+	/** サブスクライバーの計測値リスト。 */
+	private final List<SubscriberMetrics> subscribers;
+
+	/** 発行した値の数。 */
+	private final LongAdder published = new LongAdder();
+
+	/** 破棄した値の数。 */
+	private final LongAdder dropped = new LongAdder();
+
+	/** 登録したJMXの名前リスト。 */
+	private final List<ObjectName> registered = new ArrayList<>();
+
+	/** 登録した名前。JMXに登録していない場合はnull。 */
+	private String registeredName;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param engine エンジン
+	 * @param subscribers サブスクライバーの計測値リスト。発行中に追加される場合があるため、スレッドセーフなリストを渡してください
+	 */
+	PublisherMetrics(PublisherEngine<?> engine, List<SubscriberMetrics> subscribers) {
+		this.engine = engine;
+		this.subscribers = subscribers;
+	}
+
+	/**
+	 * 発行中に追加したサブスクライバーの計測値を追加します。
+	 * 
+	 * <p>
+	 * JMXに登録済の場合は、追加した計測値も登録します。
+	 * </p>
+	 * 
+	 * @param metrics サブスクライバーの計測値
+	 */
+	synchronized void addSubscriber(SubscriberMetrics metrics) {
+		int index = subscribers.size();
+		subscribers.add(metrics);
+
+		if (registeredName != null) {
+			registerSubscriber(ManagementFactory.getPlatformMBeanServer(), index, metrics);
+		}
+	}
+
+	/**
+	 * 発行したことを記録します。
+	 */
+	void recordPublished() {
+		published.increment();
+	}
+
+	/**
+	 * まとめて発行したことを記録します。
+	 * 
+	 * @param count 発行した値の数
+	 */
+	void recordPublished(long count) {
+		published.add(count);
+	}
+
+	/**
+	 * 破棄したことを記録します。
+	 */
+	void recordDropped() {
+		dropped.increment();
+	}
+
+	/**
+	 * 発行した値の数を取得します。
+	 * 
+	 * @return 発行した値の数
+	 */
+	@Override
+	public long getPublished() {
+		return published.sum();
+	}
+
+	/**
+	 * バッファーが満杯のために破棄した値の数を取得します。
+	 * 
+	 * @return 破棄した値の数
+	 */
+	@Override
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	/**
+	 * 未購読の値の数の、サブスクライバー間での最大の推定値を取得します。
+	 * 
+	 * @return 未購読の値の数の最大の推定値
+	 */
+	@Override
+	public int getEstimatedMaximumLag() {
+		return engine.estimateMaximumLag();
+	}
+
+	/**
+	 * 未消化のリクエスト要求数の、サブスクライバー間での最小の推定値を取得します。
+	 * 
+	 * @return 未消化のリクエスト要求数の最小の推定値
+	 */
+	@Override
+	public long getEstimatedMinimumDemand() {
+		return engine.estimateMinimumDemand();
+	}
+
+	/**
+	 * 購読中のサブスクライバーの数を取得します。
+	 * 
+	 * @return 購読中のサブスクライバーの数
+	 */
+	@Override
+	public int getSubscriberCount() {
+		return engine.getNumberOfSubscribers();
+	}
+
+	/**
+	 * サブスクライバーの計測値リストを取得します。
+	 * 
+	 * @return サブスクライバーの計測値リスト。モデルを追加した順序です
+	 */
+	public List<SubscriberMetrics> getSubscribers() {
+		return Collections.unmodifiableList(subscribers);
+	}
+
+	/**
+	 * プラットフォームMBeanサーバーに登録します。
+	 * 
+	 * <p>
+	 * このインスタンスは {@code jp.co.opst.java9.exercise.lib.flow:type=SimplePublisher,name=名前} 、
+	 * 各サブスクライバーの計測値は {@code jp.co.opst.java9.exercise.lib.flow:type=Subscriber,publisher=名前,index=添字} で登録されます。
+	 * </p>
+	 * 
+	 * @param name 名前
+	 * @throws IllegalStateException 登録に失敗した場合
+	 */
+	public synchronized void register(String name) {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		String quoted = ObjectName.quote(name);
+
+		try {
+			ObjectName publisherName = new ObjectName(DOMAIN + ":type=SimplePublisher,name=" + quoted);
+			server.registerMBean(this, publisherName);
+			registered.add(publisherName);
+
+			registeredName = quoted;
+
+			for (int i = 0; i < subscribers.size(); i++) {
+				registerSubscriber(server, i, subscribers.get(i));
+			}
+		} catch (JMException e) {
+			unregister();
+			throw new IllegalStateException(e);
+		} catch (IllegalStateException e) {
+			unregister();
+			throw e;
+		}
+	}
+
+	/**
+	 * サブスクライバーの計測値を、プラットフォームMBeanサーバーに登録します。
+	 * 
+	 * @param server プラットフォームMBeanサーバー
+	 * @param index サブスクライバーの番号
+	 * @param metrics サブスクライバーの計測値
+	 * @throws IllegalStateException 登録に失敗した場合
+	 */
+	private void registerSubscriber(MBeanServer server, int index, SubscriberMetrics metrics) {
+		try {
+			ObjectName subscriberName =
+				new ObjectName(DOMAIN + ":type=Subscriber,publisher=" + registeredName + ",index=" + index);
+			server.registerMBean(metrics, subscriberName);
+			registered.add(subscriberName);
+		} catch (JMException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * プラットフォームMBeanサーバーから登録を解除します。
+	 * 
+	 * <p>
+	 * 登録していない場合は何もしません。
+	 * </p>
+	 */
+	public synchronized void unregister() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		registered.forEach(objectName -> Try.of(objectName).ignore(server::unregisterMBean));
+		registered.clear();
+		registeredName = null;
+	}
+}
@@ -0,0 +1,46 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+/**
+ * シンプルパブリッシャーの計測値を公開するMXBeanです。
+ */
+public interface PublisherMetricsMXBean {
+
+	/**
+	 * 発行した値の数を取得します。
+	 * 
+	 * @return 発行した値の数
+	 */
+	public long getPublished();
+
+	/**
+	 * バッファーが満杯のために破棄した値の数を取得します。
+	 * 
+	 * <p>
+	 * サブスクライバーごとに数えます。
+	 * </p>
+	 * 
+	 * @return 破棄した値の数
+	 */
+	public long getDropped();
+
+	/**
+	 * 発行済みでまだ購読されていない値の数の、サブスクライバー間での最大の推定値を取得します。
+	 * 
+	 * @return 未購読の値の数の最大の推定値
+	 */
+	public int getEstimatedMaximumLag();
+
+	/**
+	 * 未消化のリクエスト要求数の、サブスクライバー間での最小の推定値を取得します。
+	 * 
+	 * @return 未消化のリクエスト要求数の最小の推定値
+	 */
+	public long getEstimatedMinimumDemand();
+
+	/**
+	 * 購読中のサブスクライバーの数を取得します。
+	 * 
+	 * @return 購読中のサブスクライバーの数
+	 */
+	public int getSubscriberCount();
+}
@@ -0,0 +1,266 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import jp.co.opst.java9.exercise.lib.exception.Try;
+
+/**
+ * 番号の順序がばらばらに届いた値を、番号順に並べ直してから、別のモデルに渡すモデルです。
+ * 
+ * <p>
+ * 並べ直しのために保持する値は、並べ直しのウィンドウの大きさまでです。
+ * 次に渡すべき番号の値が届かないまま、ウィンドウの大きさ以上先の番号の値が届いた場合は、
+ * 届いていない番号を欠番として報告し、飛ばして先に進みます。
+ * 欠番として飛ばした後に届いた値や、重複して届いた値は、破棄します。
+ * </p>
+ * 
+ * <p>
+ * 購読時の処理は、複数のスレッドから同時に呼び出すことができます。
+ * 別のモデルは、常に1つのスレッドから、番号順に呼び出されます。
+ * </p>
+ * 
+ * @param <T> 並べ直す値
+ */
+public class ResequencingModel<T> implements SubscriberModel<Sequenced<T>> {
+
+	/** 並べ直した値を渡すモデル。 */
+	private final SubscriberModel<? super T> model;
+
+	/** 欠番ハンドラー。 */
+	private final BiConsumer<Long, Long> gapHandler;
+
+	/** 並べ直しのウィンドウ。番号をウィンドウの大きさで割った余りの位置に、番号の付いた値を保持します。 */
+	private final Sequenced<?>[] window;
+
+	/** 次に渡す番号。 */
+	private long next;
+
+	/** 欠番の数。 */
+	private long missing;
+
+	/** 破棄した値の数。 */
+	private long discarded;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * <p>
+	 * 最初の番号は0です。
+	 * </p>
+	 * 
+	 * @param model 並べ直した値を渡すモデル
+	 * @param windowSize 並べ直しのウィンドウの大きさ
+	 * @param gapHandler 欠番ハンドラー。欠番の最初の番号と、連続する欠番の数を受け取ります
+	 * @throws IllegalArgumentException ウィンドウの大きさが1未満の場合
+	 */
+	public ResequencingModel(SubscriberModel<? super T> model, int windowSize, BiConsumer<Long, Long> gapHandler) {
+		if (windowSize < 1) {
+			throw new IllegalArgumentException("windowSize=" + windowSize);
+		}
+
+		this.model = model;
+		this.gapHandler = gapHandler;
+		this.window = new Sequenced<?>[windowSize];
+	}
+
+	/**
+	 * 番号の付いた値を受け取り、値を非同期に処理した結果を、このモデルに渡すモデルを作成します。
+	 * 
+	 * <p>
+	 * 処理は並列に進み、結果は番号順に並べ直されます。
+	 * 処理中の値の上限は、並べ直しのウィンドウの大きさ以下にしてください。
+	 * 上限がウィンドウより大きいと、処理中の値が欠番として飛ばされることがあります。
+	 * </p>
+	 * 
+	 * @param <S> 処理する値
+	 * @param work 値の非同期の処理。処理の結果で完了するステージを返してください
+	 * @return 非同期の処理モデル
+	 * @see SimplePublisher.Builder#add(AsyncSubscriberModel, int)
+	 */
+	public <S> AsyncSubscriberModel<Sequenced<S>> async(Function<? super S, ? extends CompletionStage<? extends T>> work) {
+		return new AsyncSubscriberModel<Sequenced<S>>() {
+
+			/**
+			 * 並べ直した値を渡すモデルの、開始時の処理を行います。
+			 * 
+			 * @throws Exception 処理に失敗した場合
+			 */
+			@Override
+			public void begin() throws Exception {
+				ResequencingModel.this.begin();
+			}
+
+			/**
+			 * 値の処理を開始し、結果を番号順に並べ直すように予約します。
+			 * 
+			 * @param item 番号の付いた値
+			 * @return 結果を並べ直した時に完了するステージ
+			 */
+			@Override
+			public CompletionStage<Void> accept(Sequenced<S> item) {
+				return work.apply(item.getItem())
+					.thenAccept(result -> Try.of(new Sequenced<T>(item.getSequence(), result))
+						.uncheck(ResequencingModel.this::accept));
+			}
+
+			/**
+			 * 残りの値を番号順に渡してから、並べ直した値を渡すモデルの、終了時の処理を行います。
+			 * 
+			 * @throws Exception 処理に失敗した場合
+			 */
+			@Override
+			public void end() throws Exception {
+				ResequencingModel.this.end();
+			}
+		};
+	}
+
+	/**
+	 * 開始時の処理を行います。
+	 * 
+	 * @throws Exception 処理に失敗した場合
+	 */
+	@Override
+	public void begin() throws Exception {
+		model.begin();
+	}
+
+	/**
+	 * 購読時の処理を行います。
+	 * 
+	 * <p>
+	 * 値をウィンドウに保持し、次に渡す番号から連続している値を、別のモデルに渡します。
+	 * </p>
+	 * 
+	 * @param item 番号の付いた値
+	 * @throws Exception 別のモデルの処理に失敗した場合
+	 */
+	@Override
+	public synchronized void accept(Sequenced<T> item) throws Exception {
+		long sequence = item.getSequence();
+
+		if (sequence >= next + window.length) {
+			skip(sequence - window.length + 1);
+		}
+
+		int index = indexOf(sequence);
+
+		if (sequence < next || window[index] != null) {
+			discarded++;
+			return;
+		}
+
+		window[index] = item;
+		flush();
+	}
+
+	/**
+	 * 終了時の処理を行います。
+	 * 
+	 * <p>
+	 * ウィンドウに残っている値を、欠番を飛ばして番号順に渡してから、別のモデルの終了時の処理を行います。
+	 * 最後に届いた番号より後の欠番は、報告しません。
+	 * </p>
+	 * 
+	 * @throws Exception 処理に失敗した場合
+	 */
+	@Override
+	public synchronized void end() throws Exception {
+		long last = next - 1;
+
+		for (long sequence = next; sequence < next + window.length; sequence++) {
+			if (window[indexOf(sequence)] != null) {
+				last = sequence;
+			}
+		}
+
+		skip(last + 1);
+		model.end();
+	}
+
+	/**
+	 * 欠番の数を取得します。
+	 * 
+	 * @return 欠番の数
+	 */
+	public synchronized long getMissing() {
+		return missing;
+	}
+
+	/**
+	 * 欠番として飛ばした後に届いたか、重複して届いたために、破棄した値の数を取得します。
+	 * 
+	 * @return 破棄した値の数
+	 */
+	public synchronized long getDiscarded() {
+		return discarded;
+	}
+
+	/**
+	 * 指定した番号の手前まで、届いている値は渡し、届いていない値は欠番として報告して、先に進みます。
+	 * 
+	 * @param until この番号の手前まで進めます
+	 * @throws Exception 別のモデルの処理に失敗した場合
+	 */
+	private void skip(long until) throws Exception {
+		while (next < until) {
+			if (window[indexOf(next)] == null) {
+				long gapStart = next;
+				next = nextBuffered(until);
+				missing += next - gapStart;
+				gapHandler.accept(gapStart, next - gapStart);
+			}
+
+			flush();
+		}
+	}
+
+	/**
+	 * 次に渡す番号以降で、最初に届いている値の番号を探します。
+	 * 
+	 * <p>
+	 * 届いている値は、次に渡す番号からウィンドウの大きさの範囲にしかないため、その範囲だけを探します。
+	 * </p>
+	 * 
+	 * @param until この番号の手前まで探します
+	 * @return 最初に届いている値の番号。届いている値がない場合はuntil
+	 */
+	private long nextBuffered(long until) {
+		long limit = Math.min(until, next + window.length);
+
+		for (long sequence = next; sequence < limit; sequence++) {
+			if (window[indexOf(sequence)] != null) {
+				return sequence;
+			}
+		}
+
+		return until;
+	}
+
+	/**
+	 * 次に渡す番号から連続している値を、別のモデルに渡します。
+	 * 
+	 * @throws Exception 別のモデルの処理に失敗した場合
+	 */
+	private void flush() throws Exception {
+		for (int index = indexOf(next); window[index] != null; index = indexOf(next)) {
+			@SuppressWarnings("unchecked")
+			Sequenced<T> item = (Sequenced<T>) window[index];
+			window[index] = null;
+			next++;
+			model.accept(item.getItem());
+		}
+	}
+
+	/**
+	 * 番号を、ウィンドウの位置に変換します。
+	 * 
+	 * @param sequence 番号
+	 * @return ウィンドウの位置
+	 */
+	private int indexOf(long sequence) {
+		return (int) Math.floorMod(sequence, (long) window.length);
+	}
+}
@@ -0,0 +1,291 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jp.co.opst.java9.exercise.lib.exception.Generator;
+import jp.co.opst.java9.exercise.lib.exception.Resource;
+
+/**
+ * リクエストされた分だけリソースから読み取る、パブリッシャーです。
+ * 
+ * <p>
+ * サブスクライバーごとにリソースを開き、リクエストがある間だけ、エグゼキューター上で値を読み取ります。
+ * 先読みは、先読み数までに限られます。
+ * リソースは、最後まで読み取った時、読み取りに失敗した時、または購読が取り消された時に閉じられます。
+ * </p>
+ * 
+ * <p>
+ * 例えば、リソースの各行を発行する場合は、次のようにします。
+ * </p>
+ * 
+ * <pre>
+ * new ResourcePublisher&lt;&gt;(Resource.of(url::openStream)
+ *     .map(InputStreamReader::new)
+ *     .map(BufferedReader::new)
+ *     .whilePresent(BufferedReader::readLine)::open, 64);
+ * </pre>
+ * 
+ * @param <T> 発行する値
+ * @see SimplePublisher#publishFrom(Flow.Publisher)
+ */
+public final class ResourcePublisher<T> implements Flow.Publisher<T> {
+
+	/**
+	 * 1つのサブスクライバーの購読です。
+	 * 
+	 * <p>
+	 * リソースの読み取りとサブスクライバーへの通知は、常に1つのスレッドだけが行います。
+	 * </p>
+	 */
+	private final class ReadSubscription implements Flow.Subscription {
+
+		/** サブスクライバー。 */
+		private final Flow.Subscriber<? super T> subscriber;
+
+		/** 未消化のリクエスト要求数。 */
+		private final AtomicLong demand = new AtomicLong();
+
+		/** 読み取りの要求数。0から1になったスレッドが、読み取りを開始します。 */
+		private final AtomicInteger wip = new AtomicInteger();
+
+		/** 購読を取り消したかどうか。 */
+		private volatile boolean cancelled;
+
+		/** 不正なリクエストを受け付けた時の例外。 */
+		private volatile Throwable requestError;
+
+		/** 先読みした値。 */
+		private final Queue<T> buffer = new ArrayDeque<>();
+
+		/** カーソル。開いていない、または閉じた場合はnull。 */
+		private Resource.Cursor<? extends T> cursor;
+
+		/** 最後まで読み取ったかどうか。 */
+		private boolean exhausted;
+
+		/** サブスクライバーへの通知を終えたかどうか。 */
+		private boolean done;
+
+		/**
+		 * コンストラクター。
+		 * 
+		 * @param subscriber サブスクライバー
+		 */
+		private ReadSubscription(Flow.Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		/**
+		 * リクエストを受け付け、読み取りを要求します。
+		 * 
+		 * @param n リクエスト要求数
+		 */
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				requestError = new IllegalArgumentException("non-positive subscription request: " + n);
+			} else {
+				demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+			}
+
+			schedule();
+		}
+
+		/**
+		 * 購読を取り消します。
+		 * 
+		 * <p>
+		 * リソースは、読み取りを行うスレッドで閉じられます。
+		 * </p>
+		 */
+		@Override
+		public void cancel() {
+			cancelled = true;
+			schedule();
+		}
+
+		/**
+		 * 読み取りを行っているスレッドがなければ、エグゼキューターで読み取りを開始します。
+		 */
+		private void schedule() {
+			if (wip.getAndIncrement() == 0) {
+				executor.execute(this::drain);
+			}
+		}
+
+		/**
+		 * 要求がなくなるまで、読み取りを繰り返します。
+		 */
+		private void drain() {
+			int missed = 1;
+
+			do {
+				if (!done) {
+					readAndEmit();
+				}
+
+				missed = wip.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		/**
+		 * リクエストがある間、リソースから読み取ってサブスクライバーに渡します。
+		 * 
+		 * <p>
+		 * 読み取りに失敗した場合は、リソースを閉じてから、サブスクライバーにエラーを通知します。
+		 * </p>
+		 */
+		private void readAndEmit() {
+			try {
+				while (!cancelled && requestError == null) {
+					long requested = demand.get();
+
+					if (requested > 0 && !exhausted) {
+						fill();
+					}
+
+					long emitted = 0;
+
+					while (emitted < requested && !buffer.isEmpty() && !cancelled) {
+						subscriber.onNext(buffer.poll());
+						emitted++;
+					}
+
+					if (requested != Long.MAX_VALUE) {
+						demand.addAndGet(-emitted);
+					}
+
+					if (exhausted && buffer.isEmpty()) {
+						done = true;
+						subscriber.onComplete();
+						return;
+					}
+
+					if (emitted == 0) {
+						return;
+					}
+				}
+
+				done = true;
+				close();
+
+				if (requestError != null) {
+					subscriber.onError(requestError);
+				}
+			} catch (Exception e) {
+				done = true;
+				buffer.clear();
+
+				try {
+					close();
+				} catch (Exception suppressed) {
+					e.addSuppressed(suppressed);
+				}
+
+				subscriber.onError(e);
+			}
+		}
+
+		/**
+		 * 先読み数に達するか、最後まで読み取るまで、リソースから読み取ります。
+		 * 
+		 * @throws Exception リソースの取得または読み取りに失敗した場合
+		 */
+		private void fill() throws Exception {
+			if (cursor == null) {
+				cursor = opener.generate();
+			}
+
+			while (buffer.size() < prefetch) {
+				T item = cursor.next();
+
+				if (item == null) {
+					exhausted = true;
+					close();
+					return;
+				}
+
+				buffer.add(item);
+			}
+		}
+
+		/**
+		 * リソースを閉じます。
+		 * 
+		 * @throws IOException リソースを閉じるのに失敗した場合
+		 */
+		private void close() throws IOException {
+			if (cursor != null) {
+				Resource.Cursor<? extends T> closing = cursor;
+				cursor = null;
+				closing.close();
+			}
+		}
+	}
+
+	/** サブスクライバーごとに、リソースを開く関数。 */
+	private final Generator<? extends Resource.Cursor<? extends T>, Exception> opener;
+
+	/** 先読み数。 */
+	private final int prefetch;
+
+	/** 読み取りを行うエグゼキューター。 */
+	private final Executor executor;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * <p>
+	 * 読み取りは、{@link ForkJoinPool#commonPool()}で行います。
+	 * </p>
+	 * 
+	 * @param opener サブスクライバーごとに、リソースを開く関数
+	 * @param prefetch 先読み数
+	 * @throws IllegalArgumentException 先読み数が1未満の場合
+	 */
+	public ResourcePublisher(Generator<? extends Resource.Cursor<? extends T>, Exception> opener, int prefetch) {
+		this(opener, prefetch, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param opener サブスクライバーごとに、リソースを開く関数
+	 * @param prefetch 先読み数
+	 * @param executor 読み取りを行うエグゼキューター
+	 * @throws IllegalArgumentException 先読み数が1未満の場合
+	 */
+	public ResourcePublisher(Generator<? extends Resource.Cursor<? extends T>, Exception> opener, int prefetch,
+			Executor executor) {
+		if (prefetch < 1) {
+			throw new IllegalArgumentException("prefetch=" + prefetch);
+		}
+
+		this.opener = opener;
+		this.prefetch = prefetch;
+		this.executor = executor;
+	}
+
+	/**
+	 * サブスクライバーを登録します。
+	 * 
+	 * <p>
+	 * リソースは、最初のリクエストを受け付けた時に開かれます。
+	 * </p>
+	 * 
+	 * @param subscriber サブスクライバー
+	 */
+	@Override
+	public void subscribe(Flow.Subscriber<? super T> subscriber) {
+		Objects.requireNonNull(subscriber);
+		subscriber.onSubscribe(new ReadSubscription(subscriber));
+	}
+}
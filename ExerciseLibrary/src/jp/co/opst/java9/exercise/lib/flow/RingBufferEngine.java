@@ -0,0 +1,489 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * 1つのリングバッファーを全てのサブスクライバーで共有するエンジンです。
+ * 
+ * <p>
+ * 発行元は1スレッドであることを前提とします。
+ * 値はリングバッファーに1回だけ格納され、各サブスクライバーは自分の読み取り位置（シーケンス）を進めながら読み取ります。
+ * 発行元は、最も遅いサブスクライバーのシーケンスを追い越さないように待機します。
+ * </p>
+ * 
+ * <p>
+ * {@link OverflowPolicy#DROP_OLDEST} には対応していません。
+ * 破棄する場合は、値は全てのサブスクライバーに対して破棄されます。
+ * </p>
+ * 
+ * <p>
+ * イベントのスロットを使用する場合は、リングバッファーにあらかじめスロットを格納しておき、
+ * 発行元はスロットに値を書き込んで再利用します。
+ * </p>
+ * 
+ * @param <T> 発行する値
+ */
+class RingBufferEngine<T> implements PublisherEngine<T> {
+
+	/**
+	 * リングバッファーに対する1つのサブスクライバーの購読です。
+	 * 
+	 * <p>
+	 * エグゼキューター上で、値がなくなるか購読が終了するまで、値を読み取り続けます。
+	 * </p>
+	 */
+	private final class RingSubscription implements Flow.Subscription, Runnable {
+
+		/** サブスクライバー。 */
+		private final Flow.Subscriber<? super T> subscriber;
+
+		/** 未消化のリクエスト要求数。 */
+		private final AtomicLong demand = new AtomicLong();
+
+		/**
+		 * 次に読み取るシーケンス。{@link RingBufferEngine#SEQUENCE} を介してアクセスします。
+		 * 
+		 * <p>
+		 * 外側のクラスからVarHandleを取得するため、privateにしていません。
+		 * </p>
+		 */
+		long sequence;
+
+		/** 購読を終了したかどうか。 */
+		private volatile boolean cancelled;
+
+		/**
+		 * コンストラクター。
+		 * 
+		 * @param subscriber サブスクライバー
+		 * @param sequence 最初に読み取るシーケンス
+		 */
+		private RingSubscription(Flow.Subscriber<? super T> subscriber, long sequence) {
+			this.subscriber = subscriber;
+			this.sequence = sequence;
+		}
+
+		/**
+		 * リクエストを受け付けます。
+		 * 
+		 * @param n リクエスト要求数
+		 */
+		@Override
+		public void request(long n) {
+			if (n <= 0) {
+				cancelled = true;
+				subscriber.onError(new IllegalArgumentException("non-positive subscription request: " + n));
+				return;
+			}
+
+			demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+		}
+
+		/**
+		 * 購読を終了します。
+		 */
+		@Override
+		public void cancel() {
+			cancelled = true;
+		}
+
+		/**
+		 * 値を読み取り、サブスクライバーに渡し続けます。
+		 * 
+		 * <p>
+		 * 取り消されるか終了した後は、エンジンの登録から外します。
+		 * </p>
+		 */
+		@Override
+		public void run() {
+			try {
+				consume();
+			} finally {
+				subscriptions.remove(this);
+			}
+		}
+
+		/**
+		 * 購読を開始し、取り消されるか終了するまで値を配信します。
+		 */
+		private void consume() {
+			try {
+				subscriber.onSubscribe(this);
+			} catch (Throwable t) {
+				cancelled = true;
+				subscriber.onError(t);
+				return;
+			}
+
+			long next = (long) SEQUENCE.getOpaque(this);
+
+			while (!cancelled) {
+				boolean done = closed;
+				long available = (long) CURSOR.getAcquire(RingBufferEngine.this);
+
+				if (next < available && demand.get() > 0) {
+					@SuppressWarnings("unchecked")
+					T item = (T) entries[(int) next & mask];
+					demand.decrementAndGet();
+
+					try {
+						subscriber.onNext(item);
+					} catch (Throwable t) {
+						cancelled = true;
+						subscriber.onError(t);
+						return;
+					}
+
+					SEQUENCE.setRelease(this, ++next);
+				} else if (next >= available && done) {
+					cancelled = true;
+					subscriber.onComplete();
+				} else {
+					waitStrategy.idle();
+				}
+			}
+		}
+
+		/**
+		 * 次に読み取るシーケンスを取得します。
+		 * 
+		 * @return 次に読み取るシーケンス
+		 */
+		private long getSequence() {
+			return (long) SEQUENCE.getAcquire(this);
+		}
+	}
+
+	/** {@link #cursor} のVarHandle。 */
+	private static final VarHandle CURSOR;
+
+	/** {@link RingSubscription#sequence} のVarHandle。 */
+	private static final VarHandle SEQUENCE;
+
+	static {
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+			CURSOR = lookup.findVarHandle(RingBufferEngine.class, "cursor", long.class);
+			SEQUENCE = lookup.findVarHandle(RingBufferEngine.RingSubscription.class, "sequence", long.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/** リングバッファー。 */
+	private final Object[] entries;
+
+	/** シーケンスからリングバッファーの添字を求めるマスク。 */
+	private final int mask;
+
+	/** 待機方法。 */
+	private final WaitStrategy waitStrategy;
+
+	/** バッファーが満杯の時の方針。 */
+	private final OverflowPolicy overflowPolicy;
+
+	/** バッファーが満杯の時の待機時間（ナノ秒）。 */
+	private final long overflowTimeoutNanos;
+
+	/** 破棄ハンドラー。 */
+	private final BiConsumer<SubscriberModel<?>, Object> dropHandler;
+
+	/** 購読リスト。 */
+	private final List<RingSubscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	/** 発行済みの値の数（次に書き込むシーケンス）。{@link #CURSOR} を介してアクセスします。 */
+	@SuppressWarnings("unused")
+	private long cursor;
+
+	/** 発行を終了したかどうか。 */
+	private volatile boolean closed;
+
+	/** リングバッファーに、再利用するイベントのスロットをあらかじめ格納しているかどうか。 */
+	private final boolean pooled;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param capacity リングバッファーの容量。2の累乗に切り上げられます
+	 * @param waitStrategy 待機方法
+	 * @param overflowPolicy バッファーが満杯の時の方針
+	 * @param overflowTimeoutNanos バッファーが満杯の時の待機時間（ナノ秒）
+	 * @param dropHandler 破棄ハンドラー
+	 * @param eventFactory 再利用するイベントのスロットを作成する関数。スロットを使用しない場合はnull
+	 * @throws IllegalArgumentException 容量が1未満、または方針が {@link OverflowPolicy#DROP_OLDEST} の場合
+	 */
+	RingBufferEngine(int capacity, WaitStrategy waitStrategy, OverflowPolicy overflowPolicy, long overflowTimeoutNanos,
+			BiConsumer<SubscriberModel<?>, Object> dropHandler, Supplier<? extends T> eventFactory) {
+		if (capacity < 1 || capacity > 1 << 30) {
+			throw new IllegalArgumentException("capacity=" + capacity);
+		}
+
+		if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+			throw new IllegalArgumentException("DROP_OLDEST is not supported by the ring buffer engine");
+		}
+
+		int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+		this.entries = new Object[size];
+		this.mask = size - 1;
+		this.waitStrategy = waitStrategy;
+		this.overflowPolicy = overflowPolicy;
+		this.overflowTimeoutNanos = overflowTimeoutNanos;
+		this.dropHandler = dropHandler;
+		this.pooled = eventFactory != null;
+
+		if (pooled) {
+			for (int i = 0; i < size; i++) {
+				entries[i] = eventFactory.get();
+			}
+		}
+	}
+
+	/**
+	 * サブスクライバーを登録します。
+	 * 
+	 * <p>
+	 * サブスクライバーは、登録した時点以降に発行された値を読み取ります。
+	 * 発行中に登録する場合に、登録前に読み取ったカーソルの位置が追い越されないよう、
+	 * 登録した後にカーソルを読み直して開始位置とします。
+	 * </p>
+	 * 
+	 * @param executor サブスクライバーを実行するエグゼキューター
+	 * @param subscriber サブスクライバー
+	 */
+	@Override
+	public void subscribe(Executor executor, Flow.Subscriber<? super T> subscriber) {
+		RingSubscription subscription = new RingSubscription(subscriber, (long) CURSOR.getAcquire(this));
+		subscriptions.add(subscription);
+		SEQUENCE.setRelease(subscription, (long) CURSOR.getAcquire(this));
+		executor.execute(subscription);
+	}
+
+	/**
+	 * 発行します。
+	 * 
+	 * <p>
+	 * 最も遅いサブスクライバーがリングバッファー1周分遅れている時は、バッファーが満杯の時の方針に従います。
+	 * </p>
+	 * 
+	 * @param item 発行する値
+	 * @throws IllegalStateException イベントのスロットを使用する場合
+	 */
+	@Override
+	public void publish(T item) {
+		requireUnpooled();
+		long next = (long) CURSOR.getOpaque(this);
+
+		if (!claim(next)) {
+			drop(item);
+			return;
+		}
+
+		entries[(int) next & mask] = item;
+		CURSOR.setRelease(this, next + 1);
+	}
+
+	/**
+	 * 再利用するイベントのスロットに値を書き込んで、発行します。
+	 * 
+	 * <p>
+	 * 最も遅いサブスクライバーがリングバッファー1周分遅れている時は、バッファーが満杯の時の方針に従います。
+	 * 破棄する場合は、スロットに書き込まずに{@code false}を返します。
+	 * 引数は値の型ではないため、破棄ハンドラーには渡しません。
+	 * スロットは、全てのサブスクライバーが読み取り終えるまで、再利用されません。
+	 * </p>
+	 * 
+	 * @param <A> 書き込む値の元になる引数
+	 * @param translator スロットに値を書き込む関数
+	 * @param argument 書き込む値の元になる引数
+	 * @return 発行した場合は{@code true}、スロットに書き込まずに破棄した場合は{@code false}
+	 * @throws UnsupportedOperationException イベントのスロットを使用しない場合
+	 */
+	@Override
+	public <A> boolean publishEvent(EventTranslator<? super T, ? super A> translator, A argument) {
+		if (!pooled) {
+			throw new UnsupportedOperationException("event slots are not enabled");
+		}
+
+		long next = (long) CURSOR.getOpaque(this);
+
+		if (!claim(next)) {
+			return false;
+		}
+
+		@SuppressWarnings("unchecked")
+		T event = (T) entries[(int) next & mask];
+		translator.translateTo(event, argument);
+		CURSOR.setRelease(this, next + 1);
+		return true;
+	}
+
+	/**
+	 * まとめて発行します。
+	 * 
+	 * <p>
+	 * リングバッファーの空きの分だけまとめて値を格納してから、カーソルを1回だけ進めます。
+	 * 空きがない時は、1件分だけ{@link #publish(Object)}と同様に方針に従います。
+	 * </p>
+	 * 
+	 * @param items 発行する値のイテレーター
+	 * @return 発行した値の数
+	 * @throws IllegalStateException イベントのスロットを使用する場合
+	 */
+	@Override
+	public long publishAll(Iterator<? extends T> items) {
+		requireUnpooled();
+		long count = 0;
+		long next = (long) CURSOR.getOpaque(this);
+
+		while (items.hasNext()) {
+			long limit = minimumSequence(next) + entries.length;
+
+			if (limit <= next) {
+				publish(items.next());
+				count++;
+				next = (long) CURSOR.getOpaque(this);
+				continue;
+			}
+
+			long end = next;
+
+			while (end < limit && items.hasNext()) {
+				entries[(int) end & mask] = items.next();
+				end++;
+			}
+
+			CURSOR.setRelease(this, end);
+			count += end - next;
+			next = end;
+		}
+
+		return count;
+	}
+
+	/**
+	 * 発行を終了します。
+	 */
+	@Override
+	public void close() {
+		closed = true;
+	}
+
+	/**
+	 * 未購読の値の数の、サブスクライバー間での最大の推定値を取得します。
+	 * 
+	 * @return 未購読の値の数の最大の推定値
+	 */
+	@Override
+	public int estimateMaximumLag() {
+		long cursor = (long) CURSOR.getAcquire(this);
+		return (int) (cursor - minimumSequence(cursor));
+	}
+
+	/**
+	 * 未消化のリクエスト要求数の、サブスクライバー間での最小の推定値を取得します。
+	 * 
+	 * @return 未消化のリクエスト要求数の最小の推定値
+	 */
+	@Override
+	public long estimateMinimumDemand() {
+		return subscriptions.stream()
+			.filter(subscription -> !subscription.cancelled)
+			.mapToLong(subscription -> subscription.demand.get())
+			.min()
+			.orElse(0);
+	}
+
+	/**
+	 * 購読中のサブスクライバーの数を取得します。
+	 * 
+	 * @return 購読中のサブスクライバーの数
+	 */
+	@Override
+	public int getNumberOfSubscribers() {
+		return (int) subscriptions.stream().filter(subscription -> !subscription.cancelled).count();
+	}
+
+	/**
+	 * 購読中のサブスクライバーのうち、最も遅いシーケンスを取得します。
+	 * 
+	 * @param defaultValue 購読中のサブスクライバーがいない場合の値
+	 * @return 最も遅いシーケンス
+	 */
+	private long minimumSequence(long defaultValue) {
+		long minimum = defaultValue;
+
+		for (RingSubscription subscription : subscriptions) {
+			if (!subscription.cancelled) {
+				minimum = Math.min(minimum, subscription.getSequence());
+			}
+		}
+
+		return minimum;
+	}
+
+	/**
+	 * 次のシーケンスに書き込めるように、必要ならバッファーが満杯の時の方針に従って待機します。
+	 * 
+	 * @param next 次に書き込むシーケンス
+	 * @return 書き込める場合はtrue、値を破棄する場合はfalse
+	 */
+	private boolean claim(long next) {
+		long wrapPoint = next - entries.length;
+		return minimumSequence(next) > wrapPoint || awaitSpace(wrapPoint);
+	}
+
+	/**
+	 * 購読中の全てのサブスクライバーについて、値を破棄ハンドラーに渡します。
+	 * 
+	 * @param item 破棄する値
+	 */
+	private void drop(Object item) {
+		subscriptions.stream()
+			.filter(subscription -> !subscription.cancelled)
+			.forEach(subscription -> dropHandler.accept(SubscriberBase.modelOf(subscription.subscriber), item));
+	}
+
+	/**
+	 * イベントのスロットを使用していないことを確認します。
+	 * 
+	 * @throws IllegalStateException イベントのスロットを使用する場合
+	 */
+	private void requireUnpooled() {
+		if (pooled) {
+			throw new IllegalStateException("event slots are enabled; use publishEvent instead");
+		}
+	}
+
+	/**
+	 * リングバッファーに空きができるまで、バッファーが満杯の時の方針に従って待機します。
+	 * 
+	 * @param wrapPoint 全てのサブスクライバーが超えている必要があるシーケンス
+	 * @return 空きができた場合はtrue、値を破棄する場合はfalse
+	 */
+	private boolean awaitSpace(long wrapPoint) {
+		if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+			return false;
+		}
+
+		long deadline = System.nanoTime() + overflowTimeoutNanos;
+
+		while (minimumSequence(Long.MAX_VALUE) <= wrapPoint) {
+			if (overflowPolicy == OverflowPolicy.BLOCK_WITH_TIMEOUT && System.nanoTime() - deadline >= 0) {
+				return false;
+			}
+
+			waitStrategy.idle();
+		}
+
+		return true;
+	}
+}
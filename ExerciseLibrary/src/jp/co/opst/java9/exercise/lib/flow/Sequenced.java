@@ -0,0 +1,85 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * 発行した順序を表す番号を付けた値です。
+ * 
+ * @param <T> 値
+ * @see ResequencingModel
+ */
+public final class Sequenced<T> {
+
+	/**
+	 * 0から順に番号を付ける関数を作成します。
+	 * 
+	 * <p>
+	 * 関数はスレッドセーフです。
+	 * 発行する直前に番号を付けることで、番号が発行した順序を表すようになります。
+	 * </p>
+	 * 
+	 * @param <T> 値
+	 * @return 番号を付ける関数
+	 */
+	public static <T> Function<T, Sequenced<T>> numbering() {
+		AtomicLong counter = new AtomicLong();
+		return item -> new Sequenced<>(counter.getAndIncrement(), item);
+	}
+
+	/** 番号。 */
+	private final long sequence;
+
+	/** 値。 */
+	private final T item;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param sequence 番号
+	 * @param item 値
+	 */
+	public Sequenced(long sequence, T item) {
+		this.sequence = sequence;
+		this.item = item;
+	}
+
+	/**
+	 * 番号を取得します。
+	 * 
+	 * @return 番号
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * 値を取得します。
+	 * 
+	 * @return 値
+	 */
+	public T getItem() {
+		return item;
+	}
+
+	/**
+	 * 同じ番号を付けた、別の値を作成します。
+	 * 
+	 * @param <R> 別の値
+	 * @param mapper 値を別の値に変換する関数
+	 * @return 同じ番号を付けた別の値
+	 */
+	public <R> Sequenced<R> map(Function<? super T, ? extends R> mapper) {
+		return new Sequenced<>(sequence, mapper.apply(item));
+	}
+
+	/**
+	 * 文字列表現を取得します。
+	 * 
+	 * @return 文字列表現
+	 */
+	@Override
+	public String toString() {
+		return "#" + sequence + " " + item;
+	}
+}
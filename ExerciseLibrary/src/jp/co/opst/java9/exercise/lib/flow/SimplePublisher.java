@@ -1,10 +1,30 @@
 package jp.co.opst.java9.exercise.lib.flow;
 
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Phaser;
 import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+import jp.co.opst.java9.exercise.lib.exception.Try;
 
 /**
  * 単純なパブリッシャーです。
@@ -20,18 +40,127 @@ public class SimplePublisher<T> implements AutoCloseable {
 	 */
 	public static final class Builder<T> {
 
+		/**
+		 * ステージと、その下流のモデルリストの組です。
+		 * 
+		 * @param <T> ステージに入力する値
+		 * @param <R> ステージから出力する値
+		 */
+		private static final class Branch<T, R> {
+
+			/** ステージ。 */
+			private final Stage<? super T, R> stage;
+
+			/** 下流のモデルリスト。 */
+			private final List<SubscriberModel<? super R>> models;
+
+			/**
+			 * コンストラクター。
+			 * 
+			 * @param stage ステージ
+			 * @param models 下流のモデルリスト
+			 */
+			private Branch(Stage<? super T, R> stage, List<? extends SubscriberModel<? super R>> models) {
+				this.stage = stage;
+				this.models = new ArrayList<>(models);
+			}
+		}
+
+		/**
+		 * モデルと、そのモデルを購読する専用のサブスクライバーを作成する関数の組です。
+		 * 
+		 * @param <T> 購読する値
+		 */
+		private static final class CustomEntry<T> {
+
+			/** モデル。計測値の名前に使用します。 */
+			private final Object model;
+
+			/** エグゼキューターと計測値から、サブスクライバーを作成する関数。 */
+			private final BiFunction<Executor, SubscriberMetrics, Flow.Subscriber<T>> factory;
+
+			/**
+			 * コンストラクター。
+			 * 
+			 * @param model モデル
+			 * @param factory エグゼキューターと計測値から、サブスクライバーを作成する関数
+			 */
+			private CustomEntry(Object model, BiFunction<Executor, SubscriberMetrics, Flow.Subscriber<T>> factory) {
+				this.model = model;
+				this.factory = factory;
+			}
+		}
+
 		/** コンテキスト。 */
 		private final SubscriberContext context = new SubscriberContext();
 
 		/** モデルリスト。 */
 		private final List<SubscriberModel<? super T>> models = new ArrayList<>();
 
+		/** モデルごとのエグゼキューター。モデルリストと同じ順序で、既定のエグゼキューターを使用する場合はnull。 */
+		private final List<Executor> modelExecutors = new ArrayList<>();
+
+		/** モデルごとの、値の処理に失敗した時の方針。モデルリストと同じ順序。 */
+		private final List<FailurePolicy<? super T>> modelFailurePolicies = new ArrayList<>();
+
+		/** ステージリスト。 */
+		private final List<Branch<T, ?>> branches = new ArrayList<>();
+
+		/** 専用のサブスクライバーで購読するモデルリスト。 */
+		private final List<CustomEntry<T>> customModels = new ArrayList<>();
+
+		/** 既定のエグゼキューター。 */
+		private Executor executor = ForkJoinPool.commonPool();
+
+		/** サブスクライバーごとの最大バッファー容量。 */
+		private int maxBufferCapacity = Flow.defaultBufferSize();
+
+		/** サブスクライバーごとに専用のスレッドを使用するかどうか。 */
+		private boolean threadPerSubscriber;
+
+		/** バッファーが満杯の時の方針。 */
+		private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+		/** バッファーが満杯の時の待機時間。 */
+		private Duration overflowTimeout = Duration.ZERO;
+
+		/** 計測値をJMXに登録する時の名前。登録しない場合はnull。 */
+		private String metricsName;
+
+		/** リングバッファーのエンジンの待機方法。既定のエンジンを使用する場合はnull。 */
+		private WaitStrategy ringBufferWaitStrategy;
+
+		/** 発行した値を書き込むジャーナル。書き込まない場合はnull。 */
+		private Journal<? super T> journal;
+
+		/** 発行を分散するストライプの数。分散しない場合は0。 */
+		private int publishStripes;
+
+		/** ストライプに分散した発行で、順序を保証するかどうか。 */
+		private boolean orderedStripes;
+
+		/** 再利用するイベントのスロットを作成する関数。スロットを使用しない場合はnull。 */
+		private Supplier<? extends T> eventFactory;
+
+		/** 値の重さを求める関数。重さで待機させない場合はnull。 */
+		private ToLongFunction<? super T> weigher;
+
+		/** 処理中の値のバイト数の上限。 */
+		private long maxBytes;
+
+		/** 停止とみなす処理時間のしきい値。監視しない場合はnull。 */
+		private Duration stallThreshold;
+
+		/** 停止したサブスクライバーの購読を取り消すかどうか。 */
+		private boolean cancelOnStall;
+
 		/**
 		 * コンストラクター。
 		 */
 		private Builder() {
 			context.setDemand(1);
 			context.setErrorHandler(Throwable::printStackTrace);
+			context.setDropHandler((model, item) -> {});
 		}
 
 		/**
@@ -49,6 +178,43 @@ public class SimplePublisher<T> implements AutoCloseable {
 			return this;
 		}
 
+		/**
+		 * ウォーターマーク方式でリクエスト要求数を補充するように設定します。
+		 * 
+		 * <p>
+		 * 購読開始時にウィンドウの大きさだけリクエストし、
+		 * 未消化のリクエスト数が下限ウォーターマーク以下になった時だけ補充します。
+		 * この設定を行うと、{@link #setDemand(int)}の値は使用されません。
+		 * </p>
+		 * 
+		 * @param window ウィンドウ
+		 * @param lowWatermark 下限ウォーターマーク
+		 * @return このインスタンス自身
+		 */
+		public Builder<T> setWatermark(int window, int lowWatermark) {
+			return setWatermark(window, lowWatermark, window);
+		}
+
+		/**
+		 * ウォーターマーク方式でリクエスト要求数を補充するように設定します。
+		 * 
+		 * <p>
+		 * 最大ウィンドウがウィンドウより大きい場合は、
+		 * 各サブスクライバーの消費速度に応じて、ウィンドウから最大ウィンドウまでの範囲で自動調整します。
+		 * </p>
+		 * 
+		 * @param window ウィンドウ
+		 * @param lowWatermark 下限ウォーターマーク
+		 * @param maxWindow 最大ウィンドウ
+		 * @return このインスタンス自身
+		 * @throws IllegalArgumentException 引数の組み合わせが不正な場合
+		 */
+		public Builder<T> setWatermark(int window, int lowWatermark, int maxWindow) {
+			DemandWindow.validate(window, lowWatermark, maxWindow);
+			context.setDemandWindowFactory(() -> new DemandWindow(window, lowWatermark, maxWindow));
+			return this;
+		}
+
 		/**
 		 * エラーハンドラーを設定します。
 		 * 
@@ -64,6 +230,339 @@ public class SimplePublisher<T> implements AutoCloseable {
 			return this;
 		}
 
+		/**
+		 * 既定のエグゼキューターを設定します。
+		 * 
+		 * <p>
+		 * 初期値は {@link ForkJoinPool#commonPool()} です。
+		 * </p>
+		 * 
+		 * @param executor 既定のエグゼキューター
+		 * @return このインスタンス自身
+		 */
+		public Builder<T> setExecutor(Executor executor) {
+			this.executor = executor;
+			return this;
+		}
+
+		/**
+		 * サブスクライバーごとの最大バッファー容量を設定します。
+		 * 
+		 * <p>
+		 * 初期値は {@link Flow#defaultBufferSize()} です。
+		 * </p>
+		 * 
+		 * @param maxBufferCapacity サブスクライバーごとの最大バッファー容量
+		 * @return このインスタンス自身
+		 */
+		public Builder<T> setMaxBufferCapacity(int maxBufferCapacity) {
+			this.maxBufferCapacity = maxBufferCapacity;
+			return this;
+		}
+
+		/**
+		 * サブスクライバーごとに専用のスレッドを使用するかどうかを設定します。
+		 * 
+		 * <p>
+		 * trueを設定すると、エグゼキューターを個別に指定していないモデルは、
+		 * 既定のエグゼキューターの代わりに、サブスクライバーごとのデーモンスレッドで実行されます。
+		 * ブロッキングするモデルが、他の処理のスレッドを占有しないようにするためのものです。
+		 * リングバッファーのエンジンを使用する場合は、常に専用のスレッドを使用します。
+		 * 初期値はfalseです。
+		 * </p>
+		 * 
+		 * @param threadPerSubscriber サブスクライバーごとに専用のスレッドを使用するかどうか
+		 * @return このインスタンス自身
+		 */
+		public Builder<T> setThreadPerSubscriber(boolean threadPerSubscriber) {
+			this.threadPerSubscriber = threadPerSubscriber;
+			return this;
+		}
+
+		/**
+		 * バッファーが満杯の時の方針を設定します。
+		 * 
+		 * <p>
+		 * 初期値は {@link OverflowPolicy#BLOCK} です。
+		 * 待機時間はゼロになります。
+		 * {@link OverflowPolicy#DROP_OLDEST} には、待機時間を指定する {@link #setOverflowPolicy(OverflowPolicy, Duration)} を使用してください。
+		 * </p>
+		 * 
+		 * @param overflowPolicy バッファーが満杯の時の方針
+		 * @return このインスタンス自身
+		 */
+		public Builder<T> setOverflowPolicy(OverflowPolicy overflowPolicy) {
+			return setOverflowPolicy(overflowPolicy, Duration.ZERO);
+		}
+
+		/**
+		 * バッファーが満杯の時の方針と待機時間を設定します。
+		 * 
+		 * <p>
+		 * 待機時間は、{@link OverflowPolicy#BLOCK_WITH_TIMEOUT} および {@link OverflowPolicy#DROP_OLDEST} の場合に使用されます。
+		 * {@link OverflowPolicy#DROP_OLDEST} の場合は、正の待機時間が必要です。
+		 * </p>
+		 * 
+		 * @param overflowPolicy バッファーが満杯の時の方針
+		 * @param overflowTimeout バッファーが満杯の時の待機時間
+		 * @return このインスタンス自身
+		 * @throws IllegalArgumentException 待機時間が負の場合
+		 */
+		public Builder<T> setOverflowPolicy(OverflowPolicy overflowPolicy, Duration overflowTimeout) {
+			if (overflowTimeout.isNegative()) {
+				throw new IllegalArgumentException("overflowTimeout=" + overflowTimeout);
+			}
+
+			this.overflowPolicy = overflowPolicy;
+			this.overflowTimeout = overflowTimeout;
+			return this;
+		}
+
+		/**
+		 * 処理中の値のバイト数の上限を設定します。
+		 * 
+		 * <p>
+		 * 値の件数ではなく、発行してからモデルに渡し終えるまでの値の重さ（バイト数）の合計で、発行元を待機させます。
+		 * 重さの合計が上限を超える時は、件数にかかわらず、バッファーが満杯の時の方針に従って待機または破棄します。
+		 * 処理中の値がない時は、上限より重い値でも発行します。
+		 * 設定した場合でも、サブスクライバーごとの最大バッファー容量による件数の上限は残り、
+		 * 件数の上限に達した時は、方針にかかわらず待機します。
+		 * </p>
+		 * 
+		 * <p>
+		 * 重さを求める関数は、発行時とモデルに渡し終えた時に呼び出されるため、
+		 * 同じ値に対して常に同じ結果を返す必要があります。
+		 * 重さで待機させる場合、まとめて発行しても1件ずつ発行します。
+		 * {@link OverflowPolicy#DROP_OLDEST} およびイベントのスロットとは組み合わせられません。
+		 * また、値を受け取った後にモデルの処理を待たずに次の値を受け取るもの、
+		 * すなわちステージ、まとめて処理するモデル、非同期のモデル、確認応答を返すモデル、
+		 * キーごとに最新の値だけを受け取るモデルとも組み合わせられません。
+		 * モデルが処理を終えた後も値を保持する場合、その値は数えません。
+		 * 初期値はnull（重さで待機させない）です。
+		 * </p>
+		 * 
+		 * @param weigher 値の重さを求める関数。重さで待機させない場合はnull
+		 * @param maxBytes 処理中の値のバイト数の上限
+		 * @return このインスタンス自身
+		 * @throws IllegalArgumentException バイト数の上限が1未満の場合
+		 */
+		public Builder<T> setByteBudget(ToLongFunction<? super T> weigher, long maxBytes) {
+			if (weigher != null && maxBytes < 1) {
+				throw new IllegalArgumentException("maxBytes=" + maxBytes);
+			}
+
+			this.weigher = weigher;
+			this.maxBytes = maxBytes;
+			return this;
+		}
+
+		/**
+		 * 破棄ハンドラーを設定します。
+		 * 
+		 * <p>
+		 * 破棄ハンドラーは、バッファーが満杯のために値が破棄された時に、
+		 * その値を受け取るはずだったモデルと、破棄された値を受け取ります。
+		 * 応答を返すモデルの場合は、元のモデルを保持する{@link AckingSubscriber.AckModelAdapter}を受け取ります。
+		 * 非同期のモデル、最新の値だけを処理するモデル、ステージ宛ての値の場合は、モデルはnullです。
+		 * 初期値は何もしないハンドラーです。
+		 * </p>
+		 * 
+		 * @param dropHandler 破棄ハンドラー
+		 * @return このインスタンス自身
+		 */
+		public Builder<T> setDropHandler(BiConsumer<SubscriberModel<?>, ? super T> dropHandler) {
+			@SuppressWarnings("unchecked")
+			BiConsumer<SubscriberModel<?>, Object> handler = (BiConsumer<SubscriberModel<?>, Object>) dropHandler;
+			context.setDropHandler(handler);
+			return this;
+		}
+
+		/**
+		 * リングバッファーのエンジンを使用するように設定します。
+		 * 
+		 * <p>
+		 * 既定のエンジンは、サブスクライバーごとにバッファーを持つ {@link SubmissionPublisher} を使用します。
+		 * リングバッファーのエンジンは、全てのサブスクライバーで1つのリングバッファーを共有し、
+		 * 値を1回だけ格納します。
+		 * リングバッファーの容量は、サブスクライバーごとの最大バッファー容量を2の累乗に切り上げたものになります。
+		 * </p>
+		 * 
+		 * <p>
+		 * リングバッファーのエンジンでは、{@link SimplePublisher#publish(Object)}を1つのスレッドから呼び出す必要があります。
+		 * 複数のスレッドから発行する場合は、{@link #setStripedPublishing(int, boolean)}と組み合わせてください。
+		 * また、{@link OverflowPolicy#DROP_OLDEST} は使用できません。
+		 * 各サブスクライバーは、スレッドを購読の終了まで占有するため、
+		 * エグゼキューターを個別に指定していないモデルは、既定のエグゼキューターではなく、
+		 * {@link #setThreadPerSubscriber(boolean)}の設定に関わらずサブスクライバーごとの専用のスレッドで実行されます。
+		 * </p>
+		 * 
+		 * @param waitStrategy 発行元やサブスクライバーが待機する時の方法
+		 * @return このインスタンス自身
+		 */
+		public Builder<T> setRingBufferEngine(WaitStrategy waitStrategy) {
+			this.ringBufferWaitStrategy = waitStrategy;
+			return this;
+		}
+
+		/**
+		 * 処理時間を記録するトレーサーを設定します。
+		 * 
+		 * <p>
+		 * 発行、サブスクライバーへの各通知、モデルの各処理のうち、処理時間がしきい値以上のものだけを記録します。
+		 * トレーサーを設定していない場合は、処理時間の計測も行いません。
+		 * 初期値はnull（記録しない）です。
+		 * </p>
+		 * 
+		 * @param tracer トレーサー。記録しない場合はnull
+		 * @param threshold 記録する処理時間のしきい値
+		 * @return このインスタンス自身
+		 * @throws IllegalArgumentException しきい値が負の場合
+		 * @see TraceEvent
+		 */
+		public Builder<T> setTracer(FlowTracer tracer, Duration threshold) {
+			if (threshold.isNegative()) {
+				throw new IllegalArgumentException("threshold=" + threshold);
+			}
+
+			context.setTracing(tracer == null ? Tracing.DISABLED : new Tracing(tracer, threshold.toNanos()));
+			return this;
+		}
+
+		/**
+		 * サブスクライバーの停止を監視するように設定します。
+		 * 
+		 * <p>
+		 * モデルの購読時の処理が、しきい値以上の時間終わらない場合、
+		 * 処理が止まっているスレッドのスタックトレースを持つ {@link SubscriberStalledException} を、
+		 * エラー発生時の処理に渡します。
+		 * 報告は1回の停止につき1回だけです。
+		 * 購読を取り消す場合は、処理の終了を待たずに購読を取り消し、そのモデルを終了したものとして扱います。
+		 * この時、モデルの終了時の処理は行いません。
+		 * </p>
+		 * 
+		 * <p>
+		 * 監視は専用のデーモンスレッドで行います。
+		 * 監視の対象は、通常のモデル、まとめて処理するモデル、ステージの下流のモデル、および後から接続したモデルです。
+		 * 非同期のモデル、確認応答を返すモデル、キーごとに最新の値だけを受け取るモデルは対象外です。
+		 * 初期値はnull（監視しない）です。
+		 * </p>
+		 * 
+		 * @param threshold 停止とみなす処理時間のしきい値。監視しない場合はnull
+		 * @param cancelOnStall 停止したサブスクライバーの購読を取り消すかどうか
+		 * @return このインスタンス自身
+		 * @throws IllegalArgumentException しきい値が正でない場合
+		 */
+		public Builder<T> setStallWatchdog(Duration threshold, boolean cancelOnStall) {
+			if (threshold != null && (threshold.isNegative() || threshold.isZero())) {
+				throw new IllegalArgumentException("threshold=" + threshold);
+			}
+
+			this.stallThreshold = threshold;
+			this.cancelOnStall = cancelOnStall;
+			return this;
+		}
+
+		/**
+		 * 複数のスレッドからの発行を、ストライプに分散するように設定します。
+		 * 
+		 * <p>
+		 * 発行元スレッドは、スレッドごとに決まるストライプに値を格納し、
+		 * その時にエンジンへ渡している最中のスレッドがなければ、全てのストライプの値をまとめてエンジンに渡します。
+		 * エンジンのロックを奪い合うのは1つのスレッドだけになるため、発行元スレッドが多い時に有効です。
+		 * また、リングバッファーのエンジンにも、複数のスレッドから発行できるようになります。
+		 * ストライプごとの容量は、サブスクライバーごとの最大バッファー容量です。
+		 * </p>
+		 * 
+		 * <p>
+		 * 同じスレッドから発行した値の順序は、常に保たれます。
+		 * 順序を保証する場合は、スレッドをまたいで、{@link SimplePublisher#publish(Object)}を呼び出した順序で配信します。
+		 * ただし、発行の番号を採番するカウンターを全てのスレッドで共有し、
+		 * 値は前の番号の値が揃うまで待たされます。
+		 * </p>
+		 * 
+		 * <p>
+		 * ジャーナルとは組み合わせられません。
+		 * ジャーナルの順序と配信の順序が一致しなくなるためです。
+		 * </p>
+		 * 
+		 * @param stripes ストライプの数。2の累乗に切り上げられます。0の場合は分散しません
+		 * @param ordered 順序を保証するかどうか
+		 * @return このインスタンス自身
+		 * @throws IllegalArgumentException ストライプの数が負の場合
+		 */
+		public Builder<T> setStripedPublishing(int stripes, boolean ordered) {
+			if (stripes < 0) {
+				throw new IllegalArgumentException("stripes=" + stripes);
+			}
+
+			this.publishStripes = stripes;
+			this.orderedStripes = ordered;
+			return this;
+		}
+
+		/**
+		 * 再利用するイベントのスロットを使用するように設定します。
+		 * 
+		 * <p>
+		 * リングバッファーのエンジンを使用し、リングバッファーの全ての位置に、あらかじめスロットを作成しておきます。
+		 * 発行は{@link SimplePublisher#publishEvent(EventTranslator, Object)}で行い、
+		 * 値を書き込む関数がスロットに値を書き込みます。
+		 * スロットは、全てのモデルが受け取り終えた後に再利用されるため、発行ごとにオブジェクトを作成しません。
+		 * </p>
+		 * 
+		 * <p>
+		 * モデルは、受け取ったスロットを購読時の処理の後まで保持してはいけません。
+		 * そのため、まとめて処理するモデル、非同期のモデル、最新の値だけを処理するモデル、ステージ、
+		 * ストライプに分散した発行、ジャーナルとは組み合わせられません。
+		 * </p>
+		 * 
+		 * @param eventFactory スロットを作成する関数
+		 * @param waitStrategy 発行元やサブスクライバーが待機する時の方法
+		 * @return このインスタンス自身
+		 * @see #setRingBufferEngine(WaitStrategy)
+		 */
+		public Builder<T> setEventSlots(Supplier<? extends T> eventFactory, WaitStrategy waitStrategy) {
+			this.eventFactory = eventFactory;
+			this.ringBufferWaitStrategy = waitStrategy;
+			return this;
+		}
+
+		/**
+		 * 発行した値を書き込むジャーナルを設定します。
+		 * 
+		 * <p>
+		 * 設定すると、発行した値はサブスクライバーに渡す前にジャーナルに追記されます。
+		 * ジャーナルはパブリッシャーを閉じても閉じられないため、呼び出し元で閉じてください。
+		 * 初期値はnull（書き込まない）です。
+		 * </p>
+		 * 
+		 * @param journal ジャーナル
+		 * @return このインスタンス自身
+		 * @see Journal#checkpointed(String, SubscriberModel)
+		 */
+		public Builder<T> setJournal(Journal<? super T> journal) {
+			this.journal = journal;
+			return this;
+		}
+
+		/**
+		 * 計測値をJMXに登録する時の名前を設定します。
+		 * 
+		 * <p>
+		 * 名前を設定すると、作成時に計測値がプラットフォームMBeanサーバーに登録され、
+		 * 全てのサブスクライバーが終了した時に登録が解除されます。
+		 * 初期値はnull（登録しない）です。
+		 * </p>
+		 * 
+		 * @param metricsName 計測値をJMXに登録する時の名前
+		 * @return このインスタンス自身
+		 * @see PublisherMetrics#register(String)
+		 */
+		public Builder<T> setMetricsName(String metricsName) {
+			this.metricsName = metricsName;
+			return this;
+		}
+
 		/**
 		 * モデルを追加します。
 		 * 
@@ -71,7 +570,176 @@ public class SimplePublisher<T> implements AutoCloseable {
 		 * @return このインスタンス自身
 		 */
 		public Builder<T> add(SubscriberModel<? super T> model) {
+			return add(model, null, FailurePolicy.fail());
+		}
+
+		/**
+		 * エグゼキューターを指定して、モデルを追加します。
+		 * 
+		 * <p>
+		 * 同じエグゼキューターを指定したモデルは、1つのパブリッシャーを共有します。
+		 * </p>
+		 * 
+		 * @param model モデル
+		 * @param executor このモデルを実行するエグゼキューター。既定のエグゼキューターを使用する場合はnull
+		 * @return このインスタンス自身
+		 */
+		public Builder<T> add(SubscriberModel<? super T> model, Executor executor) {
+			return add(model, executor, FailurePolicy.fail());
+		}
+
+		/**
+		 * 値の処理に失敗した時の方針を指定して、モデルを追加します。
+		 * 
+		 * @param model モデル
+		 * @param failurePolicy モデルが値の処理に失敗した時の方針
+		 * @return このインスタンス自身
+		 * @see FailurePolicy
+		 */
+		public Builder<T> add(SubscriberModel<? super T> model, FailurePolicy<? super T> failurePolicy) {
+			return add(model, null, failurePolicy);
+		}
+
+		/**
+		 * エグゼキューターと、値の処理に失敗した時の方針を指定して、モデルを追加します。
+		 * 
+		 * @param model モデル
+		 * @param executor このモデルを実行するエグゼキューター。既定のエグゼキューターを使用する場合はnull
+		 * @param failurePolicy モデルが値の処理に失敗した時の方針
+		 * @return このインスタンス自身
+		 * @see FailurePolicy
+		 */
+		public Builder<T> add(SubscriberModel<? super T> model, Executor executor, FailurePolicy<? super T> failurePolicy) {
 			models.add(model);
+			modelExecutors.add(executor);
+			modelFailurePolicies.add(failurePolicy);
+			return this;
+		}
+
+		/**
+		 * 購読した値をまとめて処理するモデルを追加します。
+		 * 
+		 * <p>
+		 * 購読した値は、件数の上限に達するか、最初の値を溜め込んでから待機時間が経過するまで溜め込まれ、
+		 * まとめてモデルに渡されます。
+		 * 購読の完了時および例外時には、溜め込んだ値が必ず渡されます。
+		 * </p>
+		 * 
+		 * @param model まとめて処理するモデル
+		 * @param batchSize 件数の上限
+		 * @param linger 待機時間。ゼロの場合は件数の上限だけでまとめて渡します
+		 * @return このインスタンス自身
+		 * @see BatchingModel
+		 */
+		public Builder<T> add(BatchSubscriberModel<? super T> model, int batchSize, Duration linger) {
+			return add(batching(model, batchSize, linger));
+		}
+
+		/**
+		 * 非同期のモデルを追加します。
+		 * 
+		 * <p>
+		 * 処理の完了を待たずに、処理中の値が上限に達するまで次の値を購読します。
+		 * 非同期のモデルには、リクエスト要求数およびウォーターマークの設定は適用されません。
+		 * </p>
+		 * 
+		 * @param model 非同期のモデル
+		 * @param maxInFlight 処理中の値の上限
+		 * @return このインスタンス自身
+		 * @throws IllegalArgumentException 処理中の値の上限が1未満の場合
+		 * @see AsyncSubscriber
+		 */
+		public Builder<T> add(AsyncSubscriberModel<? super T> model, int maxInFlight) {
+			if (maxInFlight < 1) {
+				throw new IllegalArgumentException("maxInFlight=" + maxInFlight);
+			}
+
+			customModels.add(new CustomEntry<>(model,
+				(modelExecutor, modelMetrics) -> new AsyncSubscriber<T>(context, model, maxInFlight, modelMetrics)));
+			return this;
+		}
+
+		/**
+		 * 値ごとに処理結果を応答するモデルを追加します。
+		 * 
+		 * <p>
+		 * 応答がないまま待機時間が過ぎた値や、失敗を応答した値は、配信回数の上限に達するまで再配信します。
+		 * 上限に達した値は、破棄ハンドラーに渡します。
+		 * 応答待ちの値が上限に達すると、応答があるまで次の値を購読しません。
+		 * このモデルには、リクエスト要求数およびウォーターマークの設定は適用されません。
+		 * </p>
+		 * 
+		 * @param model 処理結果を応答するモデル
+		 * @param maxUnacked 応答待ちの上限。2の累乗に切り上げられます
+		 * @param ackTimeout 応答の待機時間
+		 * @param maxDeliveries 配信回数の上限
+		 * @return このインスタンス自身
+		 * @throws IllegalArgumentException 応答待ちの上限か配信回数の上限が1未満、または待機時間が正でない場合
+		 * @see AckingSubscriber
+		 */
+		public Builder<T> add(AckSubscriberModel<? super T> model, int maxUnacked, Duration ackTimeout,
+				int maxDeliveries) {
+			if (maxUnacked < 1 || maxDeliveries < 1 || ackTimeout.isNegative() || ackTimeout.isZero()) {
+				throw new IllegalArgumentException(String.format("maxUnacked=%d, ackTimeout=%s, maxDeliveries=%d",
+					maxUnacked, ackTimeout, maxDeliveries));
+			}
+
+			customModels.add(new CustomEntry<>(model, (modelExecutor, modelMetrics) ->
+				new AckingSubscriber<T>(context, model, maxUnacked, ackTimeout, maxDeliveries, modelExecutor, modelMetrics)));
+			return this;
+		}
+
+		/**
+		 * 最新の値だけを受け取るモデルを追加します。
+		 * 
+		 * <p>
+		 * モデルの処理が追いつかない間に届いた値は、新しい値で上書きされ、モデルには渡されません。
+		 * モデルが遅くても、パブリッシャーを待たせることはありません。
+		 * </p>
+		 * 
+		 * @param model モデル
+		 * @return このインスタンス自身
+		 * @see ConflatingSubscriber
+		 */
+		public Builder<T> addConflating(SubscriberModel<? super T> model) {
+			return addConflating(model, null);
+		}
+
+		/**
+		 * キーごとに最新の値だけを受け取るモデルを追加します。
+		 * 
+		 * <p>
+		 * モデルの処理が追いつかない間に届いた値は、同じキーの新しい値で上書きされ、モデルには渡されません。
+		 * </p>
+		 * 
+		 * @param model モデル
+		 * @param keyExtractor 値からキーを取り出す関数。nullの場合は、全ての値が1つのスロットを共有します
+		 * @return このインスタンス自身
+		 * @see ConflatingSubscriber
+		 */
+		public Builder<T> addConflating(SubscriberModel<? super T> model, Function<? super T, ?> keyExtractor) {
+			customModels.add(new CustomEntry<>(model, (modelExecutor, modelMetrics) ->
+				new ConflatingSubscriber<T>(context, model, keyExtractor, modelExecutor, modelMetrics)));
+			return this;
+		}
+
+		/**
+		 * ステージを介して値を受け取るモデルを追加します。
+		 * 
+		 * <p>
+		 * ステージは、追加したモデルの数にかかわらず、1件につき1回だけ実行され、
+		 * その結果が全てのモデルに渡されます。
+		 * ステージの下流のモデルは、既定のエグゼキューターで実行されます。
+		 * </p>
+		 * 
+		 * @param <R> ステージから出力する値
+		 * @param stage ステージ
+		 * @param models ステージから出力された値を受け取るモデルリスト
+		 * @return このインスタンス自身
+		 * @see StageProcessor
+		 */
+		public <R> Builder<T> add(Stage<? super T, R> stage, List<? extends SubscriberModel<? super R>> models) {
+			branches.add(new Branch<>(stage, models));
 			return this;
 		}
 
@@ -79,20 +747,194 @@ public class SimplePublisher<T> implements AutoCloseable {
 		 * シンプルパブリッシャーを作成します。
 		 * 
 		 * @return シンプルパブリッシャー
+		 * @throws IllegalArgumentException リングバッファーのエンジンに {@link OverflowPolicy#DROP_OLDEST} を設定した場合、
+		 *     ストライプに分散した発行とジャーナルを組み合わせた場合、
+		 *     イベントのスロットと組み合わせられない設定をした場合、
+		 *     バイト数の上限と {@link OverflowPolicy#DROP_OLDEST} またはモデルの処理を待たないサブスクライバーを組み合わせた場合、
+		 *     または {@link OverflowPolicy#DROP_OLDEST} の待機時間が正でない場合
 		 */
 		public SimplePublisher<T> build() {
-			SubmissionPublisher<T> publisher = new SubmissionPublisher<>();
-			CountDownLatch latch = new CountDownLatch(models.size());
-			context.setDoneSignal(latch::countDown);
+			if (overflowPolicy == OverflowPolicy.DROP_OLDEST && (overflowTimeout.isZero() || overflowTimeout.isNegative())) {
+				throw new IllegalArgumentException("DROP_OLDEST requires a positive overflowTimeout");
+			}
+
+			if (weigher != null && overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+				throw new IllegalArgumentException("a byte budget cannot be combined with " + overflowPolicy);
+			}
+
+			// ステージや独自のサブスクライバーは、処理前の値を自分のバッファーに抱えるため、重さを数えられない
+			if (weigher != null && (!branches.isEmpty() || !customModels.isEmpty()
+					|| models.stream().anyMatch(model -> model instanceof BatchingModel))) {
+				throw new IllegalArgumentException("a byte budget can only be used with plain subscriber models");
+			}
+
+			if (publishStripes > 0 && journal != null) {
+				throw new IllegalArgumentException("striped publishing cannot be combined with a journal");
+			}
+
+			if (eventFactory != null && (publishStripes > 0 || journal != null || weigher != null || !customModels.isEmpty()
+					|| !branches.isEmpty() || models.stream().anyMatch(model -> model instanceof BatchingModel))) {
+				throw new IllegalArgumentException("event slots can only be used with plain subscriber models");
+			}
+
+			// リングバッファーのサブスクライバーはスレッドを占有するため、共有のエグゼキューターでは発行元が進めなくなる
+			boolean dedicatedThreads = threadPerSubscriber || ringBufferWaitStrategy != null;
+			ExecutorService dedicated = dedicatedThreads ? Executors.newCachedThreadPool(runnable -> {
+				Thread thread = new Thread(runnable, "simple-publisher-subscriber");
+				thread.setDaemon(true);
+				return thread;
+			}) : null;
+
+			List<SubscriberMetrics> subscriberMetrics = new CopyOnWriteArrayList<>();
+			PublisherEngine<T> engine = createEngine();
+			PublisherMetrics metrics = new PublisherMetrics(engine, subscriberMetrics);
+
+			BiConsumer<SubscriberModel<?>, Object> dropHandler = context.getDropHandler();
+			context.setDropHandler((model, item) -> {
+				metrics.recordDropped();
+				dropHandler.accept(model, item);
+			});
+
+			int modelCount = models.size() + customModels.size()
+				+ branches.stream().mapToInt(branch -> branch.models.size()).sum();
+			StallWatchdog watchdog = stallThreshold != null ? new StallWatchdog(stallThreshold, cancelOnStall) : null;
+			context.setWatchdog(watchdog);
+
+			CompletableFuture<Summary> completion = new CompletableFuture<>();
+			Phaser phaser = new Phaser(1 + modelCount) {
+				@Override
+				protected boolean onAdvance(int phase, int registeredParties) {
+					metrics.unregister();
+
+					if (dedicated != null) {
+						dedicated.shutdown();
+					}
+
+					if (watchdog != null) {
+						watchdog.close();
+					}
+
+					completion.complete(new Summary(metrics));
+					return true;
+				}
+			};
+			context.setDoneSignal(phaser::arriveAndDeregister);
+
+			for (int i = 0; i < models.size(); i++) {
+				SubscriberModel<? super T> model = models.get(i);
+				Executor modelExecutor = modelExecutors.get(i);
+
+				if (modelExecutor == null) {
+					modelExecutor = dedicated != null ? dedicated : executor;
+				}
+
+				engine.subscribe(modelExecutor, createSubscriber(model, modelFailurePolicies.get(i), subscriberMetrics));
+			}
+
+			for (CustomEntry<T> entry : customModels) {
+				Executor modelExecutor = dedicated != null ? dedicated : executor;
+				SubscriberMetrics modelMetrics = new SubscriberMetrics(entry.model.getClass().getSimpleName());
+				subscriberMetrics.add(modelMetrics);
+				engine.subscribe(modelExecutor, entry.factory.apply(modelExecutor, modelMetrics));
+			}
+
+			for (Branch<T, ?> branch : branches) {
+				subscribe(engine, dedicated != null ? dedicated : executor, branch, subscriberMetrics);
+			}
+
+			if (metricsName != null) {
+				metrics.register(metricsName);
+			}
+
+			return new SimplePublisher<T>(engine, phaser, completion, metrics, context,
+				dedicated != null ? dedicated : executor, journal);
+		}
+
+		/**
+		 * サブスクライバーを作成します。
+		 * 
+		 * @param <X> 購読する値
+		 * @param model モデル
+		 * @param failurePolicy モデルが値の処理に失敗した時の方針
+		 * @param subscriberMetrics 作成したサブスクライバーの計測値を追加するリスト
+		 * @return サブスクライバー
+		 */
+		private <X> SubscriberBase<X> createSubscriber(SubscriberModel<? super X> model,
+				FailurePolicy<? super X> failurePolicy, List<SubscriberMetrics> subscriberMetrics) {
+			SubscriberMetrics modelMetrics = new SubscriberMetrics(model.getClass().getSimpleName());
+			subscriberMetrics.add(modelMetrics);
+			return new SubscriberBase<X>(context, model, modelMetrics, failurePolicy);
+		}
+
+		/**
+		 * ステージのプロセッサーを作成し、下流のモデルを購読させた上で、エンジンに登録します。
+		 * 
+		 * @param <R> ステージから出力する値
+		 * @param engine エンジン
+		 * @param branchExecutor プロセッサーおよび下流のモデルを実行するエグゼキューター
+		 * @param branch ステージと下流のモデルリストの組
+		 * @param subscriberMetrics 作成したサブスクライバーの計測値を追加するリスト
+		 */
+		private <R> void subscribe(PublisherEngine<T> engine, Executor branchExecutor, Branch<T, R> branch,
+				List<SubscriberMetrics> subscriberMetrics) {
+			StageProcessor<T, R> processor = new StageProcessor<>(branch.stage, branchExecutor, maxBufferCapacity);
+
+			for (SubscriberModel<? super R> model : branch.models) {
+				processor.subscribe(createSubscriber(model, FailurePolicy.fail(), subscriberMetrics));
+			}
 
-			models.stream()
-				.map(model -> new SubscriberBase<T>(context, model))
-				.forEach(publisher::subscribe);
+			engine.subscribe(branchExecutor, processor);
+		}
+
+		/**
+		 * エンジンを作成します。
+		 * 
+		 * <p>
+		 * エンジンは、コンテキストの破棄ハンドラーを介して値を破棄します。
+		 * バイト数の上限を設定した場合は、エンジンを重さを数えるエンジンで包みます。
+		 * ストライプに分散する場合は、さらにストライプのエンジンで包みます。
+		 * </p>
+		 * 
+		 * @return エンジン
+		 */
+		private PublisherEngine<T> createEngine() {
+			BiConsumer<SubscriberModel<?>, Object> dropHandler = (model, item) -> context.getDropHandler().accept(model, item);
+
+			// 重さで待機させる場合は、方針を重さの上限に適用し、件数の上限では破棄しない
+			OverflowPolicy bufferPolicy = weigher != null ? OverflowPolicy.BLOCK : overflowPolicy;
+			PublisherEngine<T> engine;
+
+			if (ringBufferWaitStrategy == null) {
+				engine = new SubmissionEngine<>(maxBufferCapacity, bufferPolicy, overflowTimeout.toNanos(), dropHandler);
+			} else {
+				engine = new RingBufferEngine<>(maxBufferCapacity, ringBufferWaitStrategy, bufferPolicy,
+					overflowTimeout.toNanos(), dropHandler, eventFactory);
+			}
+
+			// 重さの加算と発行を一続きにするため、ストライプより内側で包む
+			if (weigher != null) {
+				engine = new WeightedEngine<>(engine, weigher, maxBytes, overflowPolicy, overflowTimeout.toNanos(), dropHandler);
+			}
 
-			return new SimplePublisher<T>(publisher, latch);
+			return publishStripes > 0
+				? new StripedEngine<>(engine, publishStripes, maxBufferCapacity, orderedStripes)
+				: engine;
 		}
 	}
 
+	/**
+	 * まとめて処理するモデルを、モデルに変換します。
+	 * 
+	 * @param <T> 購読する値
+	 * @param model まとめて処理するモデル
+	 * @param batchSize 件数の上限
+	 * @param linger 待機時間
+	 * @return モデル
+	 */
+	private static <T> SubscriberModel<T> batching(BatchSubscriberModel<T> model, int batchSize, Duration linger) {
+		return new BatchingModel<>(model, batchSize, linger);
+	}
+
 	/**
 	 * シンプルパブリッシャーのビルダーを取得します。
 	 * 
@@ -103,30 +945,292 @@ public class SimplePublisher<T> implements AutoCloseable {
 		return new Builder<>();
 	}
 
-	/** パブリッシャー。 */
-	private final SubmissionPublisher<T> publisher;
+	/** エンジン。 */
+	private final PublisherEngine<T> engine;
+
+	/**
+	 * 終了を待つ参加者のフェイザー。
+	 * 
+	 * <p>
+	 * パブリッシャー自身と、購読中の各サブスクライバーが参加者です。
+	 * 全ての参加者が抜けた時点でフェイザーが終了し、フューチャーが完了します。
+	 * </p>
+	 */
+	private final Phaser phaser;
+
+	/** 全てのサブスクライバーが終了した時に完了するフューチャー。 */
+	private final CompletableFuture<Summary> completion;
 
-	/** 終了済サブスクライバーのカウントダウンラッチ。 */
-	private final CountDownLatch latch;
+	/** 計測値。 */
+	private final PublisherMetrics metrics;
+
+	/** サブスクライバーのコンテキスト。 */
+	private final SubscriberContext context;
+
+	/** 発行中に追加したモデルを実行するエグゼキューター。 */
+	private final Executor executor;
+
+	/** 発行した値を書き込むジャーナル。書き込まない場合はnull。 */
+	private final Journal<? super T> journal;
+
+	/** 発行を終了したかどうか。 */
+	private final AtomicBoolean closed = new AtomicBoolean();
 
 	/**
 	 * コンストラクター。
 	 * 
-	 * @param publisher パブリッシャー
-	 * @param latch 終了済サブスクライバーのカウントダウンラッチ
+	 * @param engine エンジン
+	 * @param phaser 終了を待つ参加者のフェイザー
+	 * @param completion 全てのサブスクライバーが終了した時に完了するフューチャー
+	 * @param metrics 計測値
+	 * @param context サブスクライバーのコンテキスト
+	 * @param executor 発行中に追加したモデルを実行するエグゼキューター
+	 * @param journal 発行した値を書き込むジャーナル。書き込まない場合はnull
 	 */
-	private SimplePublisher(SubmissionPublisher<T> publisher, CountDownLatch latch) {
-		this.publisher = publisher;
-		this.latch = latch;
+	private SimplePublisher(PublisherEngine<T> engine, Phaser phaser, CompletableFuture<Summary> completion,
+			PublisherMetrics metrics, SubscriberContext context, Executor executor, Journal<? super T> journal) {
+		this.engine = engine;
+		this.phaser = phaser;
+		this.completion = completion;
+		this.metrics = metrics;
+		this.context = context;
+		this.executor = executor;
+		this.journal = journal;
 	}
 
 	/**
 	 * 発行します。
 	 * 
+	 * <p>
+	 * サブスクライバーのバッファーが満杯の時は、ビルダーで設定した方針に従います。
+	 * ジャーナルを設定している場合は、サブスクライバーに渡す前にジャーナルに追記します。
+	 * </p>
+	 * 
 	 * @param item 発行する値
+	 * @throws IllegalStateException イベントのスロットを使用する場合
+	 * @see OverflowPolicy
 	 */
 	public void publish(T item) {
-		publisher.submit(item);
+		Tracing tracing = context.getTracing();
+		long start = tracing.start();
+
+		if (journal != null) {
+			Try.of(item).uncheck(journal::append);
+		}
+
+		engine.publish(item);
+		metrics.recordPublished();
+		tracing.end(TraceEvent.PUBLISH, null, start);
+	}
+
+	/**
+	 * 再利用するイベントのスロットに値を書き込んで、発行します。
+	 * 
+	 * <p>
+	 * 値を書き込む関数は、発行元のスレッドで、空いたスロットに対して呼び出されます。
+	 * サブスクライバーのバッファーが満杯の時は、ビルダーで設定した方針に従います。
+	 * 破棄する場合は、スロットに書き込まずに{@code false}を返します。
+	 * 引数は値の型ではないため、破棄ハンドラーは呼び出さず、破棄した件数だけを記録します。
+	 * </p>
+	 * 
+	 * @param <A> 書き込む値の元になる引数
+	 * @param translator スロットに値を書き込む関数
+	 * @param argument 書き込む値の元になる引数
+	 * @return 発行した場合は{@code true}、スロットに書き込まずに破棄した場合は{@code false}
+	 * @throws UnsupportedOperationException イベントのスロットを使用しない場合
+	 * @see Builder#setEventSlots(Supplier, WaitStrategy)
+	 */
+	public <A> boolean publishEvent(EventTranslator<? super T, ? super A> translator, A argument) {
+		Tracing tracing = context.getTracing();
+		long start = tracing.start();
+		boolean published = engine.publishEvent(translator, argument);
+
+		if (published) {
+			metrics.recordPublished();
+		} else {
+			metrics.recordDropped();
+		}
+
+		tracing.end(TraceEvent.PUBLISH, null, start);
+		return published;
+	}
+
+	/**
+	 * まとめて発行します。
+	 * 
+	 * <p>
+	 * リングバッファーのエンジンでは、バッファーの空きの分だけまとめて格納し、
+	 * サブスクライバーへの通知もまとめて1回で行います。
+	 * </p>
+	 * 
+	 * @param items 発行する値
+	 */
+	public void publishAll(Iterable<? extends T> items) {
+		publishAll(items.iterator());
+	}
+
+	/**
+	 * まとめて発行します。
+	 * 
+	 * @param items 発行する値
+	 * @see #publishAll(Iterable)
+	 */
+	public void publishAll(Stream<? extends T> items) {
+		publishAll(items.iterator());
+	}
+
+	/**
+	 * まとめて発行します。
+	 * 
+	 * @param items 発行する値
+	 * @see #publishAll(Iterable)
+	 */
+	public void publishAll(T[] items) {
+		publishAll(Arrays.asList(items));
+	}
+
+	/**
+	 * まとめて発行します。
+	 * 
+	 * @param items 発行する値のイテレーター
+	 */
+	private void publishAll(Iterator<? extends T> items) {
+		metrics.recordPublished(engine.publishAll(journal == null ? items : journaling(items)));
+	}
+
+	/**
+	 * 別のパブリッシャーを購読し、受け取った値を発行します。
+	 * 
+	 * <p>
+	 * 別のパブリッシャーには、1件ずつリクエストします。
+	 * 次の値は、前の値の発行が終わってからリクエストします。
+	 * 発行はサブスクライバーのバッファーが満杯の時の方針に従って待機するため、
+	 * 別のパブリッシャーは、最も遅いサブスクライバーの速度を超えて値を作りません。
+	 * 別のパブリッシャーが完了しても、このパブリッシャーは閉じません。
+	 * </p>
+	 * 
+	 * @param source 別のパブリッシャー
+	 * @return 別のパブリッシャーが完了した時に完了するフューチャー。
+	 *     別のパブリッシャーがエラーを通知した場合や、発行に失敗した場合は、例外で完了します
+	 * @see ResourcePublisher
+	 */
+	public CompletableFuture<Void> publishFrom(Flow.Publisher<? extends T> source) {
+		CompletableFuture<Void> finished = new CompletableFuture<>();
+
+		source.subscribe(new Flow.Subscriber<T>() {
+
+			/** 別のパブリッシャーの購読。 */
+			private Flow.Subscription subscription;
+
+			/**
+			 * 購読の開始時に、最初の1件をリクエストします。
+			 * 
+			 * @param subscription 別のパブリッシャーの購読
+			 */
+			@Override
+			public void onSubscribe(Flow.Subscription subscription) {
+				this.subscription = subscription;
+				subscription.request(1);
+			}
+
+			/**
+			 * 受け取った値を発行してから、次の1件をリクエストします。
+			 * 
+			 * @param item 受け取った値
+			 */
+			@Override
+			public void onNext(T item) {
+				try {
+					publish(item);
+				} catch (RuntimeException e) {
+					subscription.cancel();
+					finished.completeExceptionally(e);
+					return;
+				}
+
+				subscription.request(1);
+			}
+
+			/**
+			 * フューチャーを例外で完了します。
+			 * 
+			 * @param throwable 別のパブリッシャーが通知したエラー
+			 */
+			@Override
+			public void onError(Throwable throwable) {
+				finished.completeExceptionally(throwable);
+			}
+
+			/**
+			 * フューチャーを完了します。
+			 */
+			@Override
+			public void onComplete() {
+				finished.complete(null);
+			}
+		});
+
+		return finished;
+	}
+
+	/**
+	 * 取り出した値をジャーナルに書き込むイテレーターを作成します。
+	 * 
+	 * @param items 発行する値のイテレーター
+	 * @return ジャーナルに書き込むイテレーター
+	 */
+	private Iterator<T> journaling(Iterator<? extends T> items) {
+		return new Iterator<T>() {
+			@Override
+			public boolean hasNext() {
+				return items.hasNext();
+			}
+
+			@Override
+			public T next() {
+				T item = items.next();
+				Try.of(item).uncheck(journal::append);
+				return item;
+			}
+		};
+	}
+
+	/**
+	 * 発行中に、モデルを追加します。
+	 * 
+	 * <p>
+	 * 追加したモデルは、追加した時点以降に発行された値を受け取ります。
+	 * モデルはビルダーで設定した既定のエグゼキューターで実行され、
+	 * 終了するまでは、全てのサブスクライバーの終了を待つ対象になります。
+	 * </p>
+	 * 
+	 * @param model モデル
+	 * @return 切り離し用のハンドル
+	 * @throws IllegalStateException 全てのサブスクライバーが終了済の場合
+	 */
+	public Attachment attach(SubscriberModel<? super T> model) {
+		return attach(model, FailurePolicy.fail());
+	}
+
+	/**
+	 * 発行中に、値の処理に失敗した時の方針を指定して、モデルを追加します。
+	 * 
+	 * @param model モデル
+	 * @param failurePolicy モデルが値の処理に失敗した時の方針
+	 * @return 切り離し用のハンドル
+	 * @throws IllegalStateException 全てのサブスクライバーが終了済の場合
+	 * @see #attach(SubscriberModel)
+	 */
+	public Attachment attach(SubscriberModel<? super T> model, FailurePolicy<? super T> failurePolicy) {
+		if (phaser.register() < 0) {
+			throw new IllegalStateException("publisher already completed");
+		}
+
+		SubscriberMetrics modelMetrics = new SubscriberMetrics(model.getClass().getSimpleName());
+		metrics.addSubscriber(modelMetrics);
+		SubscriberBase<T> subscriber = new SubscriberBase<>(context, model, modelMetrics, failurePolicy);
+		engine.subscribe(executor, subscriber);
+		return new Attachment(subscriber, metrics::getPublished);
 	}
 
 	/**
@@ -134,15 +1238,63 @@ public class SimplePublisher<T> implements AutoCloseable {
 	 */
 	@Override
 	public void close() {
-		publisher.close();
+		if (closed.compareAndSet(false, true)) {
+			engine.close();
+			phaser.arriveAndDeregister();
+		}
+	}
+
+	/**
+	 * 発行を終了し、全てのサブスクライバーが終了するか、制限時間が経過した時に完了するフューチャーを取得します。
+	 * 
+	 * <p>
+	 * 制限時間が経過した場合、フューチャーは{@link java.util.concurrent.TimeoutException}で完了します。
+	 * このメソッドは、サブスクライバーの終了を待たずに復帰します。
+	 * </p>
+	 * 
+	 * @param timeout 制限時間
+	 * @return 集計結果を受け取るフューチャー
+	 */
+	public CompletableFuture<Summary> closeAndDrain(Duration timeout) {
+		close();
+		return getCompletion().orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * 全てのサブスクライバーが終了した時に完了するフューチャーを取得します。
+	 * 
+	 * <p>
+	 * フューチャーは、{@link #close()}を呼び出した後、全てのサブスクライバーが終了した時点で完了します。
+	 * 呼び出すたびに新しいフューチャーを返すため、
+	 * 取得したフューチャーに{@link CompletableFuture#orTimeout(long, TimeUnit)}などを適用しても、
+	 * 他の呼び出し元には影響しません。
+	 * </p>
+	 * 
+	 * @return 集計結果を受け取るフューチャー
+	 */
+	public CompletableFuture<Summary> getCompletion() {
+		return completion.copy();
+	}
+
+	/**
+	 * 計測値を取得します。
+	 * 
+	 * @return 計測値
+	 */
+	public PublisherMetrics getMetrics() {
+		return metrics;
 	}
 
 	/**
 	 * 全てのサブスクライバーが終了するまで待機します。
 	 * 
+	 * <p>
+	 * {@link #close()}を呼び出すまでは、全てのサブスクライバーが終了していても復帰しません。
+	 * </p>
+	 * 
 	 * @throws InterruptedException 割り込みが発生した場合
 	 */
 	public void await() throws InterruptedException {
-		latch.await();
+		phaser.awaitAdvanceInterruptibly(0);
 	}
 }
@@ -0,0 +1,259 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.Iterator;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * 購読した値をモデルに渡す前に変換する、ステージです。
+ * 
+ * <p>
+ * {@link #map(Function)}などで連結したステージは、1つの処理に融合され、
+ * ステージ間にキューを挟まずに、1件ずつ同じスレッドで処理されます。
+ * ステージはイミュータブルで、連結するたびに新しいステージを返します。
+ * </p>
+ * 
+ * @param <T> ステージに入力する値
+ * @param <R> ステージから出力する値
+ * @see StageProcessor
+ */
+public final class Stage<T, R> {
+
+	/**
+	 * 融合した処理の、1段分の受け口です。
+	 * 
+	 * @param <T> 受け取る値
+	 */
+	interface Sink<T> {
+
+		/**
+		 * 値を受け取ります。
+		 * 
+		 * @param item 値
+		 */
+		public void accept(T item);
+
+		/**
+		 * これ以上値を受け取らないかどうかを判定します。
+		 * 
+		 * @return これ以上値を受け取らない場合はtrue
+		 */
+		public boolean isDone();
+
+		/**
+		 * 値がもう届かないことを通知します。
+		 * 
+		 * <p>
+		 * 状態を持つ段は、保持している結果をここで下流に渡してから、下流に通知します。
+		 * </p>
+		 */
+		public void complete();
+	}
+
+	/**
+	 * 入力をそのまま出力するステージを取得します。
+	 * 
+	 * @param <T> ステージに入力する値
+	 * @return 入力をそのまま出力するステージ
+	 */
+	public static <T> Stage<T, T> of() {
+		return new Stage<T, T>(Stage::narrow);
+	}
+
+	/**
+	 * 受け口の型を狭めます。
+	 * 
+	 * <p>
+	 * {@code T}の上位型を受け取る受け口は、そのまま{@code T}の受け口として使用できます。
+	 * </p>
+	 * 
+	 * @param <T> 受け取る値
+	 * @param sink 受け口
+	 * @return 同じ受け口
+	 */
+	@SuppressWarnings("unchecked")
+	private static <T> Sink<T> narrow(Sink<? super T> sink) {
+		return (Sink<T>) sink;
+	}
+
+	/** 下流の受け口から、このステージの受け口を作成する関数。 */
+	private final Function<Sink<? super R>, Sink<T>> wrapper;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param wrapper 下流の受け口から、このステージの受け口を作成する関数
+	 */
+	private Stage(Function<Sink<? super R>, Sink<T>> wrapper) {
+		this.wrapper = wrapper;
+	}
+
+	/**
+	 * 値を変換するステージを連結します。
+	 * 
+	 * @param <RR> 変換後の値
+	 * @param mapper 変換する関数
+	 * @return 連結したステージ
+	 */
+	public <RR> Stage<T, RR> map(Function<? super R, ? extends RR> mapper) {
+		return then(down -> new Sink<R>() {
+			@Override
+			public void accept(R item) {
+				down.accept(mapper.apply(item));
+			}
+
+			@Override
+			public boolean isDone() {
+				return down.isDone();
+			}
+
+			@Override
+			public void complete() {
+				down.complete();
+			}
+		});
+	}
+
+	/**
+	 * 条件を満たす値だけを出力するステージを連結します。
+	 * 
+	 * @param predicate 条件
+	 * @return 連結したステージ
+	 */
+	public Stage<T, R> filter(Predicate<? super R> predicate) {
+		return then(down -> new Sink<R>() {
+			@Override
+			public void accept(R item) {
+				if (predicate.test(item)) {
+					down.accept(item);
+				}
+			}
+
+			@Override
+			public boolean isDone() {
+				return down.isDone();
+			}
+
+			@Override
+			public void complete() {
+				down.complete();
+			}
+		});
+	}
+
+	/**
+	 * 1つの値を0個以上の値に展開するステージを連結します。
+	 * 
+	 * @param <RR> 展開後の値
+	 * @param mapper 展開する関数
+	 * @return 連結したステージ
+	 */
+	public <RR> Stage<T, RR> flatMap(Function<? super R, ? extends Stream<? extends RR>> mapper) {
+		return then(down -> new Sink<R>() {
+			@Override
+			public void accept(R item) {
+				try (Stream<? extends RR> stream = mapper.apply(item)) {
+					Iterator<? extends RR> iterator = stream.iterator();
+
+					while (iterator.hasNext() && !down.isDone()) {
+						down.accept(iterator.next());
+					}
+				}
+			}
+
+			@Override
+			public boolean isDone() {
+				return down.isDone();
+			}
+
+			@Override
+			public void complete() {
+				down.complete();
+			}
+		});
+	}
+
+	/**
+	 * 条件を満たす間だけ値を出力し、満たさなくなった時点で購読を終了するステージを連結します。
+	 * 
+	 * @param predicate 条件
+	 * @return 連結したステージ
+	 */
+	public Stage<T, R> takeWhile(Predicate<? super R> predicate) {
+		return then(down -> new Sink<R>() {
+
+			/** 条件を満たさなくなったかどうか。 */
+			private boolean done;
+
+			@Override
+			public void accept(R item) {
+				if (done) {
+					return;
+				}
+
+				if (predicate.test(item)) {
+					down.accept(item);
+				} else {
+					done = true;
+				}
+			}
+
+			@Override
+			public boolean isDone() {
+				return done || down.isDone();
+			}
+
+			@Override
+			public void complete() {
+				down.complete();
+			}
+		});
+	}
+
+	/**
+	 * イベント時刻でウィンドウに区切り、ウィンドウごとの集計結果を出力するステージを連結します。
+	 * 
+	 * <p>
+	 * 値そのものは保持せず、ウィンドウごとに値の数・合計・最小・最大を逐次集計します。
+	 * 購読が完了した時点で結果を出力していないウィンドウは、ウォーターマークにかかわらず出力します。
+	 * </p>
+	 * 
+	 * @param spec ウィンドウの区切り方
+	 * @param timestamp 値からイベント時刻（エポックからのミリ秒）を取り出す関数
+	 * @param value 値から集計する数値を取り出す関数
+	 * @return 連結したステージ
+	 * @see WindowSpec
+	 */
+	public Stage<T, WindowResult> window(WindowSpec spec, ToLongFunction<? super R> timestamp,
+			ToDoubleFunction<? super R> value) {
+		return then(down -> new WindowSink<R>(spec, timestamp, value, down));
+	}
+
+	/**
+	 * 下流の受け口に接続した、このステージの受け口を作成します。
+	 * 
+	 * <p>
+	 * 受け口は状態を持つことがあるため、購読ごとに作成してください。
+	 * </p>
+	 * 
+	 * @param down 下流の受け口
+	 * @return このステージの受け口
+	 */
+	Sink<T> wrap(Sink<? super R> down) {
+		return wrapper.apply(down);
+	}
+
+	/**
+	 * 次の段を連結します。
+	 * 
+	 * @param <RR> 次の段から出力する値
+	 * @param next 次の段の受け口から、この段の出力を受け取る受け口を作成する関数
+	 * @return 連結したステージ
+	 */
+	private <RR> Stage<T, RR> then(Function<Sink<? super RR>, Sink<R>> next) {
+		return new Stage<>(down -> wrapper.apply(next.apply(down)));
+	}
+}
@@ -0,0 +1,117 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+
+/**
+ * ステージで変換した値を、複数のサブスクライバーに発行するプロセッサーです。
+ * 
+ * <p>
+ * ステージは、このプロセッサー1つにつき1回だけ実行され、その結果を全てのサブスクライバーで共有します。
+ * 下流のバッファーが満杯の時は、上流からの購読を待機させます。
+ * </p>
+ * 
+ * @param <T> 購読する値
+ * @param <R> 発行する値
+ */
+public class StageProcessor<T, R> extends SubmissionPublisher<R> implements Flow.Processor<T, R> {
+
+	/** 融合したステージの受け口。 */
+	private final Stage.Sink<? super T> head;
+
+	/** 上流のサブスクリプション。 */
+	private Flow.Subscription subscription;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param stage ステージ
+	 * @param executor 下流のサブスクライバーを実行するエグゼキューター
+	 * @param maxBufferCapacity 下流のサブスクライバーごとの最大バッファー容量
+	 */
+	public StageProcessor(Stage<? super T, R> stage, Executor executor, int maxBufferCapacity) {
+		super(executor, maxBufferCapacity);
+		this.head = stage.wrap(new Stage.Sink<R>() {
+			@Override
+			public void accept(R item) {
+				submit(item);
+			}
+
+			@Override
+			public boolean isDone() {
+				return isClosed();
+			}
+
+			@Override
+			public void complete() {
+				close();
+			}
+		});
+	}
+
+	/**
+	 * 購読開始時の処理を行います。
+	 * 
+	 * <p>
+	 * 下流への発行が待機することで上流を待機させるため、上限なしにリクエストします。
+	 * </p>
+	 * 
+	 * @param subscription 上流のサブスクリプション
+	 */
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		this.subscription = subscription;
+		subscription.request(Long.MAX_VALUE);
+	}
+
+	/**
+	 * 購読時の処理を行います。
+	 * 
+	 * <p>
+	 * 購読した値をステージに渡します。
+	 * ステージがこれ以上値を受け取らない場合は、上流の購読を取り消し、ステージに完了を通知して、発行を終了します。
+	 * </p>
+	 * 
+	 * @param item 購読した値
+	 */
+	@Override
+	public void onNext(T item) {
+		if (head.isDone()) {
+			return;
+		}
+
+		head.accept(item);
+
+		if (head.isDone()) {
+			subscription.cancel();
+			head.complete();
+		}
+	}
+
+	/**
+	 * 例外時の処理を行います。
+	 * 
+	 * <p>
+	 * 下流のサブスクライバーに例外を伝えて、発行を終了します。
+	 * </p>
+	 * 
+	 * @param error 発生した例外
+	 */
+	@Override
+	public void onError(Throwable error) {
+		closeExceptionally(error);
+	}
+
+	/**
+	 * 購読完了時の処理を行います。
+	 * 
+	 * <p>
+	 * ステージに完了を通知し、ステージが保持している結果を発行してから、発行を終了します。
+	 * </p>
+	 */
+	@Override
+	public void onComplete() {
+		head.complete();
+	}
+}
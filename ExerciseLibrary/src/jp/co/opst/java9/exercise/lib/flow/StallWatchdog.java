@@ -0,0 +1,107 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * サブスクライバーの購読時の処理が止まっていないかを、定期的に確認する監視役です。
+ * 
+ * <p>
+ * 確認は専用のデーモンスレッドで行うため、サブスクライバーのエグゼキューターのスレッドが
+ * 全て止まっていても、監視を続けられます。
+ * 1回の停止につき、報告は1回だけ行います。
+ * </p>
+ */
+final class StallWatchdog {
+
+	/** 確認の間隔を求めるために、しきい値を割る数。 */
+	private static final int CHECKS_PER_THRESHOLD = 4;
+
+	/** 停止とみなす処理時間のしきい値（ナノ秒）。 */
+	private final long thresholdNanos;
+
+	/** 停止したサブスクライバーの購読を取り消すかどうか。 */
+	private final boolean cancelOnStall;
+
+	/** 監視中のサブスクライバー。 */
+	private final Set<SubscriberBase<?>> watched = ConcurrentHashMap.newKeySet();
+
+	/** 報告済みの停止の、処理の開始時刻。確認を行うスレッドだけがアクセスします。 */
+	private final Map<SubscriberBase<?>, Long> reported = new HashMap<>();
+
+	/** 確認を行うスケジューラー。 */
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "simple-publisher-watchdog");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * <p>
+	 * 確認を開始します。
+	 * </p>
+	 * 
+	 * @param threshold 停止とみなす処理時間のしきい値
+	 * @param cancelOnStall 停止したサブスクライバーの購読を取り消すかどうか
+	 */
+	StallWatchdog(Duration threshold, boolean cancelOnStall) {
+		this.thresholdNanos = threshold.toNanos();
+		this.cancelOnStall = cancelOnStall;
+		long period = Math.max(TimeUnit.MILLISECONDS.toNanos(1), thresholdNanos / CHECKS_PER_THRESHOLD);
+		scheduler.scheduleWithFixedDelay(this::check, period, period, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * サブスクライバーの監視を開始します。
+	 * 
+	 * @param subscriber サブスクライバー
+	 */
+	void watch(SubscriberBase<?> subscriber) {
+		watched.add(subscriber);
+	}
+
+	/**
+	 * サブスクライバーの監視を終了します。
+	 * 
+	 * @param subscriber サブスクライバー
+	 */
+	void unwatch(SubscriberBase<?> subscriber) {
+		watched.remove(subscriber);
+	}
+
+	/**
+	 * 監視を終了します。
+	 */
+	void close() {
+		scheduler.shutdownNow();
+	}
+
+	/**
+	 * 全てのサブスクライバーについて、購読時の処理がしきい値を超えていないかを確認します。
+	 */
+	private void check() {
+		long now = System.nanoTime();
+		reported.keySet().retainAll(watched);
+
+		for (SubscriberBase<?> subscriber : watched) {
+			Thread thread = subscriber.getBusyThread();
+			long since = subscriber.getBusySince();
+
+			if (thread == null || now - since < thresholdNanos || Long.valueOf(since).equals(reported.get(subscriber))) {
+				continue;
+			}
+
+			reported.put(subscriber, since);
+			subscriber.stalled(new SubscriberStalledException(
+				subscriber.getMetrics().getModelName(), Duration.ofNanos(now - since), thread), cancelOnStall);
+		}
+	}
+}
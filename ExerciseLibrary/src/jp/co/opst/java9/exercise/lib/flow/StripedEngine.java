@@ -0,0 +1,319 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 複数の発行元スレッドからの発行を、ストライプに分散してから別のエンジンに渡すエンジンです。
+ * 
+ * <p>
+ * 発行元スレッドは、スレッドごとに決まるストライプに値を格納します。
+ * その後、ロックを取得できたスレッドが、全てのストライプの値をまとめて別のエンジンに渡します。
+ * 別のエンジンには常に1つのスレッドだけが発行するため、
+ * 発行元が1スレッドであることを前提とするエンジンも使用できます。
+ * </p>
+ * 
+ * <p>
+ * 同じスレッドから発行した値の順序は保たれます。
+ * 順序を保証する場合は、発行時に採番した順序で、全ての値を別のエンジンに渡します。
+ * 前の番号の値を待っている値が際限なく増えないように、
+ * 別のエンジンに渡していない番号より、ストライプの容量の合計以上先の番号を採番した発行元は、
+ * 前の番号の値が渡されるまで待機します。
+ * </p>
+ * 
+ * @param <T> 発行する値
+ */
+class StripedEngine<T> implements PublisherEngine<T> {
+
+	/** 順序を保証する場合に、前の番号の値が渡されるのを待つ時の確認間隔（ナノ秒）。 */
+	private static final long ORDERED_POLL_NANOS = 50_000L;
+
+	/**
+	 * 採番した値です。
+	 * 
+	 * @param <T> 値
+	 */
+	private static final class Ticket<T> {
+
+		/** 番号。順序を保証しない場合は0。 */
+		private final long sequence;
+
+		/** 値。 */
+		private final T item;
+
+		/**
+		 * コンストラクター。
+		 * 
+		 * @param sequence 番号
+		 * @param item 値
+		 */
+		private Ticket(long sequence, T item) {
+			this.sequence = sequence;
+			this.item = item;
+		}
+	}
+
+	/** 値を渡すエンジン。 */
+	private final PublisherEngine<T> delegate;
+
+	/** ストライプ。 */
+	private final List<BlockingQueue<Ticket<T>>> stripes = new ArrayList<>();
+
+	/** スレッドからストライプの添字を求めるマスク。 */
+	private final int mask;
+
+	/** 順序を保証するかどうか。 */
+	private final boolean ordered;
+
+	/** 次に採番する番号。 */
+	private final AtomicLong tickets = new AtomicLong();
+
+	/** 別のエンジンに渡すスレッドを1つに限るロック。 */
+	private final ReentrantLock drainLock = new ReentrantLock();
+
+	/** ストライプから取り出した値。{@link #drainLock} を取得した状態でアクセスします。 */
+	private final List<Ticket<T>> batch = new ArrayList<>();
+
+	/** 順序を保証する場合に、前の番号の値を待っている値。{@link #drainLock} を取得した状態でアクセスします。 */
+	private final PriorityQueue<Ticket<T>> pending = new PriorityQueue<>(Comparator.comparingLong(entry -> entry.sequence));
+
+	/** 次に別のエンジンに渡す番号。{@link #drainLock} を取得した状態で更新します。 */
+	private volatile long nextSequence;
+
+	/** 順序を保証する場合に、別のエンジンに渡していない番号より先に採番できる番号の数。 */
+	private final long maxAhead;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param delegate 値を渡すエンジン
+	 * @param stripeCount ストライプの数。2の累乗に切り上げられます
+	 * @param stripeCapacity ストライプごとの容量
+	 * @param ordered 順序を保証するかどうか
+	 * @throws IllegalArgumentException ストライプの数または容量が1未満の場合
+	 */
+	StripedEngine(PublisherEngine<T> delegate, int stripeCount, int stripeCapacity, boolean ordered) {
+		if (stripeCount < 1 || stripeCount > 1 << 16) {
+			throw new IllegalArgumentException("stripeCount=" + stripeCount);
+		}
+
+		if (stripeCapacity < 1) {
+			throw new IllegalArgumentException("stripeCapacity=" + stripeCapacity);
+		}
+
+		int size = stripeCount == 1 ? 1 : Integer.highestOneBit(stripeCount - 1) << 1;
+
+		for (int i = 0; i < size; i++) {
+			stripes.add(new ArrayBlockingQueue<>(stripeCapacity));
+		}
+
+		this.delegate = delegate;
+		this.mask = size - 1;
+		this.ordered = ordered;
+		this.maxAhead = (long) size * stripeCapacity;
+	}
+
+	/**
+	 * サブスクライバーを登録します。
+	 * 
+	 * @param executor サブスクライバーを実行するエグゼキューター
+	 * @param subscriber サブスクライバー
+	 */
+	@Override
+	public void subscribe(Executor executor, Flow.Subscriber<? super T> subscriber) {
+		delegate.subscribe(executor, subscriber);
+	}
+
+	/**
+	 * 発行します。
+	 * 
+	 * <p>
+	 * 値をストライプに格納した後、他のスレッドが別のエンジンに渡している最中でなければ、自分で渡します。
+	 * ストライプが満杯の時は、ロックを取得できるまで待って、ストライプを空けます。
+	 * 順序を保証する場合に、採番した番号が先に進みすぎている時は、前の番号の値が渡されるまで待機します。
+	 * </p>
+	 * 
+	 * @param item 発行する値
+	 */
+	@Override
+	public void publish(T item) {
+		Ticket<T> entry = new Ticket<>(ordered ? tickets.getAndIncrement() : 0, item);
+
+		// 次に渡す番号の発行元は待機せずに格納できるため、この待機は必ず終わる
+		while (ordered && entry.sequence - nextSequence >= maxAhead) {
+			if (drainLock.tryLock()) {
+				try {
+					drain();
+				} finally {
+					drainLock.unlock();
+				}
+			}
+
+			LockSupport.parkNanos(ORDERED_POLL_NANOS);
+		}
+
+		BlockingQueue<Ticket<T>> stripe = stripes.get(indexOf(Thread.currentThread()));
+
+		while (!stripe.offer(entry)) {
+			drainLock.lock();
+
+			try {
+				drain();
+			} finally {
+				drainLock.unlock();
+			}
+		}
+
+		// ロックを取得できなかった場合は、ロックを持つスレッドが解放後に再確認するため、値が取り残されることはない
+		while (drainLock.tryLock()) {
+			try {
+				drain();
+			} finally {
+				drainLock.unlock();
+			}
+
+			if (allStripesEmpty()) {
+				break;
+			}
+		}
+	}
+
+	/**
+	 * 発行を終了します。
+	 * 
+	 * <p>
+	 * ストライプに残っている値を全て別のエンジンに渡してから、別のエンジンの発行を終了します。
+	 * 順序を保証する場合に、前の番号の値がまだ格納されていない値も、番号順に渡します。
+	 * </p>
+	 */
+	@Override
+	public void close() {
+		drainLock.lock();
+
+		try {
+			drain();
+			delegate.publishAll(new Iterator<T>() {
+				@Override
+				public boolean hasNext() {
+					return !pending.isEmpty();
+				}
+
+				@Override
+				public T next() {
+					return pending.poll().item;
+				}
+			});
+		} finally {
+			drainLock.unlock();
+		}
+
+		delegate.close();
+	}
+
+	/**
+	 * 未購読の値の数の、サブスクライバー間での最大の推定値を取得します。
+	 * 
+	 * <p>
+	 * ストライプに格納されている値の数を含みます。
+	 * </p>
+	 * 
+	 * @return 未購読の値の数の最大の推定値
+	 */
+	@Override
+	public int estimateMaximumLag() {
+		long staged = stripes.stream().mapToLong(BlockingQueue::size).sum();
+		return (int) Math.min(Integer.MAX_VALUE, delegate.estimateMaximumLag() + staged);
+	}
+
+	/**
+	 * 未消化のリクエスト要求数の、サブスクライバー間での最小の推定値を取得します。
+	 * 
+	 * @return 未消化のリクエスト要求数の最小の推定値
+	 */
+	@Override
+	public long estimateMinimumDemand() {
+		return delegate.estimateMinimumDemand();
+	}
+
+	/**
+	 * 購読中のサブスクライバーの数を取得します。
+	 * 
+	 * @return 購読中のサブスクライバーの数
+	 */
+	@Override
+	public int getNumberOfSubscribers() {
+		return delegate.getNumberOfSubscribers();
+	}
+
+	/**
+	 * 全てのストライプの値を取り出して、別のエンジンにまとめて渡します。
+	 * 
+	 * <p>
+	 * {@link #drainLock} を取得した状態で呼び出してください。
+	 * 順序を保証する場合は、次に渡す番号から連続している値だけを渡し、残りは前の番号の値を待ちます。
+	 * </p>
+	 */
+	private void drain() {
+		for (BlockingQueue<Ticket<T>> stripe : stripes) {
+			stripe.drainTo(batch);
+		}
+
+		if (ordered) {
+			pending.addAll(batch);
+			batch.clear();
+
+			while (!pending.isEmpty() && pending.peek().sequence == nextSequence) {
+				batch.add(pending.poll());
+				nextSequence++;
+			}
+		}
+
+		if (!batch.isEmpty()) {
+			try {
+				delegate.publishAll(batch.stream().map(entry -> entry.item).iterator());
+			} finally {
+				batch.clear();
+			}
+		}
+	}
+
+	/**
+	 * 全てのストライプが空かどうかを判定します。
+	 * 
+	 * <p>
+	 * 発行ごとに呼び出すため、ストリームを使わずに確認します。
+	 * </p>
+	 * 
+	 * @return 全てのストライプが空の場合はtrue
+	 */
+	private boolean allStripesEmpty() {
+		for (int i = 0; i < stripes.size(); i++) {
+			if (!stripes.get(i).isEmpty()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * スレッドが使用するストライプの添字を求めます。
+	 * 
+	 * @param thread スレッド
+	 * @return ストライプの添字
+	 */
+	private int indexOf(Thread thread) {
+		long hash = thread.getId() * 0x9E3779B97F4A7C15L;
+		return (int) (hash ^ (hash >>> 32)) & mask;
+	}
+}
@@ -0,0 +1,202 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+
+/**
+ * {@link SubmissionPublisher}を使用するエンジンです。
+ * 
+ * <p>
+ * エグゼキューターごとに1つのパブリッシャーを持ち、同じエグゼキューターのサブスクライバーはパブリッシャーを共有します。
+ * </p>
+ * 
+ * @param <T> 発行する値
+ */
+class SubmissionEngine<T> implements PublisherEngine<T> {
+
+	/** {@link OverflowPolicy#DROP_OLDEST} で空きを待つ時の確認間隔（ナノ秒）。 */
+	private static final long DROP_OLDEST_POLL_NANOS = 50_000L;
+
+	/** エグゼキューターごとのパブリッシャー。 */
+	private final Map<Executor, SubmissionPublisher<T>> publishers = new ConcurrentHashMap<>();
+
+	/** 発行を終了したかどうか。 */
+	private boolean closed;
+
+	/** サブスクライバーごとの最大バッファー容量。 */
+	private final int maxBufferCapacity;
+
+	/** バッファーが満杯の時の方針。 */
+	private final OverflowPolicy overflowPolicy;
+
+	/** バッファーが満杯の時の待機時間（ナノ秒）。 */
+	private final long overflowTimeoutNanos;
+
+	/** 破棄ハンドラー。 */
+	private final BiConsumer<SubscriberModel<?>, Object> dropHandler;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param maxBufferCapacity サブスクライバーごとの最大バッファー容量
+	 * @param overflowPolicy バッファーが満杯の時の方針
+	 * @param overflowTimeoutNanos バッファーが満杯の時の待機時間（ナノ秒）
+	 * @param dropHandler 破棄ハンドラー
+	 */
+	SubmissionEngine(int maxBufferCapacity, OverflowPolicy overflowPolicy, long overflowTimeoutNanos,
+			BiConsumer<SubscriberModel<?>, Object> dropHandler) {
+		this.maxBufferCapacity = maxBufferCapacity;
+		this.overflowPolicy = overflowPolicy;
+		this.overflowTimeoutNanos = overflowTimeoutNanos;
+		this.dropHandler = dropHandler;
+	}
+
+	/**
+	 * サブスクライバーを登録します。
+	 * 
+	 * <p>
+	 * 発行中にも登録できます。
+	 * 発行を終了した後に登録した場合、サブスクライバーは直ちに購読を完了します。
+	 * </p>
+	 * 
+	 * @param executor サブスクライバーを実行するエグゼキューター
+	 * @param subscriber サブスクライバー
+	 */
+	@Override
+	public synchronized void subscribe(Executor executor, Flow.Subscriber<? super T> subscriber) {
+		SubmissionPublisher<T> publisher =
+			publishers.computeIfAbsent(executor, key -> new SubmissionPublisher<>(key, maxBufferCapacity));
+
+		if (closed) {
+			publisher.close();
+		}
+
+		publisher.subscribe(subscriber);
+	}
+
+	/**
+	 * 発行します。
+	 * 
+	 * <p>
+	 * サブスクライバーのバッファーが満杯の時は、バッファーが満杯の時の方針に従います。
+	 * </p>
+	 * 
+	 * @param item 発行する値
+	 */
+	@Override
+	public void publish(T item) {
+		for (SubmissionPublisher<T> publisher : publishers.values()) {
+			switch (overflowPolicy) {
+			case BLOCK:
+				publisher.submit(item);
+				break;
+			case BLOCK_WITH_TIMEOUT:
+				publisher.offer(item, overflowTimeoutNanos, TimeUnit.NANOSECONDS, this::dropNewest);
+				break;
+			case DROP_NEWEST:
+				publisher.offer(item, this::dropNewest);
+				break;
+			case DROP_OLDEST:
+				publisher.offer(item, this::dropOldest);
+				break;
+			}
+		}
+	}
+
+	/**
+	 * 発行を終了します。
+	 */
+	@Override
+	public synchronized void close() {
+		closed = true;
+		publishers.values().forEach(SubmissionPublisher::close);
+	}
+
+	/**
+	 * 未購読の値の数の、サブスクライバー間での最大の推定値を取得します。
+	 * 
+	 * @return 未購読の値の数の最大の推定値
+	 */
+	@Override
+	public int estimateMaximumLag() {
+		return publishers.values().stream().mapToInt(SubmissionPublisher::estimateMaximumLag).max().orElse(0);
+	}
+
+	/**
+	 * 未消化のリクエスト要求数の、サブスクライバー間での最小の推定値を取得します。
+	 * 
+	 * @return 未消化のリクエスト要求数の最小の推定値
+	 */
+	@Override
+	public long estimateMinimumDemand() {
+		return publishers.values().stream().mapToLong(SubmissionPublisher::estimateMinimumDemand).min().orElse(0);
+	}
+
+	/**
+	 * 購読中のサブスクライバーの数を取得します。
+	 * 
+	 * @return 購読中のサブスクライバーの数
+	 */
+	@Override
+	public int getNumberOfSubscribers() {
+		return publishers.values().stream().mapToInt(SubmissionPublisher::getNumberOfSubscribers).sum();
+	}
+
+	/**
+	 * 発行した値を破棄します。
+	 * 
+	 * @param subscriber バッファーが満杯のサブスクライバー
+	 * @param item 発行した値
+	 * @return 常にfalse（再試行しない）
+	 */
+	private boolean dropNewest(Flow.Subscriber<? super T> subscriber, T item) {
+		dropHandler.accept(SubscriberBase.modelOf(subscriber), item);
+		return false;
+	}
+
+	/**
+	 * バッファー内の最も古い値の読み捨てを予約し、空きができるまで待機時間だけ待機します。
+	 * 
+	 * <p>
+	 * 空きができなかった場合は、読み捨ての予約を取り消して、発行した値を破棄します。
+	 * サブスクライバーが{@link SubscriberBase}でない場合は、読み捨てられないため、発行した値を破棄します。
+	 * </p>
+	 * 
+	 * @param subscriber バッファーが満杯のサブスクライバー
+	 * @param item 発行した値
+	 * @return 空きができた場合はtrue（再試行する）
+	 */
+	private boolean dropOldest(Flow.Subscriber<? super T> subscriber, T item) {
+		if (!(subscriber instanceof SubscriberBase)) {
+			return dropNewest(subscriber, item);
+		}
+
+		SubscriberBase<?> base = (SubscriberBase<?>) subscriber;
+		long deadline = System.nanoTime() + overflowTimeoutNanos;
+
+		// 予約してから受け取った数を読むので、この後に受け取る値は必ず予約を消費する
+		base.reserveSkip();
+		long received = base.getReceived();
+
+		while (base.getReceived() == received) {
+			if (System.nanoTime() - deadline >= 0) {
+				if (base.takeSkip()) {
+					return dropNewest(subscriber, item);
+				}
+
+				// 予約を取り消せない場合は、既に読み捨てられて空きができている
+				return true;
+			}
+
+			LockSupport.parkNanos(DROP_OLDEST_POLL_NANOS);
+		}
+
+		return true;
+	}
+}
@@ -1,6 +1,9 @@
 package jp.co.opst.java9.exercise.lib.flow;
 
 import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 import jp.co.opst.java9.exercise.lib.exception.Try;
 
@@ -11,15 +14,63 @@ import jp.co.opst.java9.exercise.lib.exception.Try;
  */
 public class SubscriberBase<T> implements Flow.Subscriber<T> {
 
+	/** 状態：購読開始前。 */
+	private static final int NEW = 0;
+
+	/** 状態：値を待っている。 */
+	private static final int IDLE = 1;
+
+	/** 状態：値を処理している。 */
+	private static final int BUSY = 2;
+
+	/** 状態：値の処理中に取り消しが要求された。 */
+	private static final int CANCELLING = 3;
+
+	/** 状態：終了した。 */
+	private static final int DONE = 4;
+
 	/** コンテキスト。 */
 	private final SubscriberContext context;
 
 	/** モデル。 */
 	private final SubscriberModel<? super T> model;
 
+	/** 計測値。 */
+	private final SubscriberMetrics metrics;
+
+	/** モデルが値の処理に失敗した時の方針。 */
+	private final FailurePolicy<? super T> failurePolicy;
+
+	/** チェックポイントに記録するモデル。モデルがチェックポイントに記録しない場合はnull。 */
+	private final CheckpointedModel<?> checkpointed;
+
 	/** サブスクリプション。 */
 	private Flow.Subscription subscription;
 
+	/** リクエスト要求ウィンドウ。1件ごとにリクエストする場合はnull。 */
+	private DemandWindow demandWindow;
+
+	/** 受け取った値の数。 */
+	private final AtomicLong received = new AtomicLong();
+
+	/** モデルに渡さずに読み捨てる値の数。 */
+	private final AtomicInteger skips = new AtomicInteger();
+
+	/** 状態。 */
+	private final AtomicInteger state = new AtomicInteger(NEW);
+
+	/** 切り離しを要求された時に、受け取り終えるまで待つ値の数。切り離しを要求されていない場合は負数。 */
+	private volatile long drainTarget = -1;
+
+	/** 停止の監視役。監視しない場合はnull。 */
+	private StallWatchdog watchdog;
+
+	/** 購読時の処理を行っているスレッド。処理中でない場合はnull。 */
+	private volatile Thread busyThread;
+
+	/** 購読時の処理を開始した時刻（ナノ秒）。 */
+	private volatile long busySince;
+
 	/**
 	 * コンストラクター。
 	 * 
@@ -27,8 +78,35 @@ public class SubscriberBase<T> implements Flow.Subscriber<T> {
 	 * @param model モデル
 	 */
 	public SubscriberBase(SubscriberContext context, SubscriberModel<? super T> model) {
+		this(context, model, new SubscriberMetrics(model.getClass().getSimpleName()));
+	}
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param context コンテキスト
+	 * @param model モデル
+	 * @param metrics 計測値
+	 */
+	public SubscriberBase(SubscriberContext context, SubscriberModel<? super T> model, SubscriberMetrics metrics) {
+		this(context, model, metrics, FailurePolicy.fail());
+	}
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param context コンテキスト
+	 * @param model モデル
+	 * @param metrics 計測値
+	 * @param failurePolicy モデルが値の処理に失敗した時の方針
+	 */
+	public SubscriberBase(SubscriberContext context, SubscriberModel<? super T> model, SubscriberMetrics metrics,
+			FailurePolicy<? super T> failurePolicy) {
 		this.context = context;
 		this.model = model;
+		this.metrics = metrics;
+		this.failurePolicy = failurePolicy;
+		this.checkpointed = model instanceof CheckpointedModel ? (CheckpointedModel<?>) model : null;
 	}
 
 	/**
@@ -38,9 +116,54 @@ public class SubscriberBase<T> implements Flow.Subscriber<T> {
 	 */
 	@Override
 	public final void onSubscribe(Flow.Subscription subscription) {
-		Try.uncheck(model::begin);
+		Tracing tracing = context.getTracing();
+		long start = tracing.start();
+
+		try {
+			subscribe(subscription, tracing);
+		} finally {
+			tracing.end(TraceEvent.SUBSCRIBE, metrics.getModelName(), start);
+		}
+	}
+
+	/**
+	 * 購読開始時の処理を行います。
+	 * 
+	 * @param subscription サブスクリプション
+	 * @param tracing 処理時間の記録
+	 */
+	private void subscribe(Flow.Subscription subscription, Tracing tracing) {
+		metrics.recordStarted();
+		long start = tracing.start();
+
+		try {
+			Try.uncheck(model::begin);
+		} finally {
+			tracing.end(TraceEvent.BEGIN, metrics.getModelName(), start);
+		}
+
 		this.subscription = subscription;
-		subscription.request(context.getDemand());
+		watchdog = context.getWatchdog();
+
+		if (watchdog != null) {
+			watchdog.watch(this);
+		}
+
+		if (!state.compareAndSet(NEW, IDLE)) {
+			state.set(DONE);
+			subscription.cancel();
+			finish(null);
+			return;
+		}
+
+		Supplier<DemandWindow> factory = context.getDemandWindowFactory();
+
+		if (factory == null) {
+			subscription.request(context.getDemand());
+		} else {
+			demandWindow = factory.get();
+			subscription.request(demandWindow.open());
+		}
 	}
 
 	/**
@@ -50,8 +173,268 @@ public class SubscriberBase<T> implements Flow.Subscriber<T> {
 	 */
 	@Override
 	public final void onNext(T item) {
-		Try.of(item).uncheck(model::accept);
-		subscription.request(context.getDemand());
+		if (!state.compareAndSet(IDLE, BUSY)) {
+			return;
+		}
+
+		Tracing tracing = context.getTracing();
+		long start = tracing.start();
+		boolean drained = false;
+
+		if (watchdog != null) {
+			busySince = System.nanoTime();
+			busyThread = Thread.currentThread();
+		}
+
+		try {
+			long count = received.incrementAndGet();
+
+			if (takeSkip()) {
+				context.getDropHandler().accept(model, item);
+			} else {
+				try {
+					process(item);
+				} catch (RuntimeException e) {
+					metrics.recordError();
+					failurePolicy.handle(item, e, () -> process(item), metrics);
+				}
+			}
+
+			if (checkpointed != null) {
+				checkpointed.advance();
+			}
+
+			long target = drainTarget;
+			drained = target >= 0 && count >= target;
+
+			if (!drained) {
+				replenish();
+			}
+		} finally {
+			busyThread = null;
+			tracing.end(TraceEvent.NEXT, metrics.getModelName(), start);
+
+			// 停止の監視役が購読を取り消していた場合は、終了時の処理も済んでいる
+			if (state.compareAndSet(BUSY, drained ? DONE : IDLE)) {
+				if (drained) {
+					subscription.cancel();
+					finish(null);
+				}
+			} else if (state.compareAndSet(CANCELLING, DONE)) {
+				finish(null);
+			}
+		}
+	}
+
+	/**
+	 * モデルに値を処理させ、処理時間を記録します。
+	 * 
+	 * @param item 処理する値
+	 */
+	private void process(T item) {
+		long start = System.nanoTime();
+
+		// 値ごとにオブジェクトを作成しないよう、Tryを介さずに呼び出す
+		try {
+			model.accept(item);
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+
+		long elapsed = System.nanoTime() - start;
+		metrics.recordAccepted(elapsed);
+		context.getTracing().record(TraceEvent.ACCEPT, metrics.getModelName(), start, elapsed);
+	}
+
+	/**
+	 * モデルを取得します。
+	 * 
+	 * @return モデル
+	 */
+	SubscriberModel<? super T> getModel() {
+		return model;
+	}
+
+	/**
+	 * サブスクライバーのモデルを取得します。
+	 * 
+	 * @param subscriber サブスクライバー
+	 * @return サブスクライバーが{@link SubscriberBase}の場合はそのモデル、
+	 *     {@link AckingSubscriber}の場合はモデルのアダプター、それ以外の場合はnull
+	 */
+	static SubscriberModel<?> modelOf(Flow.Subscriber<?> subscriber) {
+		if (subscriber instanceof SubscriberBase) {
+			return ((SubscriberBase<?>) subscriber).getModel();
+		}
+
+		return subscriber instanceof AckingSubscriber ? ((AckingSubscriber<?>) subscriber).getDropModel() : null;
+	}
+
+	/**
+	 * 計測値を取得します。
+	 * 
+	 * @return 計測値
+	 */
+	public SubscriberMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * 購読時の処理を行っているスレッドを取得します。
+	 * 
+	 * @return 購読時の処理を行っているスレッド。処理中でない場合、または停止を監視していない場合はnull
+	 */
+	Thread getBusyThread() {
+		return busyThread;
+	}
+
+	/**
+	 * 購読時の処理を開始した時刻を取得します。
+	 * 
+	 * @return 購読時の処理を開始した時刻（ナノ秒）
+	 */
+	long getBusySince() {
+		return busySince;
+	}
+
+	/**
+	 * 購読時の処理が止まっていることを報告します。
+	 * 
+	 * <p>
+	 * 購読を取り消す場合は、処理の終了を待たずに、購読を取り消して終了シグナルを送ります。
+	 * 止まっている処理と競合しないよう、モデルの終了時の処理は行いません。
+	 * 報告までに処理が終わっていた場合は、何もしません。
+	 * </p>
+	 * 
+	 * @param error 処理が止まっていることを表す例外
+	 * @param abandon 購読を取り消すかどうか
+	 */
+	void stalled(SubscriberStalledException error, boolean abandon) {
+		if (!abandon) {
+			Try.of(error).ignore(context.getErrorHandler()::accept);
+			return;
+		}
+
+		while (true) {
+			int current = state.get();
+
+			if (current != BUSY && current != CANCELLING) {
+				return;
+			}
+
+			if (state.compareAndSet(current, DONE)) {
+				break;
+			}
+		}
+
+		subscription.cancel();
+		Try.of(error).ignore(context.getErrorHandler()::accept);
+		metrics.recordError();
+		metrics.recordFinished();
+		watchdog.unwatch(this);
+		context.getDoneSignal().run();
+	}
+
+	/**
+	 * 購読を取り消し、終了時の処理を行います。
+	 * 
+	 * <p>
+	 * 値の処理中に呼び出された場合は、その値の処理が終わった後に、サブスクライバーのスレッドで終了時の処理を行います。
+	 * そうでない場合は、呼び出したスレッドで終了時の処理を行います。
+	 * </p>
+	 */
+	void cancel() {
+		while (true) {
+			int current = state.get();
+
+			if (current == NEW || current == BUSY) {
+				if (state.compareAndSet(current, CANCELLING)) {
+					if (current == BUSY) {
+						subscription.cancel();
+					}
+
+					return;
+				}
+			} else if (current == IDLE) {
+				if (state.compareAndSet(IDLE, DONE)) {
+					subscription.cancel();
+					finish(null);
+					return;
+				}
+			} else {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * 指定した数の値を受け取り終えた時点で、購読を取り消して終了するように要求します。
+	 * 
+	 * <p>
+	 * 既に指定した数の値を受け取っている場合は、直ちに{@link #cancel()}します。
+	 * </p>
+	 * 
+	 * @param target 購読開始から数えて、受け取り終えるまで待つ値の数
+	 */
+	void drain(long target) {
+		drainTarget = target;
+
+		if (received.get() >= target) {
+			cancel();
+		}
+	}
+
+	/**
+	 * 受け取った値の数を取得します。
+	 * 
+	 * @return 受け取った値の数
+	 */
+	long getReceived() {
+		return received.get();
+	}
+
+	/**
+	 * 次に受け取る値を、モデルに渡さずに読み捨てるように予約します。
+	 */
+	void reserveSkip() {
+		skips.incrementAndGet();
+	}
+
+	/**
+	 * 読み捨ての予約を1つ消費します。
+	 * 
+	 * @return 予約が残っていた場合はtrue
+	 */
+	boolean takeSkip() {
+		int current;
+
+		do {
+			current = skips.get();
+
+			if (current == 0) {
+				return false;
+			}
+		} while (!skips.compareAndSet(current, current - 1));
+
+		return true;
+	}
+
+	/**
+	 * 1件処理した後のリクエストを行います。
+	 */
+	private void replenish() {
+		if (demandWindow == null) {
+			subscription.request(context.getDemand());
+			return;
+		}
+
+		long refill = demandWindow.consume();
+
+		if (refill > 0) {
+			subscription.request(refill);
+		}
 	}
 
 	/**
@@ -61,9 +444,9 @@ public class SubscriberBase<T> implements Flow.Subscriber<T> {
 	 */
 	@Override
 	public final void onError(Throwable error) {
-		Try.of(error).ignore(context.getErrorHandler()::accept);
-		Try.ignore(model::end);
-		context.getDoneSignal().run();
+		if (terminate()) {
+			finish(error, TraceEvent.ERROR, context.getTracing().start());
+		}
 	}
 
 	/**
@@ -71,7 +454,67 @@ public class SubscriberBase<T> implements Flow.Subscriber<T> {
 	 */
 	@Override
 	public final void onComplete() {
+		if (terminate()) {
+			finish(null, TraceEvent.COMPLETE, context.getTracing().start());
+		}
+	}
+
+	/**
+	 * まだ終了していなければ、終了した状態にします。
+	 * 
+	 * <p>
+	 * 購読開始前の取り消しが残っている場合（購読開始時の処理が失敗した場合）も、ここで終了します。
+	 * </p>
+	 * 
+	 * @return 終了した状態にした場合はtrue
+	 */
+	private boolean terminate() {
+		while (true) {
+			int current = state.get();
+
+			if (current == DONE) {
+				return false;
+			} else if (state.compareAndSet(current, DONE)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * 終了時の処理を行います。
+	 * 
+	 * @param error 発生した例外。正常に終了した場合はnull
+	 */
+	private void finish(Throwable error) {
+		finish(error, null, 0);
+	}
+
+	/**
+	 * 終了時の処理を行い、終了シグナルを送る前に、終了の通知の処理時間を記録します。
+	 * 
+	 * @param error 発生した例外。正常に終了した場合はnull
+	 * @param event 終了の通知の種類。記録しない場合はnull
+	 * @param eventStart 終了の通知の開始時刻
+	 */
+	private void finish(Throwable error, TraceEvent event, long eventStart) {
+		if (error != null) {
+			Try.of(error).ignore(context.getErrorHandler()::accept);
+		}
+
+		Tracing tracing = context.getTracing();
+		long start = tracing.start();
 		Try.ignore(model::end);
+		tracing.end(TraceEvent.END, metrics.getModelName(), start);
+		metrics.recordFinished();
+
+		if (watchdog != null) {
+			watchdog.unwatch(this);
+		}
+
+		if (event != null) {
+			tracing.end(event, metrics.getModelName(), eventStart);
+		}
+
 		context.getDoneSignal().run();
 	}
 }
@@ -1,6 +1,8 @@
 package jp.co.opst.java9.exercise.lib.flow;
 
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /**
  * サブスクライバーのコンテキストです。
@@ -10,12 +12,24 @@ public class SubscriberContext {
 	/** リクエスト要求数。 */
 	private int demand;
 
+	/** リクエスト要求ウィンドウのファクトリー。 */
+	private Supplier<DemandWindow> demandWindowFactory;
+
 	/** エラーハンドラー。 */
 	private Consumer<Throwable> errorHandler;
 
+	/** 破棄ハンドラー。 */
+	private BiConsumer<SubscriberModel<?>, Object> dropHandler;
+
 	/** 終了シグナル。 */
 	private Runnable doneSignal;
 
+	/** 処理時間の記録。 */
+	private Tracing tracing = Tracing.DISABLED;
+
+	/** 停止の監視役。監視しない場合はnull。 */
+	private StallWatchdog watchdog;
+
 	/**
 	 * リクエスト要求数を取得します。
 	 * 
@@ -34,6 +48,28 @@ public class SubscriberContext {
 		this.demand = demand;
 	}
 
+	/**
+	 * リクエスト要求ウィンドウのファクトリーを取得します。
+	 * 
+	 * @return リクエスト要求ウィンドウのファクトリー。1件ごとにリクエストする場合はnull
+	 */
+	public Supplier<DemandWindow> getDemandWindowFactory() {
+		return demandWindowFactory;
+	}
+
+	/**
+	 * リクエスト要求ウィンドウのファクトリーを設定します。
+	 * 
+	 * <p>
+	 * nullを設定すると、1件購読するごとにリクエスト要求数だけリクエストします。
+	 * </p>
+	 * 
+	 * @param demandWindowFactory リクエスト要求ウィンドウのファクトリー
+	 */
+	public void setDemandWindowFactory(Supplier<DemandWindow> demandWindowFactory) {
+		this.demandWindowFactory = demandWindowFactory;
+	}
+
 	/**
 	 * エラーハンドラーを取得します。
 	 * 
@@ -52,6 +88,30 @@ public class SubscriberContext {
 		this.errorHandler = errorHandler;
 	}
 
+	/**
+	 * 破棄ハンドラーを取得します。
+	 * 
+	 * @return 破棄ハンドラー
+	 */
+	public BiConsumer<SubscriberModel<?>, Object> getDropHandler() {
+		return dropHandler;
+	}
+
+	/**
+	 * 破棄ハンドラーを設定します。
+	 * 
+	 * <p>
+	 * 破棄ハンドラーは、バッファーが満杯のために値が破棄された時に、
+	 * その値を受け取るはずだったモデルと、破棄された値を受け取ります。
+	 * 値を受け取るはずだったのがステージまたは非同期のモデルの場合、モデルはnullになります。
+	 * </p>
+	 * 
+	 * @param dropHandler 破棄ハンドラー
+	 */
+	public void setDropHandler(BiConsumer<SubscriberModel<?>, Object> dropHandler) {
+		this.dropHandler = dropHandler;
+	}
+
 	/**
 	 * 終了シグナルを取得します。
 	 * 
@@ -69,4 +129,40 @@ public class SubscriberContext {
 	public void setDoneSignal(Runnable doneSignal) {
 		this.doneSignal = doneSignal;
 	}
+
+	/**
+	 * 処理時間の記録を取得します。
+	 * 
+	 * @return 処理時間の記録
+	 */
+	Tracing getTracing() {
+		return tracing;
+	}
+
+	/**
+	 * 処理時間の記録を設定します。
+	 * 
+	 * @param tracing 処理時間の記録
+	 */
+	void setTracing(Tracing tracing) {
+		this.tracing = tracing;
+	}
+
+	/**
+	 * 停止の監視役を取得します。
+	 * 
+	 * @return 停止の監視役。監視しない場合はnull
+	 */
+	StallWatchdog getWatchdog() {
+		return watchdog;
+	}
+
+	/**
+	 * 停止の監視役を設定します。
+	 * 
+	 * @param watchdog 停止の監視役
+	 */
+	void setWatchdog(StallWatchdog watchdog) {
+		this.watchdog = watchdog;
+	}
 }
@@ -0,0 +1,267 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * サブスクライバーの計測値です。
+ * 
+ * <p>
+ * 記録はサブスクライバーのスレッドから、参照は任意のスレッドから行えます。
+ * </p>
+ */
+public class SubscriberMetrics implements SubscriberMetricsMXBean {
+
+	/** ヒストグラムの区間数。 */
+	private static final int BUCKETS = Long.SIZE + 1;
+
+	/** モデルの名前。 */
+	private final String modelName;
+
+	/** モデルが正常に処理した値の数。 */
+	private final LongAdder accepted = new LongAdder();
+
+	/** モデルが例外を送出した回数。 */
+	private final LongAdder errors = new LongAdder();
+
+	/** 再試行した回数。 */
+	private final LongAdder retried = new LongAdder();
+
+	/** 失敗したために読み捨てた値の数。 */
+	private final LongAdder skipped = new LongAdder();
+
+	/** 失敗したためにデッドレターに書き出した値の数。 */
+	private final LongAdder deadLettered = new LongAdder();
+
+	/** 新しい値で上書きされたために、モデルに渡さなかった値の数。 */
+	private final LongAdder conflated = new LongAdder();
+
+	/** モデルの処理時間の合計（ナノ秒）。 */
+	private final LongAdder totalLatency = new LongAdder();
+
+	/** モデルの処理時間の最大（ナノ秒）。 */
+	private final LongAccumulator maxLatency = new LongAccumulator(Math::max, 0);
+
+	/** モデルの処理時間のヒストグラム。 */
+	private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS);
+
+	/** 購読を開始した時刻（ナノ秒）。 */
+	private volatile long startedAt;
+
+	/** 購読を終了した時刻（ナノ秒）。 */
+	private volatile long finishedAt;
+
+	/** 購読を開始したかどうか。 */
+	private volatile boolean started;
+
+	/** 購読を終了したかどうか。 */
+	private volatile boolean finished;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param modelName モデルの名前
+	 */
+	public SubscriberMetrics(String modelName) {
+		this.modelName = modelName;
+	}
+
+	/**
+	 * モデルが正常に処理したことを記録します。
+	 * 
+	 * @param latencyNanos 処理時間（ナノ秒）
+	 */
+	public void recordAccepted(long latencyNanos) {
+		accepted.increment();
+		totalLatency.add(latencyNanos);
+		maxLatency.accumulate(latencyNanos);
+		histogram.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(Math.max(0, latencyNanos)));
+	}
+
+	/**
+	 * モデルが例外を送出したことを記録します。
+	 */
+	public void recordError() {
+		errors.increment();
+	}
+
+	/**
+	 * 失敗した値の処理を再試行したことを記録します。
+	 */
+	public void recordRetried() {
+		retried.increment();
+	}
+
+	/**
+	 * 失敗した値を読み捨てたことを記録します。
+	 */
+	public void recordSkipped() {
+		skipped.increment();
+	}
+
+	/**
+	 * 失敗した値をデッドレターに書き出したことを記録します。
+	 */
+	public void recordDeadLettered() {
+		deadLettered.increment();
+	}
+
+	/**
+	 * 新しい値で上書きされたために、モデルに渡さなかったことを記録します。
+	 */
+	public void recordConflated() {
+		conflated.increment();
+	}
+
+	/**
+	 * 購読を開始したことを記録します。
+	 */
+	public void recordStarted() {
+		startedAt = System.nanoTime();
+		started = true;
+	}
+
+	/**
+	 * 購読を終了したことを記録します。
+	 */
+	public void recordFinished() {
+		finishedAt = System.nanoTime();
+		finished = true;
+	}
+
+	/**
+	 * モデルの名前を取得します。
+	 * 
+	 * @return モデルの名前
+	 */
+	@Override
+	public String getModelName() {
+		return modelName;
+	}
+
+	/**
+	 * モデルが正常に処理した値の数を取得します。
+	 * 
+	 * @return モデルが正常に処理した値の数
+	 */
+	@Override
+	public long getAccepted() {
+		return accepted.sum();
+	}
+
+	/**
+	 * モデルが例外を送出した回数を取得します。
+	 * 
+	 * @return モデルが例外を送出した回数
+	 */
+	@Override
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	/**
+	 * 失敗した値の処理を再試行した回数を取得します。
+	 * 
+	 * @return 再試行した回数
+	 */
+	@Override
+	public long getRetried() {
+		return retried.sum();
+	}
+
+	/**
+	 * 失敗したために読み捨てた値の数を取得します。
+	 * 
+	 * @return 読み捨てた値の数
+	 */
+	@Override
+	public long getSkipped() {
+		return skipped.sum();
+	}
+
+	/**
+	 * 失敗したためにデッドレターに書き出した値の数を取得します。
+	 * 
+	 * @return デッドレターに書き出した値の数
+	 */
+	@Override
+	public long getDeadLettered() {
+		return deadLettered.sum();
+	}
+
+	/**
+	 * 新しい値で上書きされたために、モデルに渡さなかった値の数を取得します。
+	 * 
+	 * @return 上書きされた値の数
+	 */
+	@Override
+	public long getConflated() {
+		return conflated.sum();
+	}
+
+	/**
+	 * モデルの処理時間の平均を取得します。
+	 * 
+	 * @return モデルの処理時間の平均（ナノ秒）
+	 */
+	@Override
+	public long getMeanLatencyNanos() {
+		long count = accepted.sum();
+		return count == 0 ? 0 : totalLatency.sum() / count;
+	}
+
+	/**
+	 * モデルの処理時間の最大を取得します。
+	 * 
+	 * @return モデルの処理時間の最大（ナノ秒）
+	 */
+	@Override
+	public long getMaxLatencyNanos() {
+		return maxLatency.get();
+	}
+
+	/**
+	 * モデルの処理時間のヒストグラムを取得します。
+	 * 
+	 * @return モデルの処理時間のヒストグラム
+	 */
+	@Override
+	public long[] getLatencyHistogram() {
+		long[] result = new long[BUCKETS];
+
+		for (int i = 0; i < BUCKETS; i++) {
+			result[i] = histogram.get(i);
+		}
+
+		return result;
+	}
+
+	/**
+	 * 購読を開始してからの経過時間を取得します。
+	 * 
+	 * <p>
+	 * 購読を終了している場合は、開始から終了までの時間になります。
+	 * </p>
+	 * 
+	 * @return 購読を開始してからの経過時間（ナノ秒）。購読を開始していない場合は0
+	 */
+	@Override
+	public long getDurationNanos() {
+		if (!started) {
+			return 0;
+		}
+
+		return (finished ? finishedAt : System.nanoTime()) - startedAt;
+	}
+
+	/**
+	 * 購読を終了したかどうかを判定します。
+	 * 
+	 * @return 購読を終了した場合はtrue
+	 */
+	@Override
+	public boolean isFinished() {
+		return finished;
+	}
+}
@@ -0,0 +1,96 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+/**
+ * サブスクライバーの計測値を公開するMXBeanです。
+ */
+public interface SubscriberMetricsMXBean {
+
+	/**
+	 * モデルの名前を取得します。
+	 * 
+	 * @return モデルの名前
+	 */
+	public String getModelName();
+
+	/**
+	 * モデルが正常に処理した値の数を取得します。
+	 * 
+	 * @return モデルが正常に処理した値の数
+	 */
+	public long getAccepted();
+
+	/**
+	 * モデルが例外を送出した回数を取得します。
+	 * 
+	 * @return モデルが例外を送出した回数
+	 */
+	public long getErrors();
+
+	/**
+	 * 失敗した値の処理を再試行した回数を取得します。
+	 * 
+	 * @return 再試行した回数
+	 */
+	public long getRetried();
+
+	/**
+	 * 失敗したために読み捨てた値の数を取得します。
+	 * 
+	 * @return 読み捨てた値の数
+	 */
+	public long getSkipped();
+
+	/**
+	 * 失敗したためにデッドレターに書き出した値の数を取得します。
+	 * 
+	 * @return デッドレターに書き出した値の数
+	 */
+	public long getDeadLettered();
+
+	/**
+	 * 新しい値で上書きされたために、モデルに渡さなかった値の数を取得します。
+	 * 
+	 * @return 上書きされた値の数
+	 */
+	public long getConflated();
+
+	/**
+	 * モデルの処理時間の平均を取得します。
+	 * 
+	 * @return モデルの処理時間の平均（ナノ秒）。まだ処理していない場合は0
+	 */
+	public long getMeanLatencyNanos();
+
+	/**
+	 * モデルの処理時間の最大を取得します。
+	 * 
+	 * @return モデルの処理時間の最大（ナノ秒）
+	 */
+	public long getMaxLatencyNanos();
+
+	/**
+	 * モデルの処理時間のヒストグラムを取得します。
+	 * 
+	 * <p>
+	 * 添字iの要素は、処理時間が2<sup>i-1</sup>ナノ秒以上2<sup>i</sup>ナノ秒未満だった回数です。
+	 * ただし、添字0の要素は処理時間が1ナノ秒未満だった回数です。
+	 * </p>
+	 * 
+	 * @return モデルの処理時間のヒストグラム
+	 */
+	public long[] getLatencyHistogram();
+
+	/**
+	 * 購読を開始してからの経過時間を取得します。
+	 * 
+	 * @return 購読を開始してからの経過時間（ナノ秒）
+	 */
+	public long getDurationNanos();
+
+	/**
+	 * 購読を終了したかどうかを判定します。
+	 * 
+	 * @return 購読を終了した場合はtrue
+	 */
+	public boolean isFinished();
+}
@@ -0,0 +1,74 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.time.Duration;
+
+/**
+ * モデルの購読時の処理が、しきい値を超えて終わらないことを表す例外です。
+ * 
+ * <p>
+ * スタックトレースは、この例外を作成したスレッドではなく、処理が止まっているスレッドのものです。
+ * </p>
+ * 
+ * @see SimplePublisher.Builder#setStallWatchdog(Duration, boolean)
+ */
+public class SubscriberStalledException extends RuntimeException {
+
+	/** シリアルバージョンUID。 */
+	private static final long serialVersionUID = 1L;
+
+	/** モデルの名前。 */
+	private final String modelName;
+
+	/** 処理が止まっている時間。 */
+	private final Duration stalledFor;
+
+	/** 処理が止まっているスレッドの名前。 */
+	private final String threadName;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * <p>
+	 * スタックトレースを、処理が止まっているスレッドのものに置き換えます。
+	 * </p>
+	 * 
+	 * @param modelName モデルの名前
+	 * @param stalledFor 処理が止まっている時間
+	 * @param thread 処理が止まっているスレッド
+	 */
+	SubscriberStalledException(String modelName, Duration stalledFor, Thread thread) {
+		super(String.format("%s has been stalled for %d ms in thread \"%s\" (%s)",
+			modelName, stalledFor.toMillis(), thread.getName(), thread.getState()));
+		this.modelName = modelName;
+		this.stalledFor = stalledFor;
+		this.threadName = thread.getName();
+		setStackTrace(thread.getStackTrace());
+	}
+
+	/**
+	 * モデルの名前を取得します。
+	 * 
+	 * @return モデルの名前
+	 */
+	public String getModelName() {
+		return modelName;
+	}
+
+	/**
+	 * 処理が止まっている時間を取得します。
+	 * 
+	 * @return 処理が止まっている時間
+	 */
+	public Duration getStalledFor() {
+		return stalledFor;
+	}
+
+	/**
+	 * 処理が止まっているスレッドの名前を取得します。
+	 * 
+	 * @return スレッドの名前
+	 */
+	public String getThreadName() {
+		return threadName;
+	}
+}
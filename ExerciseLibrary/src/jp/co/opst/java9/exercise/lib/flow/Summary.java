@@ -0,0 +1,182 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 全てのサブスクライバーが終了した時点の、シンプルパブリッシャーの集計結果です。
+ */
+public final class Summary {
+
+	/**
+	 * モデルごとの集計結果です。
+	 */
+	public static final class ModelSummary {
+
+		/** モデルの名前。 */
+		private final String modelName;
+
+		/** モデルが正常に処理した値の数。 */
+		private final long accepted;
+
+		/** モデルが例外を送出した回数。 */
+		private final long errors;
+
+		/** 失敗したために読み捨てた値の数。 */
+		private final long skipped;
+
+		/** 失敗したためにデッドレターに書き出した値の数。 */
+		private final long deadLettered;
+
+		/** 購読を開始してから終了するまでの時間。 */
+		private final Duration duration;
+
+		/**
+		 * コンストラクター。
+		 * 
+		 * @param metrics サブスクライバーの計測値
+		 */
+		private ModelSummary(SubscriberMetrics metrics) {
+			this.modelName = metrics.getModelName();
+			this.accepted = metrics.getAccepted();
+			this.errors = metrics.getErrors();
+			this.skipped = metrics.getSkipped();
+			this.deadLettered = metrics.getDeadLettered();
+			this.duration = Duration.ofNanos(metrics.getDurationNanos());
+		}
+
+		/**
+		 * モデルの名前を取得します。
+		 * 
+		 * @return モデルの名前
+		 */
+		public String getModelName() {
+			return modelName;
+		}
+
+		/**
+		 * モデルが正常に処理した値の数を取得します。
+		 * 
+		 * @return モデルが正常に処理した値の数
+		 */
+		public long getAccepted() {
+			return accepted;
+		}
+
+		/**
+		 * モデルが例外を送出した回数を取得します。
+		 * 
+		 * @return モデルが例外を送出した回数
+		 */
+		public long getErrors() {
+			return errors;
+		}
+
+		/**
+		 * 失敗したために読み捨てた値の数を取得します。
+		 * 
+		 * @return 読み捨てた値の数
+		 */
+		public long getSkipped() {
+			return skipped;
+		}
+
+		/**
+		 * 失敗したためにデッドレターに書き出した値の数を取得します。
+		 * 
+		 * @return デッドレターに書き出した値の数
+		 */
+		public long getDeadLettered() {
+			return deadLettered;
+		}
+
+		/**
+		 * 購読を開始してから終了するまでの時間を取得します。
+		 * 
+		 * @return 購読を開始してから終了するまでの時間
+		 */
+		public Duration getDuration() {
+			return duration;
+		}
+
+		/**
+		 * 文字列に変換します。
+		 * 
+		 * @return 文字列
+		 */
+		@Override
+		public String toString() {
+			return String.format("%s[accepted=%d, errors=%d, skipped=%d, deadLettered=%d, duration=%s]",
+				modelName, accepted, errors, skipped, deadLettered, duration);
+		}
+	}
+
+	/** 発行した値の数。 */
+	private final long published;
+
+	/** 破棄した値の数。 */
+	private final long dropped;
+
+	/** モデルごとの集計結果リスト。 */
+	private final List<ModelSummary> models;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param metrics シンプルパブリッシャーの計測値
+	 */
+	Summary(PublisherMetrics metrics) {
+		this.published = metrics.getPublished();
+		this.dropped = metrics.getDropped();
+		this.models = Collections.unmodifiableList(
+			metrics.getSubscribers().stream().map(ModelSummary::new).collect(Collectors.toList()));
+	}
+
+	/**
+	 * 発行した値の数を取得します。
+	 * 
+	 * @return 発行した値の数
+	 */
+	public long getPublished() {
+		return published;
+	}
+
+	/**
+	 * 破棄した値の数を取得します。
+	 * 
+	 * @return 破棄した値の数
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * モデルごとの集計結果リストを取得します。
+	 * 
+	 * @return モデルごとの集計結果リスト。サブスクライバーを登録した順序
+	 */
+	public List<ModelSummary> getModels() {
+		return models;
+	}
+
+	/**
+	 * いずれかのモデルが例外を送出したかどうかを判定します。
+	 * 
+	 * @return いずれかのモデルが例外を送出した場合はtrue
+	 */
+	public boolean hasErrors() {
+		return models.stream().anyMatch(model -> model.errors > 0);
+	}
+
+	/**
+	 * 文字列に変換します。
+	 * 
+	 * @return 文字列
+	 */
+	@Override
+	public String toString() {
+		return String.format("Summary[published=%d, dropped=%d, models=%s]", published, dropped, models);
+	}
+}
@@ -0,0 +1,33 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+/**
+ * トレーサーに記録する、処理の種類です。
+ * 
+ * @see FlowTracer
+ */
+public enum TraceEvent {
+
+	/** {@link SimplePublisher#publish(Object)}。バッファーが満杯の時の待機を含みます。 */
+	PUBLISH,
+
+	/** {@link SubscriberBase#onSubscribe(java.util.concurrent.Flow.Subscription)}。モデルの開始時の処理を含みます。 */
+	SUBSCRIBE,
+
+	/** {@link SubscriberBase#onNext(Object)}。モデルの購読時の処理と、失敗した時の方針による再試行を含みます。 */
+	NEXT,
+
+	/** {@link SubscriberBase#onError(Throwable)}。エラーハンドラーとモデルの終了時の処理を含みます。 */
+	ERROR,
+
+	/** {@link SubscriberBase#onComplete()}。モデルの終了時の処理を含みます。 */
+	COMPLETE,
+
+	/** {@link SubscriberModel#begin()}。 */
+	BEGIN,
+
+	/** {@link SubscriberModel#accept(Object)}。1回の呼び出しごとに記録します。 */
+	ACCEPT,
+
+	/** {@link SubscriberModel#end()}。 */
+	END
+}
@@ -0,0 +1,67 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+/**
+ * しきい値以上の処理時間だけを、トレーサーに記録します。
+ * 
+ * <p>
+ * トレーサーを設定していない場合は、時刻の取得も行いません。
+ * </p>
+ */
+final class Tracing {
+
+	/** 何も記録しないインスタンス。 */
+	static final Tracing DISABLED = new Tracing(null, 0);
+
+	/** トレーサー。記録しない場合はnull。 */
+	private final FlowTracer tracer;
+
+	/** 記録する処理時間のしきい値（ナノ秒）。 */
+	private final long thresholdNanos;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param tracer トレーサー。記録しない場合はnull
+	 * @param thresholdNanos 記録する処理時間のしきい値（ナノ秒）
+	 */
+	Tracing(FlowTracer tracer, long thresholdNanos) {
+		this.tracer = tracer;
+		this.thresholdNanos = thresholdNanos;
+	}
+
+	/**
+	 * 処理の開始時刻を取得します。
+	 * 
+	 * @return 開始時刻。記録しない場合は0
+	 */
+	long start() {
+		return tracer == null ? 0 : System.nanoTime();
+	}
+
+	/**
+	 * 処理の終了を記録します。
+	 * 
+	 * @param event 処理の種類
+	 * @param modelName モデルの名前
+	 * @param start {@link #start()}で取得した開始時刻
+	 */
+	void end(TraceEvent event, String modelName, long start) {
+		if (tracer != null) {
+			record(event, modelName, start, System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * 計測済みの処理時間を記録します。
+	 * 
+	 * @param event 処理の種類
+	 * @param modelName モデルの名前
+	 * @param start 開始時刻
+	 * @param durationNanos 処理時間（ナノ秒）
+	 */
+	void record(TraceEvent event, String modelName, long start, long durationNanos) {
+		if (tracer != null && durationNanos >= thresholdNanos) {
+			tracer.record(event, modelName, start, durationNanos);
+		}
+	}
+}
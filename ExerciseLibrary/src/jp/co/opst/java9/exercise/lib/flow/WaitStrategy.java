@@ -0,0 +1,55 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * リングバッファーのエンジンで、発行元やサブスクライバーが待機する時の方法です。
+ */
+public enum WaitStrategy {
+
+	/**
+	 * スレッドを手放さずに、待機し続けます。
+	 * 
+	 * <p>
+	 * 遅延は最も小さくなりますが、待機中もCPUを1コア占有します。
+	 * </p>
+	 */
+	BUSY_SPIN {
+		@Override
+		void idle() {
+			Thread.onSpinWait();
+		}
+	},
+
+	/**
+	 * 他のスレッドに実行を譲りながら、待機します。
+	 */
+	YIELD {
+		@Override
+		void idle() {
+			Thread.yield();
+		}
+	},
+
+	/**
+	 * 短時間スレッドを停止しながら、待機します。
+	 * 
+	 * <p>
+	 * CPUの消費は最も小さくなりますが、遅延は停止時間の分だけ大きくなります。
+	 * </p>
+	 */
+	PARK {
+		@Override
+		void idle() {
+			LockSupport.parkNanos(PARK_NANOS);
+		}
+	};
+
+	/** {@link #PARK} で停止する時間（ナノ秒）。 */
+	private static final long PARK_NANOS = 50_000L;
+
+	/**
+	 * 1回分待機します。
+	 */
+	abstract void idle();
+}
@@ -0,0 +1,438 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * 処理中の値の重さ（バイト数）が上限を超えないように、発行を待機させてから別のエンジンに渡すエンジンです。
+ * 
+ * <p>
+ * 値の重さは、発行してからサブスクライバーがモデルに渡し終えるまで、サブスクライバーごとに数えます。
+ * 全てのサブスクライバーは同じ順序で値を受け取るため、処理中の値の重さの合計は、
+ * 最も多くの値を抱えているサブスクライバーの重さと一致します。
+ * 処理中の値の重さと発行する値の重さの和が上限を超える時は、バッファーが満杯の時の方針に従います。
+ * ただし、処理中の値がない時は、上限より重い値でも発行します。
+ * </p>
+ * 
+ * <p>
+ * 重さは、発行時とサブスクライバーが受け取り終えた時の2回求めるため、
+ * 重さを求める関数は、同じ値に対して常に同じ結果を返す必要があります。
+ * サブスクライバーの購読時の処理が戻った時点で重さを解放するため、
+ * 購読時の処理の中でモデルの処理を終えるサブスクライバーにだけ使用してください。
+ * </p>
+ * 
+ * @param <T> 発行する値
+ */
+class WeightedEngine<T> implements PublisherEngine<T> {
+
+	/**
+	 * 処理中の値の重さを数えるために、サブスクライバーを包むレーンです。
+	 */
+	private final class Lane implements Flow.Subscriber<T>, Flow.Subscription {
+
+		/** 包んだサブスクライバー。 */
+		private final Flow.Subscriber<? super T> subscriber;
+
+		/** 処理中の値の重さ。 */
+		private final AtomicLong held = new AtomicLong();
+
+		/** 別のエンジンから受け取ったサブスクリプション。 */
+		private Flow.Subscription subscription;
+
+		/**
+		 * コンストラクター。
+		 * 
+		 * @param subscriber 包むサブスクライバー
+		 */
+		private Lane(Flow.Subscriber<? super T> subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		/**
+		 * 購読開始時の処理を行います。
+		 * 
+		 * @param subscription サブスクリプション
+		 */
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+			subscriber.onSubscribe(this);
+		}
+
+		/**
+		 * 包んだサブスクライバーに値を渡した後、値の重さを解放します。
+		 * 
+		 * @param item 購読した値
+		 */
+		@Override
+		public void onNext(T item) {
+			try {
+				subscriber.onNext(item);
+			} finally {
+				release(this, weigher.applyAsLong(item));
+			}
+		}
+
+		/**
+		 * エラー発生時の処理を行います。
+		 * 
+		 * @param throwable エラー
+		 */
+		@Override
+		public void onError(Throwable throwable) {
+			retire(this);
+			subscriber.onError(throwable);
+		}
+
+		/**
+		 * 購読完了時の処理を行います。
+		 */
+		@Override
+		public void onComplete() {
+			retire(this);
+			subscriber.onComplete();
+		}
+
+		/**
+		 * 値をリクエストします。
+		 * 
+		 * @param n リクエスト要求数
+		 */
+		@Override
+		public void request(long n) {
+			subscription.request(n);
+		}
+
+		/**
+		 * 購読を取り消します。
+		 * 
+		 * <p>
+		 * 取り消した後に受け取るはずだった値の重さも、まとめて解放します。
+		 * </p>
+		 */
+		@Override
+		public void cancel() {
+			subscription.cancel();
+			retire(this);
+		}
+	}
+
+	/** 値を渡すエンジン。 */
+	private final PublisherEngine<T> delegate;
+
+	/** 値の重さを求める関数。 */
+	private final ToLongFunction<? super T> weigher;
+
+	/** 処理中の値の重さの上限。 */
+	private final long maxWeight;
+
+	/** 上限を超える時の方針。 */
+	private final OverflowPolicy overflowPolicy;
+
+	/** 上限を超える時の待機時間（ナノ秒）。 */
+	private final long overflowTimeoutNanos;
+
+	/** 破棄ハンドラー。 */
+	private final BiConsumer<SubscriberModel<?>, Object> dropHandler;
+
+	/** 購読中のレーン。 */
+	private final List<Lane> lanes = new CopyOnWriteArrayList<>();
+
+	/**
+	 * レーンの登録と、重さの加算から別のエンジンへの発行までを、互いに排他にするロック。
+	 * 発行は読み込みロック、登録は書き込みロックを取得します。
+	 */
+	private final ReadWriteLock subscribeLock = new ReentrantReadWriteLock();
+
+	/** 重さを加算するスレッドを1つに限るロック。 */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/** 重さが解放されたことを待機中の発行元に知らせる条件。 */
+	private final Condition released = lock.newCondition();
+
+	/** 待機中の発行元の数。 */
+	private final AtomicInteger waiters = new AtomicInteger();
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param delegate 値を渡すエンジン
+	 * @param weigher 値の重さを求める関数
+	 * @param maxWeight 処理中の値の重さの上限
+	 * @param overflowPolicy 上限を超える時の方針。{@link OverflowPolicy#DROP_OLDEST} は使用できません
+	 * @param overflowTimeoutNanos 上限を超える時の待機時間（ナノ秒）
+	 * @param dropHandler 破棄ハンドラー
+	 * @throws IllegalArgumentException 重さの上限が1未満の場合、または {@link OverflowPolicy#DROP_OLDEST} を指定した場合
+	 */
+	WeightedEngine(PublisherEngine<T> delegate, ToLongFunction<? super T> weigher, long maxWeight,
+			OverflowPolicy overflowPolicy, long overflowTimeoutNanos, BiConsumer<SubscriberModel<?>, Object> dropHandler) {
+		if (maxWeight < 1) {
+			throw new IllegalArgumentException("maxWeight=" + maxWeight);
+		}
+
+		if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+			throw new IllegalArgumentException("overflowPolicy=" + overflowPolicy);
+		}
+
+		this.delegate = delegate;
+		this.weigher = weigher;
+		this.maxWeight = maxWeight;
+		this.overflowPolicy = overflowPolicy;
+		this.overflowTimeoutNanos = overflowTimeoutNanos;
+		this.dropHandler = dropHandler;
+	}
+
+	/**
+	 * サブスクライバーを、重さを数えるレーンで包んでから登録します。
+	 * 
+	 * <p>
+	 * 発行中の値がレーンに渡されるかどうかと、その値の重さをレーンに加算するかどうかが食い違わないように、
+	 * 発行中の値がなくなるのを待ってから、レーンの追加と別のエンジンへの登録を行います。
+	 * </p>
+	 * 
+	 * @param executor サブスクライバーを実行するエグゼキューター
+	 * @param subscriber サブスクライバー
+	 */
+	@Override
+	public void subscribe(Executor executor, Flow.Subscriber<? super T> subscriber) {
+		Lane lane = new Lane(subscriber);
+		subscribeLock.writeLock().lock();
+
+		try {
+			lock.lock();
+
+			try {
+				lanes.add(lane);
+			} finally {
+				lock.unlock();
+			}
+
+			delegate.subscribe(executor, lane);
+		} finally {
+			subscribeLock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * 発行します。
+	 * 
+	 * <p>
+	 * 処理中の値の重さが上限を超える時は、上限を超える時の方針に従って待機または破棄します。
+	 * 破棄する場合は、購読中の全てのサブスクライバーについて、値を破棄ハンドラーに渡します。
+	 * </p>
+	 * 
+	 * @param item 発行する値
+	 * @throws IllegalArgumentException 値の重さが負の場合
+	 */
+	@Override
+	public void publish(T item) {
+		long weight = weigher.applyAsLong(item);
+
+		if (weight < 0) {
+			throw new IllegalArgumentException("weight=" + weight);
+		}
+
+		subscribeLock.readLock().lock();
+
+		try {
+			if (!acquire(weight)) {
+				lanes.forEach(lane -> dropHandler.accept(SubscriberBase.modelOf(lane.subscriber), item));
+				return;
+			}
+
+			delegate.publish(item);
+		} finally {
+			subscribeLock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * 発行を終了します。
+	 */
+	@Override
+	public void close() {
+		delegate.close();
+	}
+
+	/**
+	 * 未購読の値の数の、サブスクライバー間での最大の推定値を取得します。
+	 * 
+	 * @return 未購読の値の数の最大の推定値
+	 */
+	@Override
+	public int estimateMaximumLag() {
+		return delegate.estimateMaximumLag();
+	}
+
+	/**
+	 * 未消化のリクエスト要求数の、サブスクライバー間での最小の推定値を取得します。
+	 * 
+	 * @return 未消化のリクエスト要求数の最小の推定値
+	 */
+	@Override
+	public long estimateMinimumDemand() {
+		return delegate.estimateMinimumDemand();
+	}
+
+	/**
+	 * 購読中のサブスクライバーの数を取得します。
+	 * 
+	 * @return 購読中のサブスクライバーの数
+	 */
+	@Override
+	public int getNumberOfSubscribers() {
+		return delegate.getNumberOfSubscribers();
+	}
+
+	/**
+	 * 処理中の値の重さを取得します。
+	 * 
+	 * @return 処理中の値の重さ
+	 */
+	private long getWeightInFlight() {
+		long max = 0;
+
+		for (Lane lane : lanes) {
+			max = Math.max(max, lane.held.get());
+		}
+
+		return max;
+	}
+
+	/**
+	 * 上限を超えない範囲で、全てのレーンに値の重さを加算します。
+	 * 
+	 * @param weight 値の重さ
+	 * @return 加算した場合はtrue、上限を超える時の方針に従って破棄する場合はfalse
+	 */
+	private boolean acquire(long weight) {
+		lock.lock();
+
+		try {
+			if (!awaitRoom(weight)) {
+				return false;
+			}
+
+			for (Lane lane : lanes) {
+				lane.held.addAndGet(weight);
+			}
+
+			return true;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 値の重さを加算できるようになるまで、上限を超える時の方針に従って待機します。
+	 * 
+	 * <p>
+	 * {@link #lock} を取得した状態で呼び出してください。
+	 * </p>
+	 * 
+	 * @param weight 値の重さ
+	 * @return 加算できる場合はtrue、破棄する場合はfalse
+	 */
+	private boolean awaitRoom(long weight) {
+		long remaining = overflowTimeoutNanos;
+
+		while (!hasRoom(weight)) {
+			if (overflowPolicy == OverflowPolicy.DROP_NEWEST
+					|| overflowPolicy == OverflowPolicy.BLOCK_WITH_TIMEOUT && remaining <= 0) {
+				return false;
+			}
+
+			// 待機を宣言してから再確認するため、宣言前の解放も見逃さない
+			waiters.incrementAndGet();
+
+			try {
+				if (hasRoom(weight)) {
+					break;
+				}
+
+				if (overflowPolicy == OverflowPolicy.BLOCK) {
+					released.awaitUninterruptibly();
+				} else {
+					remaining = released.awaitNanos(remaining);
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			} finally {
+				waiters.decrementAndGet();
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * 値の重さを加算しても、上限を超えないかどうかを判定します。
+	 * 
+	 * <p>
+	 * 処理中の値がない時は、上限より重い値でも加算できるものとします。
+	 * </p>
+	 * 
+	 * @param weight 値の重さ
+	 * @return 上限を超えない場合はtrue
+	 */
+	private boolean hasRoom(long weight) {
+		long inFlight = getWeightInFlight();
+		return inFlight == 0 || inFlight + weight <= maxWeight;
+	}
+
+	/**
+	 * レーンの値の重さを解放し、待機中の発行元がいれば知らせます。
+	 * 
+	 * @param lane レーン
+	 * @param weight 値の重さ
+	 */
+	private void release(Lane lane, long weight) {
+		lane.held.addAndGet(-weight);
+
+		if (waiters.get() > 0) {
+			signal();
+		}
+	}
+
+	/**
+	 * 購読を終えたレーンを取り除き、レーンの値の重さを全て解放します。
+	 * 
+	 * @param lane レーン
+	 */
+	private void retire(Lane lane) {
+		lock.lock();
+
+		try {
+			if (lanes.remove(lane)) {
+				lane.held.set(0);
+				released.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * 待機中の発行元に、重さが解放されたことを知らせます。
+	 */
+	private void signal() {
+		lock.lock();
+
+		try {
+			released.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,136 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+/**
+ * ウィンドウごとの集計結果です。
+ * 
+ * <p>
+ * 集計は値が届くたびに逐次行い、値そのものは保持しません。
+ * </p>
+ */
+public final class WindowResult {
+
+	/** ウィンドウの開始時刻（ミリ秒）。 */
+	private final long start;
+
+	/** ウィンドウの終了時刻（ミリ秒、この時刻は含みません）。 */
+	private final long end;
+
+	/** 値の数。 */
+	private final long count;
+
+	/** 値の合計。 */
+	private final double sum;
+
+	/** 値の最小。 */
+	private final double min;
+
+	/** 値の最大。 */
+	private final double max;
+
+	/** 遅れて届いた値による、更新後の結果かどうか。 */
+	private final boolean update;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param start ウィンドウの開始時刻（ミリ秒）
+	 * @param end ウィンドウの終了時刻（ミリ秒）
+	 * @param count 値の数
+	 * @param sum 値の合計
+	 * @param min 値の最小
+	 * @param max 値の最大
+	 * @param update 遅れて届いた値による、更新後の結果かどうか
+	 */
+	WindowResult(long start, long end, long count, double sum, double min, double max, boolean update) {
+		this.start = start;
+		this.end = end;
+		this.count = count;
+		this.sum = sum;
+		this.min = min;
+		this.max = max;
+		this.update = update;
+	}
+
+	/**
+	 * ウィンドウの開始時刻を取得します。
+	 * 
+	 * @return ウィンドウの開始時刻（ミリ秒）
+	 */
+	public long getStart() {
+		return start;
+	}
+
+	/**
+	 * ウィンドウの終了時刻を取得します。
+	 * 
+	 * @return ウィンドウの終了時刻（ミリ秒、この時刻は含みません）
+	 */
+	public long getEnd() {
+		return end;
+	}
+
+	/**
+	 * 値の数を取得します。
+	 * 
+	 * @return 値の数
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * 値の合計を取得します。
+	 * 
+	 * @return 値の合計
+	 */
+	public double getSum() {
+		return sum;
+	}
+
+	/**
+	 * 値の最小を取得します。
+	 * 
+	 * @return 値の最小
+	 */
+	public double getMin() {
+		return min;
+	}
+
+	/**
+	 * 値の最大を取得します。
+	 * 
+	 * @return 値の最大
+	 */
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * 値の平均を取得します。
+	 * 
+	 * @return 値の平均
+	 */
+	public double getMean() {
+		return sum / count;
+	}
+
+	/**
+	 * 遅れて届いた値による、更新後の結果かどうかを判定します。
+	 * 
+	 * @return 更新後の結果の場合はtrue
+	 */
+	public boolean isUpdate() {
+		return update;
+	}
+
+	/**
+	 * 文字列に変換します。
+	 * 
+	 * @return 文字列
+	 */
+	@Override
+	public String toString() {
+		return String.format("[%d, %d) count=%d, sum=%s, min=%s, max=%s, mean=%s%s",
+			start, end, count, sum, min, max, getMean(), update ? " (update)" : "");
+	}
+}
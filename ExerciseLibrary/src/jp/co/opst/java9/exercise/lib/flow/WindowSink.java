@@ -0,0 +1,286 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.util.Iterator;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * イベント時刻でウィンドウに区切って集計する、ステージの受け口です。
+ * 
+ * <p>
+ * ウィンドウごとに、値の数・合計・最小・最大だけを逐次集計するため、
+ * 保持する状態はウィンドウの数に比例し、値の数には依存しません。
+ * </p>
+ * 
+ * @param <R> 受け取る値
+ * @see WindowSpec
+ */
+class WindowSink<R> implements Stage.Sink<R> {
+
+	/**
+	 * 1つのウィンドウの、逐次集計の途中結果です。
+	 */
+	private static final class Accumulator {
+
+		/** 開始時刻（ミリ秒）。 */
+		private long start;
+
+		/** 終了時刻（ミリ秒）。 */
+		private long end;
+
+		/** 値の数。 */
+		private long count;
+
+		/** 値の合計。 */
+		private double sum;
+
+		/** 値の最小。 */
+		private double min = Double.POSITIVE_INFINITY;
+
+		/** 値の最大。 */
+		private double max = Double.NEGATIVE_INFINITY;
+
+		/** 結果を出力したことがあるかどうか。 */
+		private boolean fired;
+
+		/** 前回出力してから、集計が変わったかどうか。 */
+		private boolean dirty;
+
+		/**
+		 * コンストラクター。
+		 * 
+		 * @param start 開始時刻（ミリ秒）
+		 * @param end 終了時刻（ミリ秒）
+		 */
+		private Accumulator(long start, long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		/**
+		 * 値を集計します。
+		 * 
+		 * @param value 値
+		 */
+		private void add(double value) {
+			count++;
+			sum += value;
+			min = Math.min(min, value);
+			max = Math.max(max, value);
+			dirty = true;
+		}
+
+		/**
+		 * 他のウィンドウの途中結果を統合します。
+		 * 
+		 * @param other 他のウィンドウの途中結果
+		 */
+		private void merge(Accumulator other) {
+			start = Math.min(start, other.start);
+			end = Math.max(end, other.end);
+			count += other.count;
+			sum += other.sum;
+			min = Math.min(min, other.min);
+			max = Math.max(max, other.max);
+			fired |= other.fired;
+			dirty = true;
+		}
+
+		/**
+		 * 集計結果を作成します。
+		 * 
+		 * @return 集計結果
+		 */
+		private WindowResult result() {
+			return new WindowResult(start, end, count, sum, min, max, fired);
+		}
+	}
+
+	/** ウィンドウの区切り方。 */
+	private final WindowSpec spec;
+
+	/** 値からイベント時刻（ミリ秒）を取り出す関数。 */
+	private final ToLongFunction<? super R> timestamp;
+
+	/** 値から集計する数値を取り出す関数。 */
+	private final ToDoubleFunction<? super R> value;
+
+	/** 下流の受け口。 */
+	private final Stage.Sink<? super WindowResult> down;
+
+	/** 開始時刻ごとのウィンドウ。ウィンドウは重ならないか、開始時刻と終了時刻の順序が一致します。 */
+	private final NavigableMap<Long, Accumulator> windows = new TreeMap<>();
+
+	/** これまでに届いた最大のイベント時刻。 */
+	private long maxTimestamp = Long.MIN_VALUE;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param spec ウィンドウの区切り方
+	 * @param timestamp 値からイベント時刻（ミリ秒）を取り出す関数
+	 * @param value 値から集計する数値を取り出す関数
+	 * @param down 下流の受け口
+	 */
+	WindowSink(WindowSpec spec, ToLongFunction<? super R> timestamp, ToDoubleFunction<? super R> value,
+			Stage.Sink<? super WindowResult> down) {
+		this.spec = spec;
+		this.timestamp = timestamp;
+		this.value = value;
+		this.down = down;
+	}
+
+	/**
+	 * 値を受け取り、該当するウィンドウに集計します。
+	 * 
+	 * <p>
+	 * ウォーターマークが終了時刻に達したウィンドウの結果を出力します。
+	 * </p>
+	 * 
+	 * @param item 値
+	 */
+	@Override
+	public void accept(R item) {
+		long time = timestamp.applyAsLong(item);
+		double number = value.applyAsDouble(item);
+		long watermark = watermark();
+
+		if (isExpired(latestEnd(time), watermark)) {
+			return;
+		}
+
+		if (spec.type == WindowSpec.Type.SESSION) {
+			addToSession(time, number);
+		} else {
+			for (long start = Math.floorDiv(time, spec.slide) * spec.slide; start > time - spec.size; start -= spec.slide) {
+				if (!isExpired(start + spec.size, watermark)) {
+					windows.computeIfAbsent(start, key -> new Accumulator(key, key + spec.size)).add(number);
+				}
+			}
+		}
+
+		maxTimestamp = Math.max(maxTimestamp, time);
+		fire(watermark());
+	}
+
+	/**
+	 * これ以上値を受け取らないかどうかを判定します。
+	 * 
+	 * @return 下流がこれ以上値を受け取らない場合はtrue
+	 */
+	@Override
+	public boolean isDone() {
+		return down.isDone();
+	}
+
+	/**
+	 * 値がもう届かないことを受け取り、未出力のウィンドウの結果を全て出力してから、下流に通知します。
+	 */
+	@Override
+	public void complete() {
+		for (Accumulator window : windows.values()) {
+			if (window.dirty && !down.isDone()) {
+				down.accept(window.result());
+			}
+		}
+
+		windows.clear();
+		down.complete();
+	}
+
+	/**
+	 * 値をセッションに集計します。
+	 * 
+	 * <p>
+	 * 値の時刻から間隔以内にあるセッションは、全て1つに統合します。
+	 * </p>
+	 * 
+	 * @param time イベント時刻（ミリ秒）
+	 * @param number 集計する数値
+	 */
+	private void addToSession(long time, double number) {
+		Accumulator session = new Accumulator(time, time + spec.size);
+		session.add(number);
+		Iterator<Accumulator> overlapping = windows.headMap(time + spec.size, false).descendingMap().values().iterator();
+
+		while (overlapping.hasNext()) {
+			Accumulator candidate = overlapping.next();
+
+			if (candidate.end <= time) {
+				break;
+			}
+
+			session.merge(candidate);
+			overlapping.remove();
+		}
+
+		windows.put(session.start, session);
+	}
+
+	/**
+	 * ウォーターマークが終了時刻に達したウィンドウのうち、集計が変わったものの結果を出力します。
+	 * 
+	 * <p>
+	 * 遅延の許容幅も過ぎたウィンドウは破棄します。
+	 * </p>
+	 * 
+	 * @param watermark ウォーターマーク
+	 */
+	private void fire(long watermark) {
+		Iterator<Accumulator> iterator = windows.values().iterator();
+
+		while (iterator.hasNext() && !down.isDone()) {
+			Accumulator window = iterator.next();
+
+			if (window.end > watermark) {
+				break;
+			}
+
+			if (window.dirty) {
+				down.accept(window.result());
+				window.fired = true;
+				window.dirty = false;
+			}
+
+			if (isExpired(window.end, watermark)) {
+				iterator.remove();
+			}
+		}
+	}
+
+	/**
+	 * 指定した時刻の値が属するウィンドウのうち、最も遅い終了時刻を取得します。
+	 * 
+	 * @param time イベント時刻（ミリ秒）
+	 * @return 終了時刻（ミリ秒）
+	 */
+	private long latestEnd(long time) {
+		if (spec.type == WindowSpec.Type.SESSION) {
+			return time + spec.size;
+		}
+
+		return Math.floorDiv(time, spec.slide) * spec.slide + spec.size;
+	}
+
+	/**
+	 * ウィンドウが遅延の許容幅を過ぎたかどうかを判定します。
+	 * 
+	 * @param end ウィンドウの終了時刻（ミリ秒）
+	 * @param watermark ウォーターマーク
+	 * @return 遅延の許容幅を過ぎた場合はtrue
+	 */
+	private boolean isExpired(long end, long watermark) {
+		return watermark != Long.MIN_VALUE && end + spec.allowedLateness <= watermark;
+	}
+
+	/**
+	 * ウォーターマークを取得します。
+	 * 
+	 * @return ウォーターマーク。まだ値が届いていない場合は{@link Long#MIN_VALUE}
+	 */
+	private long watermark() {
+		return maxTimestamp == Long.MIN_VALUE ? Long.MIN_VALUE : maxTimestamp - spec.maxOutOfOrderness;
+	}
+}
@@ -0,0 +1,179 @@
+package jp.co.opst.java9.exercise.lib.flow;
+
+import java.time.Duration;
+
+/**
+ * イベント時刻によるウィンドウの区切り方です。
+ * 
+ * <p>
+ * ウォーターマークは、それまでに届いた最大のイベント時刻から、順序の乱れの許容幅を引いた時刻です。
+ * ウィンドウは、ウォーターマークがウィンドウの終了時刻に達した時点で結果を出力します。
+ * 出力した後も、終了時刻に遅延の許容幅を加えた時刻までは保持され、その間に遅れて届いた値は、
+ * 結果を更新して再び出力します。
+ * それより遅れて届いた値は破棄します。
+ * </p>
+ * 
+ * <p>
+ * このクラスはイミュータブルです。
+ * </p>
+ * 
+ * @see Stage#window(WindowSpec, java.util.function.ToLongFunction, java.util.function.ToDoubleFunction)
+ */
+public final class WindowSpec {
+
+	/**
+	 * ウィンドウの種類です。
+	 */
+	enum Type {
+
+		/** 重ならない、固定長のウィンドウ。 */
+		TUMBLING,
+
+		/** 一定間隔で開始する、重なり合う固定長のウィンドウ。 */
+		SLIDING,
+
+		/** 値の間隔が一定時間空くまで続く、可変長のウィンドウ。 */
+		SESSION
+	}
+
+	/**
+	 * 重ならない、固定長のウィンドウを取得します。
+	 * 
+	 * @param size ウィンドウの長さ
+	 * @return ウィンドウの区切り方
+	 * @throws IllegalArgumentException ウィンドウの長さが1ミリ秒未満の場合
+	 */
+	public static WindowSpec tumbling(Duration size) {
+		return new WindowSpec(Type.TUMBLING, positive(size), positive(size), 0, 0);
+	}
+
+	/**
+	 * 一定間隔で開始する、重なり合う固定長のウィンドウを取得します。
+	 * 
+	 * <p>
+	 * 1つの値は、長さを間隔で割った数（切り上げ）のウィンドウに集計されます。
+	 * </p>
+	 * 
+	 * @param size ウィンドウの長さ
+	 * @param slide ウィンドウを開始する間隔
+	 * @return ウィンドウの区切り方
+	 * @throws IllegalArgumentException 長さまたは間隔が1ミリ秒未満の場合、または間隔が長さより長い場合
+	 */
+	public static WindowSpec sliding(Duration size, Duration slide) {
+		if (slide.compareTo(size) > 0) {
+			throw new IllegalArgumentException(String.format("size=%s, slide=%s", size, slide));
+		}
+
+		return new WindowSpec(Type.SLIDING, positive(size), positive(slide), 0, 0);
+	}
+
+	/**
+	 * 値の間隔が一定時間空くまで続く、可変長のウィンドウを取得します。
+	 * 
+	 * <p>
+	 * ウィンドウは最初の値の時刻から、最後の値の時刻に間隔を加えた時刻までです。
+	 * 遅れて届いた値によって2つのウィンドウの間が埋まった場合は、1つのウィンドウに統合します。
+	 * </p>
+	 * 
+	 * @param gap ウィンドウを区切る、値の間隔
+	 * @return ウィンドウの区切り方
+	 * @throws IllegalArgumentException 間隔が1ミリ秒未満の場合
+	 */
+	public static WindowSpec session(Duration gap) {
+		return new WindowSpec(Type.SESSION, positive(gap), 0, 0, 0);
+	}
+
+	/**
+	 * 時間が1ミリ秒以上であることを検証します。
+	 * 
+	 * @param duration 時間
+	 * @return 時間（ミリ秒）
+	 * @throws IllegalArgumentException 時間が1ミリ秒未満の場合
+	 */
+	private static long positive(Duration duration) {
+		long millis = duration.toMillis();
+
+		if (millis < 1) {
+			throw new IllegalArgumentException("duration=" + duration);
+		}
+
+		return millis;
+	}
+
+	/**
+	 * 時間が負でないことを検証します。
+	 * 
+	 * @param duration 時間
+	 * @return 時間（ミリ秒）
+	 * @throws IllegalArgumentException 時間が負の場合
+	 */
+	private static long notNegative(Duration duration) {
+		if (duration.isNegative()) {
+			throw new IllegalArgumentException("duration=" + duration);
+		}
+
+		return duration.toMillis();
+	}
+
+	/** ウィンドウの種類。 */
+	final Type type;
+
+	/** ウィンドウの長さ、またはセッションを区切る間隔（ミリ秒）。 */
+	final long size;
+
+	/** ウィンドウを開始する間隔（ミリ秒）。セッションの場合は0。 */
+	final long slide;
+
+	/** 遅延の許容幅（ミリ秒）。 */
+	final long allowedLateness;
+
+	/** 順序の乱れの許容幅（ミリ秒）。 */
+	final long maxOutOfOrderness;
+
+	/**
+	 * コンストラクター。
+	 * 
+	 * @param type ウィンドウの種類
+	 * @param size ウィンドウの長さ、またはセッションを区切る間隔（ミリ秒）
+	 * @param slide ウィンドウを開始する間隔（ミリ秒）
+	 * @param allowedLateness 遅延の許容幅（ミリ秒）
+	 * @param maxOutOfOrderness 順序の乱れの許容幅（ミリ秒）
+	 */
+	private WindowSpec(Type type, long size, long slide, long allowedLateness, long maxOutOfOrderness) {
+		this.type = type;
+		this.size = size;
+		this.slide = slide;
+		this.allowedLateness = allowedLateness;
+		this.maxOutOfOrderness = maxOutOfOrderness;
+	}
+
+	/**
+	 * 遅延の許容幅を設定した区切り方を取得します。
+	 * 
+	 * <p>
+	 * 初期値はゼロで、結果を出力したウィンドウには、それ以降の値を集計しません。
+	 * </p>
+	 * 
+	 * @param allowedLateness 遅延の許容幅
+	 * @return 新しい区切り方
+	 * @throws IllegalArgumentException 許容幅が負の場合
+	 */
+	public WindowSpec withAllowedLateness(Duration allowedLateness) {
+		return new WindowSpec(type, size, slide, notNegative(allowedLateness), maxOutOfOrderness);
+	}
+
+	/**
+	 * 順序の乱れの許容幅を設定した区切り方を取得します。
+	 * 
+	 * <p>
+	 * 初期値はゼロで、ウォーターマークは、それまでに届いた最大のイベント時刻になります。
+	 * </p>
+	 * 
+	 * @param maxOutOfOrderness 順序の乱れの許容幅
+	 * @return 新しい区切り方
+	 * @throws IllegalArgumentException 許容幅が負の場合
+	 */
+	public WindowSpec withMaxOutOfOrderness(Duration maxOutOfOrderness) {
+		return new WindowSpec(type, size, slide, allowedLateness, notNegative(maxOutOfOrderness));
+	}
+}
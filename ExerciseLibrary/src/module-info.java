@@ -1,4 +1,6 @@
 module jp.co.opst.java9.exercise.lib {
 	exports jp.co.opst.java9.exercise.lib.exception;
 	exports jp.co.opst.java9.exercise.lib.flow;
+
+	requires java.management;
 }
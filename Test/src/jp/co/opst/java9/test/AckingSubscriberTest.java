@@ -0,0 +1,218 @@
+package jp.co.opst.java9.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import jp.co.opst.java9.exercise.lib.flow.AckSubscriberModel;
+import jp.co.opst.java9.exercise.lib.flow.AckingSubscriber;
+import jp.co.opst.java9.exercise.lib.flow.Acknowledgement;
+import jp.co.opst.java9.exercise.lib.flow.SubscriberContext;
+import jp.co.opst.java9.exercise.lib.flow.SubscriberMetrics;
+import jp.co.opst.java9.exercise.lib.flow.SubscriberModel;
+
+/**
+ * {@link AckingSubscriber}に関するテストです。
+ * 
+ * <p>
+ * 応答待ちの上限を4にして、応答済みのビットマップの下限が容量の境界をまたいで進むことを、リクエストした数で確認します。
+ * </p>
+ */
+public class AckingSubscriberTest {
+
+	/**
+	 * 配信された値の応答を保持するモデル。
+	 */
+	private static class RecordingModel implements AckSubscriberModel<Integer> {
+
+		/** 配信された順の応答。 */
+		private final List<Acknowledgement> acknowledgements = new ArrayList<>();
+
+		/**
+		 * 開始時の処理を行います。
+		 */
+		@Override
+		public void begin() {
+		}
+
+		/**
+		 * 応答を保持します。
+		 * 
+		 * @param item 購読した値
+		 * @param acknowledgement 応答
+		 */
+		@Override
+		public void accept(Integer item, Acknowledgement acknowledgement) {
+			acknowledgements.add(acknowledgement);
+		}
+
+		/**
+		 * 終了時の処理を行います。
+		 */
+		@Override
+		public void end() {
+		}
+	}
+
+	/** 応答待ちの上限。 */
+	private static final int MAX_UNACKED = 4;
+
+	/** 上流にリクエストした数。 */
+	private final AtomicLong requested = new AtomicLong();
+
+	/** コンテキスト。 */
+	private SubscriberContext context;
+
+	/** モデル。 */
+	private RecordingModel model;
+
+	/** 計測値。 */
+	private SubscriberMetrics metrics;
+
+	/**
+	 * テストごとの準備を行います。
+	 */
+	@BeforeEach
+	void setUp() {
+		requested.set(0);
+		context = new SubscriberContext();
+		model = new RecordingModel();
+		metrics = new SubscriberMetrics("test");
+	}
+
+	/**
+	 * サブスクライバーを作成し、購読を開始します。
+	 * 
+	 * @param ackTimeout 応答の待機時間
+	 * @param maxDeliveries 配信回数の上限
+	 * @return サブスクライバー
+	 */
+	private AckingSubscriber<Integer> subscribe(Duration ackTimeout, int maxDeliveries) {
+		AckingSubscriber<Integer> subscriber = new AckingSubscriber<>(context, model, MAX_UNACKED, ackTimeout,
+			maxDeliveries, ForkJoinPool.commonPool(), metrics);
+		subscriber.onSubscribe(new Flow.Subscription() {
+			@Override
+			public void request(long n) {
+				requested.addAndGet(n);
+			}
+
+			@Override
+			public void cancel() {
+			}
+		});
+		return subscriber;
+	}
+
+	/**
+	 * 値を発行します。
+	 * 
+	 * @param subscriber サブスクライバー
+	 * @param from 最初の値
+	 * @param to 最後の値の次
+	 */
+	private static void publish(AckingSubscriber<Integer> subscriber, int from, int to) {
+		for (int i = from; i < to; i++) {
+			subscriber.onNext(i);
+		}
+	}
+
+	/**
+	 * 応答する順番が前後しても、下限の値が応答されるまでリクエストしないことと、
+	 * 番号がビットマップの容量を何周しても、下限が正しく進むことをテストします。
+	 */
+	@Test
+	void testWraparound() {
+		AckingSubscriber<Integer> subscriber = subscribe(Duration.ofMinutes(1), 1);
+		assertEquals(MAX_UNACKED, requested.get());
+
+		for (int round = 0; round < 3; round++) {
+			int base = round * MAX_UNACKED;
+			publish(subscriber, base, base + MAX_UNACKED);
+
+			for (int i = MAX_UNACKED - 1; i > 0; i--) {
+				model.acknowledgements.get(base + i).ack();
+			}
+
+			assertEquals(base + MAX_UNACKED, requested.get());
+			model.acknowledgements.get(base).ack();
+			assertEquals(base + 2 * MAX_UNACKED, requested.get());
+		}
+
+		assertEquals(3 * MAX_UNACKED, metrics.getAccepted());
+	}
+
+	/**
+	 * 同じ値に2回応答しても、1回分しか数えないことをテストします。
+	 */
+	@Test
+	void testDuplicateAck() {
+		AckingSubscriber<Integer> subscriber = subscribe(Duration.ofMinutes(1), 1);
+		publish(subscriber, 0, 2);
+
+		model.acknowledgements.get(0).ack();
+		model.acknowledgements.get(0).ack();
+		assertEquals(MAX_UNACKED + 1, requested.get());
+		assertEquals(1, metrics.getAccepted());
+
+		model.acknowledgements.get(1).ack();
+		assertEquals(MAX_UNACKED + 2, requested.get());
+		assertEquals(2, metrics.getAccepted());
+	}
+
+	/**
+	 * 下限が容量の境界をまたぐ時に、応答待ちの値が残っている位置を上書きしないことをテストします。
+	 */
+	@Test
+	void testAdvanceAcrossCapacity() {
+		AckingSubscriber<Integer> subscriber = subscribe(Duration.ofMinutes(1), 1);
+		publish(subscriber, 0, MAX_UNACKED);
+
+		// 0と1だけ応答すると、2と3を残したまま、次の周の4と5を受け取れる
+		model.acknowledgements.get(0).ack();
+		model.acknowledgements.get(1).ack();
+		assertEquals(MAX_UNACKED + 2, requested.get());
+		publish(subscriber, MAX_UNACKED, MAX_UNACKED + 2);
+
+		// 4と5を先に応答しても、2と3が応答されるまで下限は進まない
+		model.acknowledgements.get(4).ack();
+		model.acknowledgements.get(5).ack();
+		assertEquals(MAX_UNACKED + 2, requested.get());
+
+		model.acknowledgements.get(2).ack();
+		model.acknowledgements.get(3).ack();
+		assertEquals(2 * MAX_UNACKED + 2, requested.get());
+		assertEquals(6, metrics.getAccepted());
+	}
+
+	/**
+	 * 配信回数の上限に達した値が、元のモデルを保持するアダプターと共に破棄ハンドラーに渡されることをテストします。
+	 * 
+	 * @throws Exception テストに失敗した場合
+	 */
+	@Test
+	void testDiscardedItemHasModel() throws Exception {
+		AtomicReference<SubscriberModel<?>> dropped = new AtomicReference<>();
+		CountDownLatch done = new CountDownLatch(1);
+		context.setDropHandler((droppedModel, item) -> dropped.set(droppedModel));
+		context.setDoneSignal(done::countDown);
+
+		AckingSubscriber<Integer> subscriber = subscribe(Duration.ofMillis(10), 1);
+		publish(subscriber, 0, 1);
+		subscriber.onComplete();
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		assertTrue(dropped.get() instanceof AckingSubscriber.AckModelAdapter);
+		assertSame(model, ((AckingSubscriber.AckModelAdapter<?>) dropped.get()).getModel());
+	}
+}
@@ -0,0 +1,70 @@
+package jp.co.opst.java9.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Function;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.co.opst.java9.exercise.lib.flow.DeadLetterFile;
+
+/**
+ * {@link DeadLetterFile}に関するテストです。
+ */
+public class DeadLetterFileTest {
+
+	/** テスト用一時フォルダ。 */
+	public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+	/**
+	 * 前処理。
+	 * 
+	 * @throws Exception テスト用一時フォルダの作成に失敗した場合
+	 */
+	@BeforeEach
+	void setUp() throws Exception {
+		tempFolder.create();
+	}
+
+	/**
+	 * 後処理。
+	 */
+	@AfterEach
+	void tearDown() {
+		tempFolder.delete();
+	}
+
+	/**
+	 * 取り出しが途中で失敗した後、次の取り出しで、退避したファイルの値も失わずに取り出せることをテストします。
+	 * 
+	 * @throws Exception テストに失敗した場合
+	 */
+	@Test
+	void testReplayAfterFailedReplay() throws Exception {
+		Path path = tempFolder.getRoot().toPath().resolve("dead-letters.txt");
+		DeadLetterFile<String> file = new DeadLetterFile<>(path, Function.identity(), Function.identity());
+		file.write("a", new RuntimeException("first"));
+		file.write("b", new RuntimeException("second"));
+
+		assertThrows(IllegalStateException.class, () -> file.replay(item -> {
+			throw new IllegalStateException(item);
+		}));
+		assertTrue(Files.exists(path.resolveSibling("dead-letters.txt.replaying")));
+
+		file.write("c", new RuntimeException("third"));
+		List<String> replayed = new ArrayList<>();
+
+		assertEquals(3, file.replay(replayed::add));
+		assertEquals(Arrays.asList("a", "b", "c"), replayed);
+		assertFalse(Files.exists(path));
+		assertFalse(Files.exists(path.resolveSibling("dead-letters.txt.replaying")));
+	}
+}
@@ -0,0 +1,89 @@
+package jp.co.opst.java9.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.rules.TemporaryFolder;
+
+import jp.co.opst.java9.exercise.lib.flow.Journal;
+import jp.co.opst.java9.exercise.lib.flow.JournalSerializer;
+
+/**
+ * {@link Journal}に関するテストです。
+ */
+public class JournalTest {
+
+	/** セグメントファイルの大きさ。 */
+	private static final int SEGMENT_BYTES = 1024;
+
+	/** テスト用一時フォルダ。 */
+	public final TemporaryFolder tempFolder = new TemporaryFolder();
+
+	/**
+	 * 前処理。
+	 * 
+	 * @throws Exception テスト用一時フォルダの作成に失敗した場合
+	 */
+	@BeforeEach
+	void setUp() throws Exception {
+		tempFolder.create();
+	}
+
+	/**
+	 * 後処理。
+	 */
+	@AfterEach
+	void tearDown() {
+		tempFolder.delete();
+	}
+
+	/**
+	 * ヘッダーを書き込む前に異常終了したレコードの残骸が、2回目の復旧でレコードと誤認されないことをテストします。
+	 * 
+	 * <p>
+	 * 1文字の値のレコードは、4バイトのヘッダーと1バイトのペイロードからなります。
+	 * </p>
+	 * 
+	 * @throws Exception テストに失敗した場合
+	 */
+	@Test
+	void testRecoverTwiceAfterTornWrite() throws Exception {
+		Path directory = tempFolder.getRoot().toPath();
+
+		try (Journal<String> journal = Journal.open(directory, SEGMENT_BYTES, JournalSerializer.utf8())) {
+			journal.append("a");
+			journal.append("b");
+		}
+
+		// 3件目のペイロードを書き込み、ヘッダーを書き込む前に異常終了した状態にする
+		// ペイロードの途中には、1バイトのレコードのヘッダーに見える値が含まれる
+		try (FileChannel channel = FileChannel.open(directory.resolve(String.format("%020d.journal", 0)),
+				StandardOpenOption.WRITE)) {
+			ByteBuffer payload = ByteBuffer.allocate(8).put((byte) 'x').putInt(2).put((byte) 'z').put(new byte[2]);
+			payload.flip();
+			channel.write(payload, 14);
+		}
+
+		try (Journal<String> journal = Journal.open(directory, SEGMENT_BYTES, JournalSerializer.utf8())) {
+			assertEquals(2, journal.getEndOffset());
+			journal.append("c");
+		}
+
+		try (Journal<String> journal = Journal.open(directory, SEGMENT_BYTES, JournalSerializer.utf8())) {
+			List<String> items = new ArrayList<>();
+			journal.replay(0, items::add);
+			assertEquals(Arrays.asList("a", "b", "c"), items);
+			assertEquals(3, journal.getEndOffset());
+		}
+	}
+}
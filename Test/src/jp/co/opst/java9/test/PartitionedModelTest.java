@@ -0,0 +1,136 @@
+package jp.co.opst.java9.test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import jp.co.opst.java9.exercise.lib.flow.PartitionedModel;
+import jp.co.opst.java9.exercise.lib.flow.SubscriberModel;
+
+/**
+ * {@link PartitionedModel}に関するテストです。
+ */
+public class PartitionedModelTest {
+
+	/**
+	 * 最初の値で例外を送出するモデル。
+	 */
+	private static class FailingModel implements SubscriberModel<Integer> {
+
+		/** 終了時の処理が行われたかどうか。 */
+		private final AtomicBoolean ended;
+
+		/**
+		 * コンストラクター。
+		 * 
+		 * @param ended 終了時の処理が行われたかどうか
+		 */
+		private FailingModel(AtomicBoolean ended) {
+			this.ended = ended;
+		}
+
+		/**
+		 * 開始時の処理を行います。
+		 */
+		@Override
+		public void begin() {
+		}
+
+		/**
+		 * 例外を送出します。
+		 * 
+		 * @param item 購読した値
+		 */
+		@Override
+		public void accept(Integer item) {
+			throw new IllegalStateException("failed at " + item);
+		}
+
+		/**
+		 * 終了時の処理が行われたことを記録します。
+		 */
+		@Override
+		public void end() {
+			ended.set(true);
+		}
+	}
+
+	/**
+	 * レーンで例外が発生した後も、キューが満杯のまま待機せずに終了し、例外を送出することをテストします。
+	 * 
+	 * @throws Exception テストに失敗した場合
+	 */
+	@Test
+	void testEndAfterLaneFailure() throws Exception {
+		AtomicBoolean ended = new AtomicBoolean();
+		PartitionedModel<Integer, Integer> model = new PartitionedModel<>(item -> item, 1, 2, () -> new FailingModel(ended));
+		model.begin();
+
+		for (int i = 0; i < 10; i++) {
+			try {
+				model.accept(i);
+			} catch (IllegalStateException e) {
+				break;
+			}
+		}
+
+		IllegalStateException exception = assertTimeoutPreemptively(Duration.ofSeconds(5),
+			() -> assertThrows(IllegalStateException.class, model::end));
+		assertEquals("failed at 0", exception.getMessage());
+		assertTrue(ended.get());
+	}
+
+	/**
+	 * レーンでエラーが発生した場合も、記録されて終了時に送出されることをテストします。
+	 * 
+	 * @throws Exception テストに失敗した場合
+	 */
+	@Test
+	void testEndAfterLaneError() throws Exception {
+		AtomicBoolean ended = new AtomicBoolean();
+		PartitionedModel<Integer, Integer> model = new PartitionedModel<>(item -> item, 1, 2, () -> new FailingModel(ended) {
+			@Override
+			public void accept(Integer item) {
+				throw new AssertionError("error at " + item);
+			}
+		});
+		model.begin();
+
+		for (int i = 0; i < 10; i++) {
+			try {
+				model.accept(i);
+			} catch (AssertionError e) {
+				break;
+			}
+		}
+
+		AssertionError error = assertTimeoutPreemptively(Duration.ofSeconds(5),
+			() -> assertThrows(AssertionError.class, model::end));
+		assertEquals("error at 0", error.getMessage());
+		assertTrue(ended.get());
+	}
+
+	/**
+	 * 途中のレーンのモデルの開始に失敗した場合に、開始済みのレーンのモデルの終了時の処理が行われることをテストします。
+	 */
+	@Test
+	void testBeginFailureEndsStartedLanes() {
+		AtomicBoolean ended = new AtomicBoolean();
+		AtomicInteger created = new AtomicInteger();
+		PartitionedModel<Integer, Integer> model = new PartitionedModel<>(item -> item, 3, 2, () -> {
+			if (created.incrementAndGet() == 2) {
+				throw new IllegalStateException("failed to create");
+			}
+
+			return new FailingModel(ended);
+		});
+
+		IllegalStateException exception = assertThrows(IllegalStateException.class, model::begin);
+		assertEquals("failed to create", exception.getMessage());
+		assertTrue(ended.get());
+	}
+}